@@ -0,0 +1,136 @@
+package pt.up.fe.comp2024;
+
+import pt.up.fe.comp2024.utils.Formatter;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+
+/**
+ * Compiles many compilation units in a single process, writing a class file per unit to the output folder.
+ * <p>
+ * Units are spread over a work-stealing {@link ForkJoinPool} with '-j' threads (one per core by default), so JIT
+ * warm-up and the ANTLR caches are shared by the whole batch. Each unit runs all its stages in a single task, and its
+ * outcome is reported in the order of the sources, regardless of the order in which tasks finish. A unit that fails
+ * does not stop the remaining ones.
+ */
+public class BatchCompiler {
+
+    private static final String JMM_EXTENSION = ".jmm";
+
+    private final Map<String, String> config;
+    private final JmmCompiler compiler;
+    private final File outputDir;
+
+    public BatchCompiler(Map<String, String> config) {
+        this.config = config;
+        this.compiler = JmmCompiler.fromConfig(config);
+        this.outputDir = CompilerConfig.getOutputDir(config).orElse(SpecsIo.getWorkingDir());
+    }
+
+    /**
+     * Finds the sources of a batch.
+     * <p>
+     * If the batch is a folder, returns all .jmm files inside it, recursively. Otherwise, the batch is a file with a
+     * path per line, relative to the working folder. Blank lines and lines starting with '#' are ignored.
+     *
+     * @param batch
+     * @return the sources, in a stable order
+     */
+    public static List<File> collectSources(File batch) {
+
+        if (batch.isDirectory()) {
+            try (Stream<Path> paths = Files.walk(batch.toPath())) {
+                return paths.filter(Files::isRegularFile)
+                        .filter(path -> path.toString().endsWith(JMM_EXTENSION))
+                        .sorted()
+                        .map(Path::toFile)
+                        .toList();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not list sources in '" + batch + "'", e);
+            }
+        }
+
+        return SpecsIo.read(batch).lines()
+                .map(String::strip)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .map(line -> new File(line).getAbsoluteFile())
+                .toList();
+    }
+
+    /**
+     * Compiles every source of the batch.
+     *
+     * @return true if all units compiled without errors
+     */
+    public boolean compileAll() {
+
+        var sources = collectSources(CompilerConfig.getBatch(config).orElseThrow());
+
+        var pool = new ForkJoinPool(CompilerConfig.getJobs(config));
+        try {
+            return compileUnits(sources, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Compiles the given sources on the given pool, printing the failures and a summary.
+     *
+     * @param sources
+     * @param pool
+     * @return true if all units compiled without errors
+     */
+    boolean compileUnits(List<File> sources, ForkJoinPool pool) {
+
+        List<ForkJoinTask<UnitResult>> tasks = sources.stream()
+                .map(source -> pool.submit(() -> compile(source)))
+                .toList();
+
+        // joining in submission order keeps the reports deterministic
+        List<UnitResult> results = tasks.stream()
+                .map(ForkJoinTask::join)
+                .toList();
+
+        int failed = 0;
+        for (var result : results) {
+            if (!result.isSuccess()) {
+                System.err.println(Formatter.errorMsg("Failed to compile '" + result.source() + "': " + result.error()));
+                failed++;
+            }
+        }
+
+        System.out.println("Compiled " + (sources.size() - failed) + " of " + sources.size() + " files");
+
+        return failed == 0;
+    }
+
+    private UnitResult compile(File source) {
+        try {
+            var unitConfig = CompilerConfig.withInputFile(config, source);
+            compiler.compileToFolder(SpecsIo.read(source), unitConfig, outputDir);
+            return new UnitResult(source, null);
+        } catch (RuntimeException e) {
+            return new UnitResult(source, e.getMessage());
+        }
+    }
+
+    /**
+     * Outcome of compiling a single unit, error is null if the unit compiled.
+     */
+    private record UnitResult(File source, String error) {
+
+        boolean isSuccess() {
+            return error == null;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package pt.up.fe.comp2024;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -10,6 +11,22 @@ public class CompilerConfig {
     private static final String INPUT_FILE = "inputFile";
     private static final String OPTIMIZE = "optimize";
     private static final String REGISTER = "registerAllocation";
+    private static final String BATCH = "batch";
+    private static final String OUTPUT_DIR = "outputDir";
+    private static final String JOBS = "jobs";
+    private static final String SERVER = "server";
+    private static final String CLIENT = "client";
+    private static final String CACHE_DIR = "cacheDir";
+    private static final String CACHE_SIZE = "cacheSize";
+    private static final String WATCH = "watch";
+    private static final String EMIT_CLASS = "emitClass";
+    private static final String UNROLL = "unroll";
+
+    // Default maximum size of the compilation cache, in megabytes
+    private static final String DEFAULT_CACHE_SIZE = "256";
+
+    // Default number of copies of the body of a partially unrolled loop
+    private static final String DEFAULT_UNROLL = "4";
 
 
     static Map<String, String> shortToLong = new HashMap<>();
@@ -18,6 +35,16 @@ public class CompilerConfig {
         shortToLong.put("i", CompilerConfig.INPUT_FILE);
         shortToLong.put("o", CompilerConfig.OPTIMIZE);
         shortToLong.put("r", CompilerConfig.REGISTER);
+        shortToLong.put("b", CompilerConfig.BATCH);
+        shortToLong.put("d", CompilerConfig.OUTPUT_DIR);
+        shortToLong.put("j", CompilerConfig.JOBS);
+        shortToLong.put("s", CompilerConfig.SERVER);
+        shortToLong.put("c", CompilerConfig.CLIENT);
+        shortToLong.put("k", CompilerConfig.CACHE_DIR);
+        shortToLong.put("m", CompilerConfig.CACHE_SIZE);
+        shortToLong.put("w", CompilerConfig.WATCH);
+        shortToLong.put("e", CompilerConfig.EMIT_CLASS);
+        shortToLong.put("u", CompilerConfig.UNROLL);
     }
 
 
@@ -32,6 +59,120 @@ public class CompilerConfig {
         return Optional.of(new File(inputFile));
     }
 
+    /**
+     * Copies the given configuration, replacing the input file. Used to give each compilation unit of a batch its
+     * own configuration.
+     *
+     * @param config
+     * @param inputFile
+     * @return
+     */
+    public static Map<String, String> withInputFile(Map<String, String> config, File inputFile) {
+        var unitConfig = new HashMap<>(config);
+        unitConfig.put(INPUT_FILE, inputFile.getAbsolutePath());
+
+        return unitConfig;
+    }
+
+    /**
+     * @param config
+     * @return the directory, or the file listing one source per line, given with '-b'
+     */
+    public static Optional<File> getBatch(Map<String, String> config) {
+        var batch = config.get(BATCH);
+
+        if (batch == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new File(batch));
+    }
+
+    /**
+     * @param config
+     * @return the directory given with '-d', if any
+     */
+    public static Optional<File> getOutputDir(Map<String, String> config) {
+        var outputDir = config.get(OUTPUT_DIR);
+
+        if (outputDir == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new File(outputDir));
+    }
+
+    /**
+     * @param config
+     * @return the socket the compiler server listens on, given with '-s'
+     */
+    public static Optional<Path> getServerSocket(Map<String, String> config) {
+        return Optional.ofNullable(config.get(SERVER)).map(Path::of);
+    }
+
+    /**
+     * @param config
+     * @return the socket of the compiler server that should compile the input file, given with '-c'
+     */
+    public static Optional<Path> getClientSocket(Map<String, String> config) {
+        return Optional.ofNullable(config.get(CLIENT)).map(Path::of);
+    }
+
+    /**
+     * @param config
+     * @return true if class files are generated directly instead of assembling Jasmin code, given with '-e'
+     */
+    public static boolean getEmitClass(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(EMIT_CLASS, "false"));
+    }
+
+    /**
+     * @param config
+     * @return the folder with the sources to watch, given with '-w'
+     */
+    public static Optional<File> getWatch(Map<String, String> config) {
+        return Optional.ofNullable(config.get(WATCH)).map(File::new);
+    }
+
+    /**
+     * @param config
+     * @return the folder of the compilation cache, given with '-k'
+     */
+    public static Optional<File> getCacheDir(Map<String, String> config) {
+        return Optional.ofNullable(config.get(CACHE_DIR)).map(File::new);
+    }
+
+    /**
+     * @param config
+     * @return the maximum size of the compilation cache in bytes, given in megabytes with '-m'
+     */
+    public static long getCacheSize(Map<String, String> config) {
+        return Long.parseLong(config.getOrDefault(CACHE_SIZE, DEFAULT_CACHE_SIZE)) * 1024 * 1024;
+    }
+
+    /**
+     * @param config
+     * @return the number of units of a batch that can be compiled at the same time, by default one per core
+     */
+    public static int getJobs(Map<String, String> config) {
+        var jobs = config.get(JOBS);
+
+        if (jobs == null) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+
+        return Integer.parseInt(jobs);
+    }
+
+    /**
+     * @param config
+     * @return how many copies of its body a counted loop gets when it is partially unrolled with '-o', given with
+     * '-u'. 1 disables partial unrolling
+     */
+    public static int getUnrollFactor(Map<String, String> config) {
+        return Integer.parseInt(config.getOrDefault(UNROLL, DEFAULT_UNROLL));
+    }
+
     public static boolean getOptimize(Map<String, String> config) {
         return Boolean.parseBoolean(config.getOrDefault(OPTIMIZE, "false"));
     }
@@ -89,23 +230,68 @@ public class CompilerConfig {
             config.put(getLongOpt(shortOption), value);
         }
 
-        if (!config.containsKey(INPUT_FILE)) {
+        if (config.containsKey(SERVER)) {
+
+            // the server gets its input files from the requests
+            config.put(SERVER, new File(config.get(SERVER)).getAbsolutePath());
+        } else if (config.containsKey(BATCH)) {
+
+            // a batch is either a folder with .jmm files or a file listing them
+            var batch = new File(config.get(BATCH));
+            if (!batch.exists()) {
+                throw new RuntimeException("Could not find batch input '" + batch + "'");
+            }
+
+            config.put(BATCH, batch.getAbsolutePath());
+        } else if (config.containsKey(WATCH)) {
+
+            var watch = new File(config.get(WATCH));
+            if (!watch.isDirectory()) {
+                throw new RuntimeException("Option '-w' expects a folder to watch, got '" + watch + "'");
+            }
+
+            config.put(WATCH, watch.getAbsolutePath());
+        } else {
+
+            if (!config.containsKey(INPUT_FILE)) {
+
+                throw new RuntimeException("Expected an input file, use '-i=<PATH_TO_FILE>', '-b=<PATH_TO_DIR>' or '-w=<PATH_TO_DIR>'");
+            }
+
+            // make sure we save the absolute path of the input file
+            var inputFile = new File(config.get(INPUT_FILE));
+            if (!inputFile.isFile()) {
+                throw new RuntimeException("Could not find input file '" + inputFile + "'");
+            }
 
-            throw new RuntimeException("Expected an input file, use '-i=<PATH_TO_FILE>'");
+            var absolutePath = inputFile.getAbsolutePath();
+            config.put(INPUT_FILE, absolutePath);
         }
 
-        // make sure we save the absolute path of the input file
-        var inputFile = new File(config.get(INPUT_FILE));
-        if (!inputFile.isFile()) {
-            throw new RuntimeException("Could not find input file '" + inputFile + "'");
+        if (config.containsKey(CLIENT)) {
+            config.put(CLIENT, new File(config.get(CLIENT)).getAbsolutePath());
         }
 
-        var absolutePath = inputFile.getAbsolutePath();
-        config.put(INPUT_FILE, absolutePath);
+        if (config.containsKey(CACHE_DIR)) {
+            config.put(CACHE_DIR, new File(config.get(CACHE_DIR)).getAbsolutePath());
+        }
+
+        if (config.containsKey(OUTPUT_DIR)) {
+            config.put(OUTPUT_DIR, new File(config.get(OUTPUT_DIR)).getAbsolutePath());
+        }
 
         // Verify if values are valid
         getOptimize(config);
         getRegisterAllocation(config);
+        if (getCacheSize(config) <= 0) {
+            throw new RuntimeException("Option '-m' expects a positive size in megabytes, got '" + config.get(CACHE_SIZE) + "'");
+        }
+        if (getJobs(config) < 1) {
+            throw new RuntimeException("Option '-j' expects a positive number of jobs, got '" + config.get(JOBS) + "'");
+        }
+        if (getUnrollFactor(config) < 1) {
+            throw new RuntimeException("Option '-u' expects a positive unroll factor, got '" + config.get(UNROLL) + "'");
+        }
 
         return config;
     }
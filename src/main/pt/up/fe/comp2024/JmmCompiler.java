@@ -0,0 +1,217 @@
+package pt.up.fe.comp2024;
+
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.jasmin.JasminUtils;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
+import pt.up.fe.comp2024.backend.ClassFileResult;
+import pt.up.fe.comp2024.backend.JasminBackendImpl;
+import pt.up.fe.comp2024.cache.CompilationCache;
+import pt.up.fe.comp2024.optimization.JmmOptimizationImpl;
+import pt.up.fe.comp2024.parser.JmmParserImpl;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Runs all the stages of the compiler over a single compilation unit.
+ * <p>
+ * Stages are instantiated for each unit, so the same JmmCompiler can compile any number of units, also from several
+ * threads. If it has a {@link CompilationCache}, each stage first looks for its result there, so only the stages
+ * affected by a change in the code or in the options run again.
+ */
+public class JmmCompiler {
+
+    // null if caching is disabled
+    private final CompilationCache cache;
+
+    public JmmCompiler() {
+        this(null);
+    }
+
+    public JmmCompiler(CompilationCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @param config
+     * @return a compiler that uses the cache given in the configuration, if any
+     */
+    public static JmmCompiler fromConfig(Map<String, String> config) {
+        return new JmmCompiler(CompilationCache.fromConfig(config).orElse(null));
+    }
+
+    /**
+     * Compiles the given Java-- code into Jasmin code.
+     *
+     * @param code
+     * @param config
+     * @return the result of the last stage
+     * @throws RuntimeException if any of the stages reports an error
+     */
+    public JasminResult compile(String code, Map<String, String> config) {
+
+        if (cache != null) {
+            var cachedResult = cache.getJasmin(code, config);
+            if (cachedResult.isPresent()) {
+                return cachedResult.get();
+            }
+        }
+
+        OllirResult ollirResult = optimize(code, config);
+
+        // Code generation stage
+        JasminBackendImpl jasminGen = new JasminBackendImpl();
+        JasminResult jasminResult = jasminGen.toJasmin(ollirResult);
+        TestUtils.noErrors(jasminResult.getReports());
+
+        if (cache != null) {
+            cache.putJasmin(code, config, jasminResult);
+        }
+
+        return jasminResult;
+    }
+
+    /**
+     * Compiles the given Java-- code directly into a class file, without generating Jasmin code.
+     *
+     * @param code
+     * @param config
+     * @return the result of the last stage
+     * @throws RuntimeException if any of the stages reports an error
+     */
+    public ClassFileResult compileClass(String code, Map<String, String> config) {
+
+        if (cache != null) {
+            var cachedResult = cache.getClassFile(code, config);
+            if (cachedResult.isPresent()) {
+                return cachedResult.get();
+            }
+        }
+
+        OllirResult ollirResult = optimize(code, config);
+
+        // Code generation stage
+        JasminBackendImpl jasminGen = new JasminBackendImpl();
+        ClassFileResult classFileResult = jasminGen.toClassFile(ollirResult);
+        TestUtils.noErrors(classFileResult.getReports());
+
+        if (cache != null) {
+            cache.putClassFile(code, config, classFileResult);
+        }
+
+        return classFileResult;
+    }
+
+    /**
+     * Compiles the given Java-- code into a class file inside the output folder. With '-e' the class file is
+     * generated directly, otherwise the Jasmin code is generated and assembled.
+     *
+     * @param code
+     * @param config
+     * @param outputDir
+     * @return the generated class file
+     */
+    public File compileToFolder(String code, Map<String, String> config, File outputDir) {
+
+        if (CompilerConfig.getEmitClass(config)) {
+            return compileClass(code, config).write(outputDir);
+        }
+
+        return writeClass(compile(code, config), outputDir);
+    }
+
+    private OllirResult optimize(String code, Map<String, String> config) {
+
+        // Optimization stage
+        OllirResult ollirResult = generateOllir(code, config);
+        ollirResult = new JmmOptimizationImpl().optimize(ollirResult);
+        TestUtils.noErrors(ollirResult.getReports());
+
+        return ollirResult;
+    }
+
+    /**
+     * Generates the OLLIR code of the unit, before OLLIR-based optimizations.
+     */
+    private OllirResult generateOllir(String code, Map<String, String> config) {
+        var cachedOllir = cache == null ? Optional.<String>empty() : cache.getOllirCode(code, config);
+
+        // Semantics are needed even with cached OLLIR, for the symbol table and the reports
+        JmmSemanticsResult semanticsResult = analyse(code, config);
+
+        if (cachedOllir.isPresent()) {
+            return new OllirResult(semanticsResult, cachedOllir.get(), Collections.emptyList());
+        }
+
+        JmmOptimizationImpl ollirGen = new JmmOptimizationImpl();
+        semanticsResult = ollirGen.optimize(semanticsResult);
+        OllirResult ollirResult = ollirGen.toOllir(semanticsResult);
+        TestUtils.noErrors(ollirResult.getReports());
+
+        if (cache != null) {
+            cache.putOllirCode(code, config, ollirResult.getOllirCode());
+        }
+
+        return ollirResult;
+    }
+
+    private JmmSemanticsResult analyse(String code, Map<String, String> config) {
+        if (cache != null) {
+            var cachedSemantics = cache.getSemantics(code, config);
+            if (cachedSemantics.isPresent()) {
+                return cachedSemantics.get();
+            }
+        }
+
+        // Parsing stage
+        JmmParserImpl parser = new JmmParserImpl();
+        JmmParserResult parserResult = parser.parse(code, config);
+        TestUtils.noErrors(parserResult.getReports());
+
+        // Semantic Analysis stage
+        JmmAnalysisImpl sema = new JmmAnalysisImpl();
+        JmmSemanticsResult semanticsResult = sema.semanticAnalysis(parserResult);
+        TestUtils.noErrors(semanticsResult.getReports());
+
+        // Stored before the AST-based optimizations change the tree
+        if (cache != null) {
+            cache.putSemantics(code, semanticsResult);
+        }
+
+        return semanticsResult;
+    }
+
+    /**
+     * Assembles the Jasmin code of the given result into a class file inside the output folder.
+     * <p>
+     * Each call uses its own temporary .j file, so units with the same class name do not clash.
+     *
+     * @param jasminResult
+     * @param outputDir
+     * @return the generated class file
+     */
+    public File writeClass(JasminResult jasminResult, File outputDir) {
+        File jasminFile;
+        try {
+            // The prefix must have at least three characters, class names may be shorter
+            jasminFile = File.createTempFile("jmm_" + jasminResult.getClassName(), ".j");
+        } catch (IOException e) {
+            throw new RuntimeException("Could not create temporary file for class '" + jasminResult.getClassName() + "'", e);
+        }
+
+        try {
+            SpecsIo.write(jasminFile, jasminResult.getJasminCode());
+            return JasminUtils.assemble(jasminFile, outputDir);
+        } finally {
+            jasminFile.delete();
+        }
+    }
+}
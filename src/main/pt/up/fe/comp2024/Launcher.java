@@ -1,14 +1,9 @@
 package pt.up.fe.comp2024;
 
-import pt.up.fe.comp.TestUtils;
-import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
-import pt.up.fe.comp.jmm.ollir.OllirResult;
-import pt.up.fe.comp.jmm.parser.JmmParserResult;
-import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
-import pt.up.fe.comp2024.backend.JasminBackendImpl;
-import pt.up.fe.comp2024.optimization.JmmOptimizationImpl;
-import pt.up.fe.comp2024.parser.JmmParserImpl;
+import pt.up.fe.comp2024.backend.ClassFileResult;
+import pt.up.fe.comp2024.daemon.CompilerClient;
+import pt.up.fe.comp2024.daemon.CompilerServer;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsSystem;
 
@@ -17,9 +12,42 @@ import java.util.Map;
 public class Launcher {
 
     public static void main(String[] args) {
+        Map<String, String> config = CompilerConfig.parseArgs(args);
+
+        // Client mode, a running compiler server does the work. Returns before initializing anything else, to keep
+        // the client fast
+        var clientSocket = CompilerConfig.getClientSocket(config);
+        if (clientSocket.isPresent()) {
+            boolean success = new CompilerClient(clientSocket.get()).compile(config);
+            if (!success) {
+                System.exit(1);
+            }
+            return;
+        }
+
         SpecsSystem.programStandardInit();
 
-        Map<String, String> config = CompilerConfig.parseArgs(args);
+        // Server mode, compile requests until asked to stop
+        var serverSocket = CompilerConfig.getServerSocket(config);
+        if (serverSocket.isPresent()) {
+            new CompilerServer(serverSocket.get(), config).serve();
+            return;
+        }
+
+        // Batch mode, compile every unit in the same process
+        if (CompilerConfig.getBatch(config).isPresent()) {
+            boolean success = new BatchCompiler(config).compileAll();
+            if (!success) {
+                System.exit(1);
+            }
+            return;
+        }
+
+        // Watch mode, recompile units as they change until interrupted
+        if (CompilerConfig.getWatch(config).isPresent()) {
+            new WatchCompiler(config).watch();
+            return;
+        }
 
         var inputFile = CompilerConfig.getInputFile(config).orElseThrow();
         if (!inputFile.isFile()) {
@@ -27,35 +55,23 @@ public class Launcher {
         }
         String code = SpecsIo.read(inputFile);
 
-        // Parsing stage
-        JmmParserImpl parser = new JmmParserImpl();
-        JmmParserResult parserResult = parser.parse(code, config);
-        TestUtils.noErrors(parserResult.getReports());
-
-        // Print AST
-        //System.out.println(parserResult.getRootNode().toTree());
-
-        // Semantic Analysis stage
-        JmmAnalysisImpl sema = new JmmAnalysisImpl();
-        JmmSemanticsResult semanticsResult = sema.semanticAnalysis(parserResult);
-        TestUtils.noErrors(semanticsResult.getReports());
+        JmmCompiler compiler = JmmCompiler.fromConfig(config);
 
+        // Generates the class file directly, there is no Jasmin code
+        if (CompilerConfig.getEmitClass(config)) {
+            ClassFileResult classFileResult = compiler.compileClass(code, config);
+            CompilerConfig.getOutputDir(config).ifPresent(classFileResult::write);
+            return;
+        }
 
-        // Optimization stage
-        JmmOptimizationImpl ollirGen = new JmmOptimizationImpl();
-        OllirResult ollirResult = ollirGen.toOllir(semanticsResult);
-        TestUtils.noErrors(ollirResult.getReports());
-
-        // Print OLLIR code
-        //System.out.println(ollirResult.getOllirCode());
-
-        // Code generation stage
-        JasminBackendImpl jasminGen = new JasminBackendImpl();
-        JasminResult jasminResult = jasminGen.toJasmin(ollirResult);
-        TestUtils.noErrors(jasminResult.getReports());
+        // Runs all stages, from parsing to code generation
+        JasminResult jasminResult = compiler.compile(code, config);
 
         // Print Jasmin code
         //System.out.println(jasminResult.getJasminCode());
+
+        CompilerConfig.getOutputDir(config)
+                .ifPresent(outputDir -> compiler.writeClass(jasminResult, outputDir));
     }
 
 }
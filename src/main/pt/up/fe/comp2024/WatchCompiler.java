@@ -0,0 +1,219 @@
+package pt.up.fe.comp2024;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.parser.JmmParserImpl;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Watches a folder and recompiles the .jmm files that change, until the process is interrupted.
+ * <p>
+ * The compiler stays loaded between rounds, so only the first round pays for class loading and JIT warm-up. Each round
+ * recompiles the changed units and the units that import their classes. Dependencies are read from the import
+ * statements of the parse tree, so they are known even for units that do not pass semantic analysis. Imports are
+ * matched by the last name of the import, as that is the name of the class.
+ */
+public class WatchCompiler {
+
+    private static final String JMM_EXTENSION = ".jmm";
+
+    // Editors often write a file in several steps, events closer than this are handled in the same round
+    private static final long SETTLE_MILLIS = 100;
+
+    private final Map<String, String> config;
+    private final Path sourceDir;
+    private final BatchCompiler batchCompiler;
+
+    // Class name and imported classes of each known unit
+    private final Map<Path, UnitInfo> units;
+
+    public WatchCompiler(Map<String, String> config) {
+        this.config = config;
+        this.sourceDir = CompilerConfig.getWatch(config).orElseThrow().toPath();
+        this.batchCompiler = new BatchCompiler(config);
+        this.units = new HashMap<>();
+    }
+
+    /**
+     * Compiles all units in the folder, then recompiles them as they change. Only returns if the folder can no longer
+     * be watched.
+     */
+    public void watch() {
+        var pool = new ForkJoinPool(CompilerConfig.getJobs(config));
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            registerAll(sourceDir, watchService);
+
+            var sources = findSources(sourceDir);
+            sources.forEach(this::updateUnit);
+            compile(sources.stream().map(Path::toFile).toList(), pool);
+
+            System.out.println("Watching '" + sourceDir + "' for changes...");
+
+            while (true) {
+                var changes = waitForChanges(watchService);
+                if (changes.isEmpty()) {
+                    continue;
+                }
+
+                compile(collectDirty(changes), pool);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not watch '" + sourceDir + "'", e);
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Blocks until some files change, and returns the .jmm files that were created, modified or deleted.
+     */
+    private Set<Path> waitForChanges(WatchService watchService) throws IOException, InterruptedException {
+        Set<Path> changes = new HashSet<>();
+
+        WatchKey key = watchService.take();
+        while (key != null) {
+            var dir = (Path) key.watchable();
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+
+                // Events were lost, the only safe option is to look at every unit
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    changes.addAll(units.keySet());
+                    changes.addAll(findSources(sourceDir));
+                    continue;
+                }
+
+                var path = dir.resolve((Path) event.context());
+
+                // New folders are watched too, and their units are new units
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                    registerAll(path, watchService);
+                    changes.addAll(findSources(path));
+                    continue;
+                }
+
+                if (path.toString().endsWith(JMM_EXTENSION)) {
+                    changes.add(path);
+                }
+            }
+
+            key.reset();
+            key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        return changes;
+    }
+
+    /**
+     * Updates the known units with the changed files, and returns the units that need to be compiled again.
+     */
+    private List<File> collectDirty(Set<Path> changes) {
+        Set<String> changedClasses = new HashSet<>();
+        Set<Path> dirty = new HashSet<>();
+
+        for (var path : changes) {
+            // The old name matters if the class was renamed or deleted, the new one if it was created
+            var oldUnit = units.get(path);
+            if (oldUnit != null && oldUnit.className() != null) {
+                changedClasses.add(oldUnit.className());
+            }
+
+            if (!Files.isRegularFile(path)) {
+                units.remove(path);
+                continue;
+            }
+
+            updateUnit(path);
+            var className = units.get(path).className();
+            if (className != null) {
+                changedClasses.add(className);
+            }
+            dirty.add(path);
+        }
+
+        units.forEach((path, unit) -> {
+            if (unit.imports().stream().anyMatch(changedClasses::contains)) {
+                dirty.add(path);
+            }
+        });
+
+        return dirty.stream().sorted().map(Path::toFile).toList();
+    }
+
+    private void compile(List<File> sources, ForkJoinPool pool) {
+        if (sources.isEmpty()) {
+            return;
+        }
+
+        batchCompiler.compileUnits(sources, pool);
+    }
+
+    /**
+     * Reads the class name and imports of the given unit. If the unit does not parse, keeps what was known about it.
+     */
+    private void updateUnit(Path source) {
+        var parserResult = new JmmParserImpl().parse(SpecsIo.read(source.toFile()), config);
+        var rootNode = parserResult.getRootNode();
+
+        if (rootNode == null) {
+            units.putIfAbsent(source, new UnitInfo(null, Set.of()));
+            return;
+        }
+
+        var className = rootNode.getChildren(Kind.CLASS_DECL).stream()
+                .map(classDecl -> classDecl.get("name"))
+                .findFirst()
+                .orElse(null);
+
+        Set<String> imports = new HashSet<>();
+        for (JmmNode importStmt : rootNode.getChildren(Kind.IMPORT_STMT)) {
+            imports.add(importStmt.get("ID"));
+        }
+
+        units.put(source, new UnitInfo(className, imports));
+    }
+
+    private static void registerAll(Path dir, WatchService watchService) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (var subDir : paths.filter(Files::isDirectory).toList()) {
+                subDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+    }
+
+    private static List<Path> findSources(Path dir) {
+        return BatchCompiler.collectSources(dir.toFile()).stream()
+                .map(File::toPath)
+                .toList();
+    }
+
+    /**
+     * What is known about a unit, className is null if the unit does not declare a class.
+     */
+    private record UnitInfo(String className, Set<String> imports) {
+    }
+}
@@ -15,11 +15,11 @@ import java.util.List;
 
 public class JmmAnalysisImpl implements JmmAnalysis {
 
-
-    private final List<AnalysisPass> analysisPasses;
-
-    public JmmAnalysisImpl() {
-        this.analysisPasses = List.of(new UndeclaredVariable(), new CheckOpType(), new CheckArrayInit(), new CheckEqualType(), new CheckObjects(), new CheckMethod());
+    /**
+     * Passes accumulate reports while visiting, so each analysis gets fresh instances.
+     */
+    private List<AnalysisPass> createPasses() {
+        return List.of(new UndeclaredVariable(), new CheckOpType(), new CheckArrayInit(), new CheckEqualType(), new CheckObjects(), new CheckMethod());
     }
 
     @Override
@@ -32,7 +32,7 @@ public class JmmAnalysisImpl implements JmmAnalysis {
         List<Report> reports = new ArrayList<>();
 
         // Visit all nodes in the AST
-        for (var analysisPass : analysisPasses) {
+        for (var analysisPass : createPasses()) {
             try {
                 var passReports = analysisPass.analyze(rootNode, table);
                 reports.addAll(passReports);
@@ -20,7 +20,6 @@ public class CheckArrayInit extends AnalysisVisitor{
         addVisit(Kind.METHOD_DECL, this::visitMethodDecl);
         addVisit(Kind.ARRAY_INITIALIZATION, this::visitArrayInitialization);
         addVisit(Kind.ARRAY_ACCESS_EXPR, this::visitArrayAccess);
-        addVisit(Kind.WHILE_STATEMENT, this::visitWhileStmt);
     }
 
     private Void visitMethodDecl(JmmNode method, SymbolTable symTable){
@@ -206,22 +205,4 @@ public class CheckArrayInit extends AnalysisVisitor{
         }
         return null;
     }
-
-
-    private Void visitWhileStmt(JmmNode whileStmt, SymbolTable symTable) {
-        JmmNode expr = whileStmt.getChild(0);
-        if (!expr.getKind().equals("BooleanExpr") || !expr.getKind().equals("BooleanLiteral")) {
-            var message = String.format("Expected boolean in while loop");
-            addReport(Report.newError(
-                    Stage.SEMANTIC,
-                    NodeUtils.getLine(whileStmt),
-                    NodeUtils.getColumn(whileStmt),
-                    message,
-                    null)
-            );
-            return null;
-        }
-
-        return null;
-    }
 }
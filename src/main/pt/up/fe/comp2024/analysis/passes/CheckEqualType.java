@@ -14,6 +14,7 @@ import pt.up.fe.specs.util.SpecsCheck;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 public class CheckEqualType extends AnalysisVisitor{
     private String currentMethod;
 
@@ -121,6 +122,11 @@ public class CheckEqualType extends AnalysisVisitor{
                 leftType = getMethodCallType(leftOperand, symTable);
                 break;
             }
+            case "BinaryExpr":{
+                // null once its own error is reported
+                leftType = Objects.requireNonNullElse(getBinaryExprType(leftOperand, symTable), "");
+                break;
+            }
         }
 
         switch (rightOperand.getKind()){
@@ -140,6 +146,11 @@ public class CheckEqualType extends AnalysisVisitor{
                 rightType = getMethodCallType(rightOperand, symTable);
                 break;
             }
+            case "BinaryExpr":{
+                // null once its own error is reported
+                rightType = Objects.requireNonNullElse(getBinaryExprType(rightOperand, symTable), "");
+                break;
+            }
         }
 
         if(leftType.equals("assume_correct")){
@@ -247,7 +258,8 @@ public class CheckEqualType extends AnalysisVisitor{
                 rightType = "int";
                 break;
             }
-            case "BooleanLiteral":{
+            case "BooleanLiteral", "BooleanExpr", "UnaryExpr":{
+                // The operands are checked with the expression
                 rightType = "boolean";
                 break;
             }
@@ -381,7 +381,8 @@ public class CheckMethod extends AnalysisVisitor {
                 break;
             case "BooleanExpr":
             case "BooleanLiteral":
-                returnType = "bool";
+            case "UnaryExpr":
+                returnType = "boolean";
                 break;
             case "VarRefExpr":
                 var name = returnStmt.getChild(0).get("name");
@@ -193,72 +193,26 @@ public class CheckOpType extends AnalysisVisitor {
         return null;
     }
 
+    private String getBoolOperandType(JmmNode operand, SymbolTable symTable){
+        String type = switch (operand.getKind()) {
+            case "IntegerLiteral" -> "int";
+            case "BooleanLiteral", "BooleanExpr", "UnaryExpr" -> "boolean";
+            case "VarRefExpr" -> getVarRefType(operand, symTable);
+            case "MethodExpr" -> getMethodCallType(operand, symTable);
+            case "BinaryExpr" -> getBinaryExprType(operand, symTable);
+            case "Parenthesis" -> getBoolOperandType(operand.getChild(0), symTable);
+            default -> "";
+        };
+        return type == null ? "" : type;
+    }
+
     private String getBoolExprType(JmmNode booleanExpr, SymbolTable symTable){
         SpecsCheck.checkNotNull(currentMethod, () -> "Expected method to be set");
 
         JmmNode leftOperand = booleanExpr.getChild(0);
         JmmNode rightOperand = booleanExpr.getChild(1);
-        String leftType = "";
-        String rightType = "";
-
-        switch (leftOperand.getKind()){
-            case "IntegerLiteral":{
-                leftType = "int";
-                var message = String.format("Found a Integer in a boolean expression");
-                addReport(Report.newError(
-                        Stage.SEMANTIC,
-                        NodeUtils.getLine(booleanExpr),
-                        NodeUtils.getColumn(booleanExpr),
-                        message,
-                        null)
-                );
-                return null;
-            }
-            case "BooleanLiteral":{
-                leftType = "boolean";
-                break;
-            }
-            case "VarRefExpr":{
-                leftType = getVarRefType(leftOperand, symTable);
-                break;
-            }
-            case "MethodExpr":{
-                leftType = getMethodCallType(leftOperand, symTable);
-                break;
-            }
-            case "BinaryExpr":{
-                leftType = getBinaryExprType(leftOperand, symTable);
-                break;
-            }
-
-        }
-
-        switch (rightOperand.getKind()){
-            case "IntegerLiteral":{
-                rightType = "int";
-                var message = String.format("Found a Integer in a boolean expression");
-                addReport(Report.newError(
-                        Stage.SEMANTIC,
-                        NodeUtils.getLine(booleanExpr),
-                        NodeUtils.getColumn(booleanExpr),
-                        message,
-                        null)
-                );
-                return null;
-            }
-            case "BooleanLiteral":{
-                rightType = "boolean";
-                break;
-            }
-            case "VarRefExpr":{
-                rightType = getVarRefType(rightOperand,symTable);
-                break;
-            }
-            case "MethodExpr":{
-                rightType = getMethodCallType(rightOperand, symTable);
-                break;
-            }
-        }
+        String leftType = getBoolOperandType(leftOperand, symTable);
+        String rightType = getBoolOperandType(rightOperand, symTable);
 
         if(leftType.equals("assume_correct")){
             if(rightType.equals("assume_correct")){
@@ -274,7 +228,9 @@ public class CheckOpType extends AnalysisVisitor {
 
         String op = booleanExpr.get("op");
         if(op.equals("||") || op.equals("&&") || op.equals("<") || op.equals(">")){
-            if(leftType.equals("boolean") && rightType.equals("boolean")){
+            // Comparisons take integers, the logical operators take booleans
+            String operandType = op.equals("<") || op.equals(">") ? "int" : "boolean";
+            if(leftType.equals(operandType) && rightType.equals(operandType)){
                 return "boolean";
             }else{
                 var message = String.format("Cannot perform '%s' on '%s'", op, rightType);
@@ -618,10 +574,18 @@ public class CheckOpType extends AnalysisVisitor {
         return null;
     }
 
+    /**
+     * A condition is any boolean expression, including variables, negations and calls
+     */
+    private boolean isCondition(JmmNode expr, SymbolTable symTable){
+        String type = getBoolOperandType(expr, symTable);
+        return type.equals("boolean") || type.equals("assume_correct");
+    }
+
     private Void visitIfStmt(JmmNode ifStmt, SymbolTable symTable){
         JmmNode expr = ifStmt.getChild(0);
 
-            if (!expr.getKind().equals("BooleanExpr") || !expr.getKind().equals("BooleanLiteral")){
+            if (!isCondition(expr, symTable)){
                 var message = String.format("Invalid if statement");
                 addReport(Report.newError(
                         Stage.SEMANTIC,
@@ -636,7 +600,7 @@ public class CheckOpType extends AnalysisVisitor {
     }
 
     private Void visitElseStmt(JmmNode elseStmt, SymbolTable symTable){
-        if(elseStmt.getParent().getKind().equals("ifChainStatemnt")){
+        if(elseStmt.getParent().getKind().equals("IfChainStatement")){
             return null;
         }else{
             var message = String.format("Else missing If statement");
@@ -654,8 +618,8 @@ public class CheckOpType extends AnalysisVisitor {
     private Void visitWhileStmt(JmmNode whileStmt, SymbolTable symTable){
         JmmNode expr = whileStmt.getChild(0);
 
-        if (!expr.getKind().equals("BooleanExpr") || !expr.getKind().equals("BooleanLiteral")){
-            var message = String.format("Invalid if statement");
+        if (!isCondition(expr, symTable)){
+            var message = String.format("Expected boolean in while loop");
             addReport(Report.newError(
                     Stage.SEMANTIC,
                     NodeUtils.getLine(whileStmt),
@@ -673,62 +637,8 @@ public class CheckOpType extends AnalysisVisitor {
 
         JmmNode leftOperand = booleanExpr.getChild(0);
         JmmNode rightOperand = booleanExpr.getChild(1);
-        String leftType = "";
-        String rightType = "";
-
-        switch (leftOperand.getKind()){
-            case "IntegerLiteral":{
-                leftType = "int";
-                var message = String.format("Found a Integer in a boolean expression");
-                addReport(Report.newError(
-                        Stage.SEMANTIC,
-                        NodeUtils.getLine(booleanExpr),
-                        NodeUtils.getColumn(booleanExpr),
-                        message,
-                        null)
-                );
-                return null;
-            }
-            case "BooleanLiteral":{
-                leftType = "boolean";
-                break;
-            }
-            case "VarRefExpr":{
-                leftType = getVarRefType(leftOperand, symTable);
-                break;
-            }
-            case "MethodExpr":{
-                leftType = getMethodCallType(leftOperand, symTable);
-                break;
-            }
-        }
-
-        switch (rightOperand.getKind()){
-            case "IntegerLiteral":{
-                rightType = "int";
-                var message = String.format("Found a Integer in a boolean expression");
-                addReport(Report.newError(
-                        Stage.SEMANTIC,
-                        NodeUtils.getLine(booleanExpr),
-                        NodeUtils.getColumn(booleanExpr),
-                        message,
-                        null)
-                );
-                return null;
-            }
-            case "BooleanLiteral":{
-                rightType = "boolean";
-                break;
-            }
-            case "VarRefExpr":{
-                rightType = getVarRefType(rightOperand,symTable);
-                break;
-            }
-            case "MethodExpr":{
-                rightType = getMethodCallType(rightOperand, symTable);
-                break;
-            }
-        }
+        String leftType = getBoolOperandType(leftOperand, symTable);
+        String rightType = getBoolOperandType(rightOperand, symTable);
 
         if(leftType.equals("assume_correct")){
             if(rightType.equals("assume_correct")){
@@ -744,7 +654,9 @@ public class CheckOpType extends AnalysisVisitor {
 
         String op = booleanExpr.get("op");
         if(op.equals("||") || op.equals("&&") || op.equals("<") || op.equals(">")){
-            if(leftType.equals("boolean") && rightType.equals("boolean")){
+            // Comparisons take integers, the logical operators take booleans
+            String operandType = op.equals("<") || op.equals(">") ? "int" : "boolean";
+            if(leftType.equals(operandType) && rightType.equals(operandType)){
                 return null;
             }else{
                 var message = String.format("Cannot perform '%s' on '%s'", op, rightType);
@@ -34,7 +34,12 @@ public enum Kind {
     METHOD_CALL,
     NEW_ARRAY,
     SOMETHING,
-    CALL_METHOD;
+    CALL_METHOD,
+    CODE_BLOCK,
+    IF_STATEMENT,
+    ELSE_IF_STATEMENT,
+    ELSE_STATEMENT,
+    PARENTHESIS;
 
 
 
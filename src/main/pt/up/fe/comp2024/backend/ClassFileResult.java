@@ -0,0 +1,79 @@
+package pt.up.fe.comp2024.backend;
+
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.StageResult;
+import pt.up.fe.specs.util.SpecsCollections;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class file generated directly from OLLIR, see {@link JasminBackendImpl#toClassFile(OllirResult)}.
+ */
+public class ClassFileResult implements StageResult {
+
+    private final String className;
+    private final byte[] classBytes;
+    private final List<Report> reports;
+    private final Map<String, String> config;
+
+    public ClassFileResult(OllirResult ollirResult, String className, byte[] classBytes, List<Report> reports) {
+        this(className, classBytes, SpecsCollections.concat(ollirResult.getReports(), reports),
+                ollirResult.getConfig());
+    }
+
+    /**
+     * @param reports all the reports of the unit
+     */
+    public ClassFileResult(String className, byte[] classBytes, List<Report> reports, Map<String, String> config) {
+        this.className = className;
+        this.classBytes = classBytes;
+        this.reports = reports;
+        this.config = config;
+    }
+
+    /**
+     * @return the internal name of the class, e.g. pkg/Foo
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    public byte[] getClassBytes() {
+        return classBytes;
+    }
+
+    @Override
+    public List<Report> getReports() {
+        return reports;
+    }
+
+    @Override
+    public Map<String, String> getConfig() {
+        return config;
+    }
+
+    /**
+     * Writes the class file inside the output folder, in the subfolder of its package.
+     *
+     * @param outputDir
+     * @return the class file
+     */
+    public File write(File outputDir) {
+        var classFile = new File(outputDir, className + ".class");
+
+        try {
+            Files.createDirectories(classFile.getParentFile().toPath());
+            Files.write(classFile.toPath(), classBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write class file '" + classFile + "'", e);
+        }
+
+        return classFile;
+    }
+}
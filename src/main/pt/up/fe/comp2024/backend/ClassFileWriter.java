@@ -0,0 +1,362 @@
+package pt.up.fe.comp2024.backend;
+
+import pt.up.fe.comp2024.backend.JvmInstruction.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a {@link JvmClass} directly as the bytes of a class file, without going through Jasmin.
+ * <p>
+ * Uses class file version 49 (Java 5), the last one that does not require StackMapTable attributes, so the JVM
+ * verifies the code by type inference, as it does for the classes assembled by Jasmin.
+ */
+public class ClassFileWriter {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int MAJOR_VERSION = 49;
+    private static final int MINOR_VERSION = 0;
+
+    private static final int WIDE = 0xc4;
+
+    private final JvmClass jvmClass;
+    private final ConstantPool constantPool;
+
+    private ClassFileWriter(JvmClass jvmClass) {
+        this.jvmClass = jvmClass;
+        this.constantPool = new ConstantPool();
+    }
+
+    /**
+     * @param jvmClass
+     * @return the contents of the class file of the given class
+     */
+    public static byte[] write(JvmClass jvmClass) {
+        return new ClassFileWriter(jvmClass).write();
+    }
+
+    private byte[] write() {
+
+        // The constant pool comes before everything else, so the body is written first
+        var body = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(body)) {
+            out.writeShort(jvmClass.getAccessFlags());
+            out.writeShort(constantPool.addClass(jvmClass.getName()));
+            out.writeShort(constantPool.addClass(jvmClass.getSuperName()));
+
+            // interfaces
+            out.writeShort(0);
+
+            out.writeShort(jvmClass.getFields().size());
+            for (var field : jvmClass.getFields()) {
+                out.writeShort(field.accessFlags());
+                out.writeShort(constantPool.addUtf8(field.name()));
+                out.writeShort(constantPool.addUtf8(field.descriptor()));
+                // attributes
+                out.writeShort(0);
+            }
+
+            out.writeShort(jvmClass.getMethods().size());
+            for (var method : jvmClass.getMethods()) {
+                writeMethod(method, out);
+            }
+
+            // class attributes
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        var classFile = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(classFile)) {
+            out.writeInt(MAGIC);
+            out.writeShort(MINOR_VERSION);
+            out.writeShort(MAJOR_VERSION);
+            constantPool.write(out);
+            body.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return classFile.toByteArray();
+    }
+
+    private void writeMethod(JvmMethod method, DataOutputStream out) throws IOException {
+        out.writeShort(method.getAccessFlags());
+        out.writeShort(constantPool.addUtf8(method.getName()));
+        out.writeShort(constantPool.addUtf8(method.getDescriptor()));
+
+        var code = assemble(method.getInstructions());
+
+        // a single attribute, the code
+        out.writeShort(1);
+        out.writeShort(constantPool.addUtf8("Code"));
+        // max_stack, max_locals, code_length, code, exception_table_length, attributes_count
+        out.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+        out.writeShort(method.getMaxStack());
+        out.writeShort(method.getMaxLocals());
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    /**
+     * Converts the instructions to bytecode. The size of each instruction is known before labels are resolved, so the
+     * offsets of the labels are computed in a first pass, and the code is written in a second one.
+     */
+    private byte[] assemble(List<JvmInstruction> instructions) throws IOException {
+
+        Map<String, Integer> labelOffsets = new HashMap<>();
+        List<Integer> offsets = new ArrayList<>(instructions.size());
+
+        int offset = 0;
+        for (var inst : instructions) {
+            offsets.add(offset);
+
+            if (inst instanceof Label label) {
+                labelOffsets.put(label.name(), offset);
+                continue;
+            }
+
+            offset += getSize(inst);
+        }
+
+        var code = new ByteArrayOutputStream(offset);
+        var out = new DataOutputStream(code);
+
+        for (int i = 0; i < instructions.size(); i++) {
+            writeInstruction(instructions.get(i), offsets.get(i), labelOffsets, out);
+        }
+
+        return code.toByteArray();
+    }
+
+    private int getSize(JvmInstruction inst) {
+        if (inst instanceof Simple) {
+            return 1;
+        }
+
+        if (inst instanceof IntOperand intOperand) {
+            return switch (intOperand.opcode()) {
+                case BIPUSH, NEWARRAY -> 2;
+                case SIPUSH -> 3;
+                case LDC -> constantPool.addInteger(intOperand.value()) <= 0xff ? 2 : 3;
+                // loads and stores
+                default -> intOperand.value() <= 0xff ? 2 : 4;
+            };
+        }
+
+        if (inst instanceof Iinc iinc) {
+            return isByte(iinc.increment()) && iinc.local() <= 0xff ? 3 : 6;
+        }
+
+        // jumps, field and method instructions, new
+        return 3;
+    }
+
+    private void writeInstruction(JvmInstruction inst, int offset, Map<String, Integer> labelOffsets,
+                                  DataOutputStream out) throws IOException {
+
+        if (inst instanceof Label) {
+            return;
+        }
+
+        if (inst instanceof Simple) {
+            out.writeByte(inst.opcode().getCode());
+            return;
+        }
+
+        if (inst instanceof IntOperand intOperand) {
+            var value = intOperand.value();
+
+            switch (intOperand.opcode()) {
+                case BIPUSH, NEWARRAY -> {
+                    out.writeByte(intOperand.opcode().getCode());
+                    out.writeByte(value);
+                }
+                case SIPUSH -> {
+                    out.writeByte(intOperand.opcode().getCode());
+                    out.writeShort(value);
+                }
+                case LDC -> {
+                    var index = constantPool.addInteger(value);
+                    if (index <= 0xff) {
+                        out.writeByte(JvmOpcode.LDC.getCode());
+                        out.writeByte(index);
+                    } else {
+                        // ldc_w
+                        out.writeByte(0x13);
+                        out.writeShort(index);
+                    }
+                }
+                default -> {
+                    if (value <= 0xff) {
+                        out.writeByte(intOperand.opcode().getCode());
+                        out.writeByte(value);
+                    } else {
+                        out.writeByte(WIDE);
+                        out.writeByte(intOperand.opcode().getCode());
+                        out.writeShort(value);
+                    }
+                }
+            }
+            return;
+        }
+
+        if (inst instanceof Iinc iinc) {
+            if (isByte(iinc.increment()) && iinc.local() <= 0xff) {
+                out.writeByte(JvmOpcode.IINC.getCode());
+                out.writeByte(iinc.local());
+                out.writeByte(iinc.increment());
+            } else {
+                out.writeByte(WIDE);
+                out.writeByte(JvmOpcode.IINC.getCode());
+                out.writeShort(iinc.local());
+                out.writeShort(iinc.increment());
+            }
+            return;
+        }
+
+        if (inst instanceof Jump jump) {
+            var target = labelOffsets.get(jump.label());
+            if (target == null) {
+                throw new RuntimeException("Jump to undefined label '" + jump.label() + "' in class " + jvmClass.getName());
+            }
+
+            var relative = target - offset;
+            if (relative < Short.MIN_VALUE || relative > Short.MAX_VALUE) {
+                throw new RuntimeException("Jump to label '" + jump.label() + "' is too far, in class " + jvmClass.getName());
+            }
+
+            out.writeByte(jump.opcode().getCode());
+            out.writeShort(relative);
+            return;
+        }
+
+        if (inst instanceof Member member) {
+            var isField = switch (member.opcode()) {
+                case GETFIELD, PUTFIELD, GETSTATIC, PUTSTATIC -> true;
+                default -> false;
+            };
+
+            out.writeByte(member.opcode().getCode());
+            out.writeShort(constantPool.addMemberRef(isField, member.owner(), member.name(), member.descriptor()));
+            return;
+        }
+
+        if (inst instanceof TypeOperand typeOperand) {
+            out.writeByte(typeOperand.opcode().getCode());
+            out.writeShort(constantPool.addClass(typeOperand.className()));
+            return;
+        }
+
+        throw new IllegalArgumentException("Unexpected instruction: " + inst);
+    }
+
+    private static boolean isByte(int value) {
+        return value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE;
+    }
+
+    /**
+     * The constant pool of the class. Each constant is added once, later additions return the existing index.
+     */
+    private static class ConstantPool {
+
+        private static final int CONSTANT_UTF8 = 1;
+        private static final int CONSTANT_INTEGER = 3;
+        private static final int CONSTANT_CLASS = 7;
+        private static final int CONSTANT_FIELDREF = 9;
+        private static final int CONSTANT_METHODREF = 10;
+        private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+        private final ByteArrayOutputStream bytes;
+        private final DataOutputStream out;
+        private final Map<String, Integer> indexes;
+        private int count;
+
+        ConstantPool() {
+            this.bytes = new ByteArrayOutputStream();
+            this.out = new DataOutputStream(bytes);
+            this.indexes = new HashMap<>();
+            // index 0 is not used
+            this.count = 1;
+        }
+
+        int addUtf8(String value) {
+            return add("utf8:" + value, () -> {
+                out.writeByte(CONSTANT_UTF8);
+                out.writeUTF(value);
+            });
+        }
+
+        int addInteger(int value) {
+            return add("int:" + value, () -> {
+                out.writeByte(CONSTANT_INTEGER);
+                out.writeInt(value);
+            });
+        }
+
+        int addClass(String internalName) {
+            var nameIndex = addUtf8(internalName);
+            return add("class:" + internalName, () -> {
+                out.writeByte(CONSTANT_CLASS);
+                out.writeShort(nameIndex);
+            });
+        }
+
+        int addMemberRef(boolean isField, String owner, String name, String descriptor) {
+            var classIndex = addClass(owner);
+            var nameAndTypeIndex = addNameAndType(name, descriptor);
+            var tag = isField ? CONSTANT_FIELDREF : CONSTANT_METHODREF;
+
+            return add(tag + ":" + owner + "." + name + ":" + descriptor, () -> {
+                out.writeByte(tag);
+                out.writeShort(classIndex);
+                out.writeShort(nameAndTypeIndex);
+            });
+        }
+
+        private int addNameAndType(String name, String descriptor) {
+            var nameIndex = addUtf8(name);
+            var descriptorIndex = addUtf8(descriptor);
+
+            return add("nat:" + name + ":" + descriptor, () -> {
+                out.writeByte(CONSTANT_NAME_AND_TYPE);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+        }
+
+        private int add(String key, ConstantWriter writer) {
+            var index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+
+            try {
+                writer.write();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            indexes.put(key, count);
+            return count++;
+        }
+
+        void write(DataOutputStream classOut) throws IOException {
+            classOut.writeShort(count);
+            bytes.writeTo(classOut);
+        }
+
+        private interface ConstantWriter {
+            void write() throws IOException;
+        }
+    }
+}
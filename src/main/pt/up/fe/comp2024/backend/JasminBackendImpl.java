@@ -1,18 +1,14 @@
 package pt.up.fe.comp2024.backend;
 
-import org.specs.comp.ollir.ClassUnit;
 import pt.up.fe.comp.jmm.jasmin.JasminBackend;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 
+/**
+ * Stateless, the same instance can generate code for several OLLIR results at the same time.
+ */
 public class JasminBackendImpl implements JasminBackend {
 
-    ClassUnit classUnit;
-    StringBuilder jasminCode;
-    String superClass;
-    int limit_stack = 99;
-    int limit_locals = 99;
-
     @Override
     public JasminResult toJasmin(OllirResult ollirResult) {
 
@@ -22,4 +18,19 @@ public class JasminBackendImpl implements JasminBackend {
         return new JasminResult(ollirResult, jasminCode, jasminGenerator.getReports());
     }
 
+    /**
+     * Generates the class file directly, skipping the printing and parsing of Jasmin code.
+     *
+     * @param ollirResult
+     * @return the class file
+     */
+    public ClassFileResult toClassFile(OllirResult ollirResult) {
+
+        var jasminGenerator = new JasminGenerator(ollirResult);
+        var jvmClass = jasminGenerator.buildClass();
+
+        return new ClassFileResult(ollirResult, jvmClass.getName(), ClassFileWriter.write(jvmClass),
+                jasminGenerator.getReports());
+    }
+
 }
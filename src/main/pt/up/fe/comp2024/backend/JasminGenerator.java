@@ -4,119 +4,121 @@ import org.specs.comp.ollir.*;
 import org.specs.comp.ollir.tree.TreeNode;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.report.Report;
-import pt.up.fe.specs.util.classmap.FunctionClassMap;
+import pt.up.fe.comp2024.backend.JvmInstruction.*;
+import pt.up.fe.comp2024.optimization.dataflow.DefUse;
+import pt.up.fe.specs.util.classmap.BiConsumerClassMap;
 import pt.up.fe.specs.util.exceptions.NotImplementedException;
-import pt.up.fe.specs.util.utilities.StringLines;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 /**
- * Generates Jasmin code from an OllirResult.
+ * Generates JVM code from an OllirResult, either as Jasmin code or as a class file.
  * <p>
- * One JasminGenerator instance per OllirResult.
+ * The OLLIR class is first lowered to a {@link JvmClass}, which is then printed by {@link JasminPrinter} or written
+ * by {@link ClassFileWriter}. One JasminGenerator instance per OllirResult.
  */
 public class JasminGenerator {
 
-    private static final String NL = "\n";
-    private static final String TAB = "   ";
+    // Type code of newarray for int arrays
+    private static final int T_INT = 10;
 
     private final OllirResult ollirResult;
 
     List<Report> reports;
 
+    JvmClass jvmClass;
+
     String code;
 
     Method currentMethod;
 
-    private final FunctionClassMap<TreeNode, String> generators;
+    // Labels of the current method, by the instruction they mark
+    private Map<Instruction, List<String>> currentLabels;
+
+    // Used to create labels that do not clash with the labels of the current method
+    private int labelCounter;
+
+    private final BiConsumerClassMap<TreeNode, List<JvmInstruction>> generators;
 
     public JasminGenerator(OllirResult ollirResult) {
         this.ollirResult = ollirResult;
-        System.out.println(ollirResult.getOllirCode());
         reports = new ArrayList<>();
+        jvmClass = null;
         code = null;
         currentMethod = null;
 
-        this.generators = new FunctionClassMap<>();
-        generators.put(ClassUnit.class, this::generateClassUnit);
-        generators.put(Method.class, this::generateMethod);
+        this.generators = new BiConsumerClassMap<>();
         generators.put(AssignInstruction.class, this::generateAssign);
         generators.put(SingleOpInstruction.class, this::generateSingleOp);
         generators.put(LiteralElement.class, this::generateLiteral);
         generators.put(Operand.class, this::generateOperand);
         generators.put(BinaryOpInstruction.class, this::generateBinaryOp);
+        generators.put(UnaryOpInstruction.class, this::generateUnaryOp);
         generators.put(ReturnInstruction.class, this::generateReturn);
-        generators.put(CallInstruction.class, this::generateCallInstr);
-        generators.put(PutFieldInstruction.class, this::generatePutInstr);
-        generators.put(GetFieldInstruction.class, this::generateGetInstr);
-        generators.put(OpCondInstruction.class, this::generateOpCondInstruction);
-        generators.put(GotoInstruction.class, this::generateGoToInstruction);
-        generators.put(SingleOpCondInstruction.class, this::generateSingleOpInstruction);
-        generators.put(UnaryOpInstruction.class, this::generateUnaryOpInstruction);
+        generators.put(CallInstruction.class, this::generateCall);
+        generators.put(PutFieldInstruction.class, this::generatePutField);
+        generators.put(GetFieldInstruction.class, this::generateGetField);
+        generators.put(OpCondInstruction.class, this::generateOpCond);
+        generators.put(SingleOpCondInstruction.class, this::generateSingleOpCond);
+        generators.put(GotoInstruction.class, this::generateGoto);
     }
 
     public List<Report> getReports() {
         return reports;
     }
 
+    /**
+     * @return the Jasmin code of the class
+     */
     public String build() {
 
         // This way, build is idempotent
         if (code == null) {
-            code = generators.apply(ollirResult.getOllirClass());
+            code = JasminPrinter.print(buildClass());
         }
 
         return code;
     }
 
-    private String getTypeJasmin(Type type) {
-        return switch (type.getTypeOfElement()) {
-            case INT32 -> "I";
-            case BOOLEAN -> "Z";
-            case ARRAYREF -> {
-                ArrayType arrayType = (ArrayType) type;
-                yield "[" + getTypeJasmin(arrayType.getElementType());
-            }
-            case OBJECTREF -> "Ljava/lang/Object";
-            case CLASS -> {
-                ClassType classType = (ClassType) type;
-                yield "L" + getTypeJasmin(classType);
-            }
-            case THIS -> null;
-            case STRING -> "Ljava/lang/String;";
-            case VOID -> "V";
-        };
-    }
+    /**
+     * @return the class, before being printed or written
+     */
+    public JvmClass buildClass() {
+
+        if (jvmClass == null) {
+            jvmClass = generateClassUnit(ollirResult.getOllirClass());
+        }
 
+        return jvmClass;
+    }
 
-    private String generateClassUnit(ClassUnit classUnit) {
+    private JvmClass generateClassUnit(ClassUnit classUnit) {
 
-        var code = new StringBuilder();
+        var superClass = classUnit.getSuperClass() == null ? "java/lang/Object" : getClassName(classUnit.getSuperClass());
 
-        // generate class name
-        var className = ollirResult.getOllirClass().getClassName();
-        code.append(".class ").append(className).append(NL).append(NL);
+        var jvmClass = new JvmClass(getClassName(classUnit.getClassName()), superClass,
+                getAccessFlags(classUnit.getClassAccessModifier(), classUnit.isStaticClass(), classUnit.isFinalClass())
+                        | JvmClass.ACC_SUPER);
 
-        String superClass = classUnit.getSuperClass();
-        if (superClass == null) {
-            superClass = " java/lang/Object";
+        for (var field : classUnit.getFields()) {
+            var accessFlags = getAccessFlags(field.getFieldAccessModifier(), field.isStaticField(), field.isFinalField());
+            jvmClass.getFields().add(new JvmClass.JvmField(accessFlags, field.getFieldName(), getDescriptor(field.getFieldType())));
         }
-        code.append(".super ").append(superClass).append(NL);
-        // generate a single constructor method
-        var startConstructor = """
-                .method public <init>()V
-                    aload_0
-                    invokespecial""";
-        var endConstructor = """
-                    return
-                .end method
-                """;
-        code.append(startConstructor).append(" ").append(superClass).append("/<init>()V").append(NL).append(endConstructor).append(NL);
+
+        // generate a single constructor method, that receives no arguments
+        var constructor = new JvmMethod(JvmClass.ACC_PUBLIC, "<init>", "()V");
+        constructor.getInstructions().add(new Simple(JvmOpcode.ALOAD_0));
+        constructor.getInstructions().add(new Member(JvmOpcode.INVOKESPECIAL, superClass, "<init>", "()V"));
+        constructor.getInstructions().add(new Simple(JvmOpcode.RETURN));
+        constructor.setMaxStack(StackCalculator.getMaxStack(constructor.getInstructions()));
+        constructor.setMaxLocals(1);
+        jvmClass.getMethods().add(constructor);
 
         // generate code for all other methods
-        for (var method : ollirResult.getOllirClass().getMethods()) {
+        for (var method : classUnit.getMethods()) {
 
             // Ignore constructor, since there is always one constructor
             // that receives no arguments, and has been already added
@@ -125,324 +127,632 @@ public class JasminGenerator {
                 continue;
             }
 
-            code.append(generators.apply(method));
+            jvmClass.getMethods().add(generateMethod(method));
         }
 
-        return code.toString();
+        return jvmClass;
     }
 
-
-    private String generateMethod(Method method) {
+    private JvmMethod generateMethod(Method method) {
 
         // set method
         currentMethod = method;
+        currentLabels = new HashMap<>();
+        method.getLabels().forEach((label, inst) -> currentLabels.computeIfAbsent(inst, key -> new ArrayList<>()).add(label));
+        labelCounter = 0;
 
-        var code = new StringBuilder();
-
-        // calculate modifier
-        var modifier = method.getMethodAccessModifier() != AccessModifier.DEFAULT ?
-                method.getMethodAccessModifier().name().toLowerCase() + " " :
-                "";
-
-        var methodName = method.getMethodName();
+        var accessFlags = getAccessFlags(method.getMethodAccessModifier(), method.isStaticMethod(), method.isFinalMethod());
 
-        if(method.isStaticMethod()){
-            modifier += "static ";
+        var descriptor = new StringBuilder("(");
+        for (var param : method.getParams()) {
+            descriptor.append(getDescriptor(param.getType()));
         }
+        descriptor.append(")").append(getDescriptor(method.getReturnType()));
 
-        code.append("\n.method ").append(modifier).append(methodName).append("(");
-        for(var param : method.getParams()){
-            code.append(getTypeJasmin(param.getType()));
-        }
-        code.append(")").append(getTypeJasmin(method.getReturnType())).append(NL);
+        var jvmMethod = new JvmMethod(accessFlags, method.getMethodName(), descriptor.toString());
+        var code = jvmMethod.getInstructions();
 
-        // Add limits
-        code.append(TAB).append(".limit stack 98").append(NL);
-        code.append(TAB).append(".limit locals 98").append(NL);
+        var instructions = method.getInstructions();
+        var useCounts = countUses(method);
+        for (int i = 0; i < instructions.size(); i++) {
+            var inst = instructions.get(i);
+            for (var label : currentLabels.getOrDefault(inst, List.of())) {
+                code.add(new Label(label));
+            }
 
-        for (var inst : method.getInstructions()) {
-            for (var label: method.getLabels(inst)){
-                code.append(label).append(":").append(NL);
+            // 'x := x + c', and the 'tmp := x + c; x := tmp' generated for it, become a single iinc
+            int incremented = generateIncrement(instructions, i, useCounts, code);
+            if (incremented > 0) {
+                i += incremented - 1;
+                continue;
             }
 
-            var instCode = StringLines.getLines(generators.apply(inst)).stream()
-                    .collect(Collectors.joining(NL + TAB, TAB, NL));
+            generators.accept(inst, code);
 
-            code.append(instCode);
+            // The value of a call used as a statement is discarded
+            if (inst instanceof CallInstruction call && producesValue(call)) {
+                code.add(new Simple(JvmOpcode.POP));
+            }
         }
 
-        code.append(".end method\n");
+        PeepholeOptimizer.optimize(code);
+
+        // Add limits
+        jvmMethod.setMaxStack(StackCalculator.getMaxStack(code));
+        jvmMethod.setMaxLocals(getMaxLocals(method, code));
 
         // unset method
         currentMethod = null;
+        currentLabels = null;
 
-        return code.toString();
+        return jvmMethod;
     }
 
-    private String generateAssign(AssignInstruction assign) {
-        var code = new StringBuilder();
+    /**
+     * A variable and the constant added to it.
+     */
+    private record Increment(Operand variable, int amount) {
+    }
 
-        // generate code for loading what's on the right
-        code.append(generators.apply(assign.getRhs()));
+    /**
+     * Generates an iinc for an instruction that adds a constant to a variable, possibly through a temporary that is
+     * only read by the next instruction.
+     *
+     * @return the number of instructions the iinc replaces, or 0 if the instruction at the index is not an increment
+     */
+    private int generateIncrement(List<Instruction> instructions, int index, Map<String, Integer> useCounts,
+                                  List<JvmInstruction> code) {
+        if (!(instructions.get(index) instanceof AssignInstruction assign) || !isIntVariable(assign.getDest())) {
+            return 0;
+        }
 
-        // store value in the stack in destination
-        var lhs = assign.getDest();
-        var rhs = assign.getRhs();
+        var increment = getIncrement(assign.getRhs());
+        if (increment == null) {
+            return 0;
+        }
 
-        if (lhs instanceof ArrayOperand arrayOperand){
-            var reg = currentMethod.getVarTable().get(arrayOperand.getName()).getVirtualReg();
-            if (reg >= 4){
-                code.append("aload ");
-            }
-            else{
-                code.append("aload_");
-            }
-            code.append(reg).append(NL);
-            code.append(generators.apply(((ArrayOperand) lhs).getIndexOperands().get(0)));
-            code.append(generators.apply(assign.getRhs())).append("iastore").append(NL);
-            return code.toString();
+        var dest = ((Operand) assign.getDest()).getName();
+        var variable = increment.variable().getName();
+        if (dest.equals(variable)) {
+            code.add(new Iinc(getRegister(increment.variable()), increment.amount()));
+            return 1;
         }
 
-        if (!(lhs instanceof Operand)) {
-            throw new NotImplementedException(lhs.getClass());
+        if (index + 1 >= instructions.size() || useCounts.getOrDefault(dest, 0) != 1) {
+            return 0;
+        }
+
+        var next = instructions.get(index + 1);
+        if (currentLabels.containsKey(next) || !(next instanceof AssignInstruction copy)
+                || !isIntVariable(copy.getDest()) || !((Operand) copy.getDest()).getName().equals(variable)
+                || !(copy.getRhs() instanceof SingleOpInstruction single)
+                || !isIntVariable(single.getSingleOperand())
+                || !((Operand) single.getSingleOperand()).getName().equals(dest)) {
+            return 0;
+        }
+
+        code.add(new Iinc(getRegister(increment.variable()), increment.amount()));
+        return 2;
+    }
+
+    /**
+     * @return the increment if the instruction is 'x + c', 'c + x' or 'x - c', with c fitting in an iinc
+     */
+    private static Increment getIncrement(Instruction inst) {
+        if (!(inst instanceof BinaryOpInstruction binary)) {
+            return null;
         }
 
+        var left = binary.getLeftOperand();
+        var right = binary.getRightOperand();
+        Increment increment = switch (binary.getOperation().getOpType()) {
+            case ADD -> isIntVariable(left) && right.isLiteral()
+                    ? new Increment((Operand) left, Integer.parseInt(((LiteralElement) right).getLiteral()))
+                    : isIntVariable(right) && left.isLiteral()
+                    ? new Increment((Operand) right, Integer.parseInt(((LiteralElement) left).getLiteral()))
+                    : null;
+            case SUB -> isIntVariable(left) && right.isLiteral()
+                    ? new Increment((Operand) left, -Integer.parseInt(((LiteralElement) right).getLiteral()))
+                    : null;
+            default -> null;
+        };
 
+        if (increment == null || increment.amount() < Short.MIN_VALUE || increment.amount() > Short.MAX_VALUE) {
+            return null;
+        }
 
-        var operand = (Operand) lhs;
+        return increment;
+    }
 
-        // get register
-        var reg = currentMethod.getVarTable().get(operand.getName()).getVirtualReg();
+    private static boolean isIntVariable(Element element) {
+        return element instanceof Operand && !(element instanceof ArrayOperand) && !element.isLiteral()
+                && element.getType().getTypeOfElement() == ElementType.INT32;
+    }
 
-        Type type = operand.getType();
+    /**
+     * @return for each variable, the number of instructions of the method that read it
+     */
+    private static Map<String, Integer> countUses(Method method) {
+        var useCounts = new HashMap<String, Integer>();
 
-        switch (type.getTypeOfElement()){
-            case INT32, BOOLEAN: code.append("istore ").append(reg).append(NL); break;
-            case ARRAYREF,OBJECTREF,STRING: code.append("astore ").append(reg).append(NL); break;
-            default: throw new NotImplementedException(type.getClass());
+        for (var inst : method.getInstructions()) {
+            for (var use : DefUse.getUses(inst, method)) {
+                useCounts.merge(use, 1, Integer::sum);
+            }
         }
 
-        return code.toString();
+        return useCounts;
     }
 
-    private String generateSingleOp(SingleOpInstruction singleOp) {
-        return generators.apply(singleOp.getSingleOperand());
+    private void generateAssign(AssignInstruction assign, List<JvmInstruction> code) {
+
+        var lhs = assign.getDest();
+
+        if (lhs instanceof ArrayOperand arrayOperand) {
+            generateLoad(true, getRegister(arrayOperand), code);
+            generators.accept(arrayOperand.getIndexOperands().get(0), code);
+            generators.accept(assign.getRhs(), code);
+            code.add(new Simple(JvmOpcode.IASTORE));
+            return;
+        }
+
+        if (!(lhs instanceof Operand operand)) {
+            throw new NotImplementedException(lhs.getClass());
+        }
+
+        // generate code for loading what's on the right
+        generators.accept(assign.getRhs(), code);
+
+        // store value in the stack in destination
+        generateStore(isReference(operand.getType().getTypeOfElement()), getRegister(operand), code);
     }
 
-    private String generateLiteral(LiteralElement literal) {
-        var value = literal.getLiteral();
-        var val = Integer.parseInt(value);
+    private void generateSingleOp(SingleOpInstruction singleOp, List<JvmInstruction> code) {
+        generators.accept(singleOp.getSingleOperand(), code);
+    }
+
+    private void generateLiteral(LiteralElement literal, List<JvmInstruction> code) {
+        var val = Integer.parseInt(literal.getLiteral());
         if (val >= -1 && val <= 5) {
-            return "iconst_" + val + NL;
+            code.add(new Simple(JvmOpcode.valueOf(val == -1 ? "ICONST_M1" : "ICONST_" + val)));
         } else if (val >= -128 && val <= 127) {
-            return "bipush " + val + NL;
+            code.add(new IntOperand(JvmOpcode.BIPUSH, val));
         } else if (val >= -32768 && val <= 32767) {
-            return "sipush " + val + NL;
+            code.add(new IntOperand(JvmOpcode.SIPUSH, val));
         } else {
-            return "ldc " + val + NL;
+            code.add(new IntOperand(JvmOpcode.LDC, val));
         }
     }
 
-    private String generateOperand(Operand operand) {
-
-        StringBuilder code = new StringBuilder();
-        // get register
-        var reg = currentMethod.getVarTable().get(operand.getName()).getVirtualReg();
+    private void generateOperand(Operand operand, List<JvmInstruction> code) {
 
         if (operand instanceof ArrayOperand arrayOperand) {
-            if (reg >= 4){
-                code.append("aload ");
-            }
-            else{
-                code.append("aload_");
-            }
-            code.append(reg).append(NL);
-            code.append(generators.apply(arrayOperand.getIndexOperands().get(0)));
-            code.append("iaload").append(NL);
-            return code.toString();
+            generateLoad(true, getRegister(arrayOperand), code);
+            generators.accept(arrayOperand.getIndexOperands().get(0), code);
+            code.add(new Simple(JvmOpcode.IALOAD));
+            return;
         }
 
+        generateLoad(isReference(operand.getType().getTypeOfElement()), getRegister(operand), code);
+    }
 
-        switch (operand.getType().getTypeOfElement()) {
-            case INT32, BOOLEAN -> {
-                return "iload " + reg + NL;
-            }
-            case ARRAYREF, OBJECTREF, CLASS, STRING -> {
-                return "aload " + reg + NL;
-            }
-            default -> throw new NotImplementedException(operand.getType().getTypeOfElement());
+    /**
+     * Loads a local variable, with the one byte iload_n/aload_n forms for the first four registers.
+     */
+    private static void generateLoad(boolean isReference, int reg, List<JvmInstruction> code) {
+        if (reg <= 3) {
+            var shortForm = isReference ? "ALOAD_" : "ILOAD_";
+            code.add(new Simple(JvmOpcode.valueOf(shortForm + reg)));
+        } else {
+            code.add(new IntOperand(isReference ? JvmOpcode.ALOAD : JvmOpcode.ILOAD, reg));
+        }
+    }
+
+    /**
+     * Stores to a local variable, with the one byte istore_n/astore_n forms for the first four registers.
+     */
+    private static void generateStore(boolean isReference, int reg, List<JvmInstruction> code) {
+        if (reg <= 3) {
+            var shortForm = isReference ? "ASTORE_" : "ISTORE_";
+            code.add(new Simple(JvmOpcode.valueOf(shortForm + reg)));
+        } else {
+            code.add(new IntOperand(isReference ? JvmOpcode.ASTORE : JvmOpcode.ISTORE, reg));
         }
     }
 
-    private String generateBinaryOp(BinaryOpInstruction binaryOp) {
-        var code = new StringBuilder();
+    private static boolean isReference(ElementType type) {
+        return switch (type) {
+            case INT32, BOOLEAN -> false;
+            case ARRAYREF, OBJECTREF, CLASS, STRING, THIS -> true;
+            default -> throw new NotImplementedException(type);
+        };
+    }
+
+    private void generateBinaryOp(BinaryOpInstruction binaryOp, List<JvmInstruction> code) {
+        var opType = binaryOp.getOperation().getOpType();
+
+        // comparisons produce a boolean through a jump
+        if (getCompareJump(opType) != null) {
+            var trueLabel = newLabel("cmp_true");
+            var endLabel = newLabel("cmp_end");
+            generateCompareJump(binaryOp, trueLabel, code);
+            code.add(new Simple(JvmOpcode.ICONST_0));
+            code.add(new Jump(JvmOpcode.GOTO, endLabel));
+            code.add(new Label(trueLabel));
+            code.add(new Simple(JvmOpcode.ICONST_1));
+            code.add(new Label(endLabel));
+            return;
+        }
 
         // load values on the left and on the right
-        code.append(generators.apply(binaryOp.getLeftOperand()));
-        code.append(generators.apply(binaryOp.getRightOperand()));
+        generators.accept(binaryOp.getLeftOperand(), code);
+        generators.accept(binaryOp.getRightOperand(), code);
 
         // apply operation
-        var op = switch (binaryOp.getOperation().getOpType()) {
-            case ADD -> "iadd\n";
-            case MUL -> "imul\n";
-            case SUB -> "isub\n";
-            case DIV -> "idiv\n";
-            case LTH -> "if_icmplt ";
-            case LTE -> "if_icmple ";
-            case GTE -> "if_icmpge ";
-            case GTH -> "if_icmpgt ";
-            case NEQ -> "if_icmpne ";
-            case EQ -> "if_icmpeq ";
-            case AND -> "iand\n";
-            case OR -> "ior\n";
-            case NOT -> "iconst_1\nixor\n";
-            case NOTB -> "iconst_1\nixor\n";
-            
-            default -> throw new NotImplementedException(binaryOp.getOperation().getOpType());
+        var op = switch (opType) {
+            case ADD -> JvmOpcode.IADD;
+            case MUL -> JvmOpcode.IMUL;
+            case SUB -> JvmOpcode.ISUB;
+            case DIV -> JvmOpcode.IDIV;
+            case SHL -> JvmOpcode.ISHL;
+            case SHR -> JvmOpcode.ISHR;
+            case SHRR -> JvmOpcode.IUSHR;
+            case XOR -> JvmOpcode.IXOR;
+            case AND, ANDB -> JvmOpcode.IAND;
+            case OR, ORB -> JvmOpcode.IOR;
+            default -> throw new NotImplementedException(opType);
         };
 
-        code.append(op);
-
-        return code.toString();
+        code.add(new Simple(op));
     }
 
-    private String generateReturn(ReturnInstruction returnInst) {
-        var code = new StringBuilder();
-        ElementType return_type = returnInst.getElementType();
-        if(return_type != ElementType.VOID){
-            code.append(generators.apply(returnInst.getOperand()));
+    private void generateUnaryOp(UnaryOpInstruction unaryOp, List<JvmInstruction> code) {
+        generators.accept(unaryOp.getOperand(), code);
+
+        switch (unaryOp.getOperation().getOpType()) {
+            case NOT, NOTB -> {
+                code.add(new Simple(JvmOpcode.ICONST_1));
+                code.add(new Simple(JvmOpcode.IXOR));
+            }
+            case SUB -> code.add(new Simple(JvmOpcode.INEG));
+            default -> throw new NotImplementedException(unaryOp.getOperation().getOpType());
         }
-        switch (return_type) {
-            case INT32,BOOLEAN -> code.append("ireturn").append(NL);
-            case ARRAYREF,OBJECTREF,STRING -> code.append("areturn").append(NL);
-            case VOID -> code.append("return").append(NL);
+    }
 
+    private void generateReturn(ReturnInstruction returnInst, List<JvmInstruction> code) {
+        var returnType = returnInst.getElementType();
+
+        if (returnType != ElementType.VOID) {
+            generators.accept(returnInst.getOperand(), code);
         }
 
-        return code.toString();
+        switch (returnType) {
+            case INT32, BOOLEAN -> code.add(new Simple(JvmOpcode.IRETURN));
+            case VOID -> code.add(new Simple(JvmOpcode.RETURN));
+            default -> code.add(new Simple(JvmOpcode.ARETURN));
+        }
     }
 
-    private String generateCallInstr(CallInstruction call) {
-        var code = new StringBuilder();
-        var temp_code = new StringBuilder();
-        var className = call.getOperands().toString().split(" ")[1].split("\\.")[0];
+    private void generateCall(CallInstruction call, List<JvmInstruction> code) {
 
-        var invType = call.getInvocationType().toString();
+        switch (call.getInvocationType()) {
+            case NEW -> {
+                if (call.getCaller().getType().getTypeOfElement() == ElementType.ARRAYREF) {
+                    generators.accept(call.getArguments().get(0), code);
+                    code.add(new IntOperand(JvmOpcode.NEWARRAY, T_INT));
+                    return;
+                }
 
-        if (invType != "invokestatic" && invType != "NEW" && invType != "arraylength") {
-            //aload_reg
-            code.append("aload_").append(currentMethod.getVarTable().get(className).getVirtualReg()).append(NL);
-        }
-        if(className.equals("this")){
-            className = ollirResult.getOllirClass().getClassName();
+                code.add(new TypeOperand(JvmOpcode.NEW, getClassName(getClassType(call.getCaller()))));
+            }
+            case arraylength -> {
+                generators.accept(call.getCaller(), code);
+                code.add(new Simple(JvmOpcode.ARRAYLENGTH));
+            }
+            case invokestatic -> {
+                // the caller of a static call is the class itself
+                var owner = getClassName(((Operand) call.getCaller()).getName());
+
+                call.getArguments().forEach(arg -> generators.accept(arg, code));
+                code.add(new Member(JvmOpcode.INVOKESTATIC, owner, getMethodName(call), getCallDescriptor(call)));
+            }
+            case invokevirtual, invokespecial -> {
+                var owner = getClassName(getClassType(call.getCaller()));
+                var opcode = call.getInvocationType() == CallType.invokevirtual ?
+                        JvmOpcode.INVOKEVIRTUAL :
+                        JvmOpcode.INVOKESPECIAL;
+
+                generators.accept(call.getCaller(), code);
+                call.getArguments().forEach(arg -> generators.accept(arg, code));
+                code.add(new Member(opcode, owner, getMethodName(call), getCallDescriptor(call)));
+            }
+            default -> throw new NotImplementedException(call.getInvocationType());
         }
+    }
 
+    private void generatePutField(PutFieldInstruction putField, List<JvmInstruction> code) {
+        var field = putField.getField();
 
-        switch (invType){
-            case "NEW":
-                if (call.getCaller().toString().contains("array")) {
-                    code.append(generators.apply(call.getArguments().get(0))).append("newarray int").append(NL);
-                    return code.toString();
+        generators.accept(putField.getObject(), code);
+        generators.accept(putField.getValue(), code);
+        code.add(new Member(JvmOpcode.PUTFIELD, getClassName(getClassType(putField.getObject())), field.getName(),
+                getDescriptor(field.getType())));
+    }
+
+    private void generateGetField(GetFieldInstruction getField, List<JvmInstruction> code) {
+        var field = getField.getField();
+
+        generators.accept(getField.getObject(), code);
+        code.add(new Member(JvmOpcode.GETFIELD, getClassName(getClassType(getField.getObject())), field.getName(),
+                getDescriptor(field.getType())));
+    }
+
+    private void generateOpCond(OpCondInstruction opCond, List<JvmInstruction> code) {
+        var condition = opCond.getCondition();
+
+        // comparisons jump directly, without producing a boolean
+        if (condition instanceof BinaryOpInstruction binaryOp
+                && getCompareJump(binaryOp.getOperation().getOpType()) != null) {
+            generateCompareJump(binaryOp, opCond.getLabel(), code);
+            return;
+        }
+
+        // && and || jump on each operand, without combining them. An array access may throw, so it is always loaded
+        if (condition instanceof BinaryOpInstruction binaryOp && !(binaryOp.getRightOperand() instanceof ArrayOperand)) {
+            switch (binaryOp.getOperation().getOpType()) {
+                case AND, ANDB -> {
+                    var skipLabel = newLabel("and_skip");
+                    generators.accept(binaryOp.getLeftOperand(), code);
+                    code.add(new Jump(JvmOpcode.IFEQ, skipLabel));
+                    generators.accept(binaryOp.getRightOperand(), code);
+                    code.add(new Jump(JvmOpcode.IFNE, opCond.getLabel()));
+                    code.add(new Label(skipLabel));
+                    return;
+                }
+                case OR, ORB -> {
+                    generators.accept(binaryOp.getLeftOperand(), code);
+                    code.add(new Jump(JvmOpcode.IFNE, opCond.getLabel()));
+                    generators.accept(binaryOp.getRightOperand(), code);
+                    code.add(new Jump(JvmOpcode.IFNE, opCond.getLabel()));
+                    return;
                 }
-                code.append("new ")
-                        .append(call.getOperands().get(0).getType().toString().split("\\(")[1].split("\\)")[0]).append(NL); //classname
-                return code.toString();
-
-            case "arraylength":
-                code.append(generators.apply(call.getCaller())).append("arraylength").append(NL);
-                return code.toString();
-        }
-
-
-        var className_ = call.getOperands().get(0).getType().toString().split("\\(")[1].split("\\)")[0];
-        if (invType == "invokespecial") {
-            code.append("invokespecial ").append(className_).append("/").append("<init>()V").append(NL);
-        } else if (invType == "invokevirtual") {
-            temp_code.append("invokevirtual ").append(className_).append("/");
-            var methodName = call.getMethodName().toString().split("\"")[1];
-            var args = call.getArguments();
-            temp_code.append(methodName).append("(");
-            for(var arg : args){
-                code.append(generators.apply(arg));
-                temp_code.append(getTypeJasmin(arg.getType()));
             }
-            temp_code.append(")").append(getTypeJasmin(call.getReturnType())).append(NL);
+        }
+
+        generators.accept(condition, code);
+        code.add(new Jump(JvmOpcode.IFNE, opCond.getLabel()));
+    }
+
+    private void generateSingleOpCond(SingleOpCondInstruction singleOpCond, List<JvmInstruction> code) {
+        generators.accept(singleOpCond.getCondition(), code);
+        code.add(new Jump(JvmOpcode.IFNE, singleOpCond.getLabel()));
+    }
+
+    private void generateGoto(GotoInstruction gotoInst, List<JvmInstruction> code) {
+        code.add(new Jump(JvmOpcode.GOTO, gotoInst.getLabel()));
+    }
+
+    /**
+     * Jumps to the label if the comparison is true. A comparison with the literal 0 uses the if&lt;cond&gt; forms,
+     * which compare the top of the stack with zero and save loading the constant.
+     */
+    private void generateCompareJump(BinaryOpInstruction comparison, String label, List<JvmInstruction> code) {
+        var opType = comparison.getOperation().getOpType();
+        var left = comparison.getLeftOperand();
+        var right = comparison.getRightOperand();
+
+        if (isZero(right)) {
+            generators.accept(left, code);
+            code.add(new Jump(getCompareWithZeroJump(opType), label));
+        } else if (isZero(left)) {
+            // 0 < x is x > 0
+            generators.accept(right, code);
+            code.add(new Jump(getCompareWithZeroJump(getSwapped(opType)), label));
         } else {
-            temp_code.append("invokestatic ").append(className).append("/");
-            var methodName = call.getMethodName().toString().split("\"")[1];
-            var args = call.getArguments();
-            temp_code.append(methodName).append("(");
-            for (var arg : args) {
-                code.append(generators.apply(arg));
-                temp_code.append(getTypeJasmin(arg.getType()));
-            }
-            temp_code.append(")").append(getTypeJasmin(call.getReturnType())).append(NL);
+            generators.accept(left, code);
+            generators.accept(right, code);
+            code.add(new Jump(getCompareJump(opType), label));
         }
+    }
+
+    private static boolean isZero(Element element) {
+        return element instanceof LiteralElement literal && literal.getLiteral().equals("0");
+    }
+
+    /**
+     * @return the comparison with the operands swapped, e.g. a &lt; b is b &gt; a
+     */
+    private static OperationType getSwapped(OperationType opType) {
+        return switch (opType) {
+            case LTH -> OperationType.GTH;
+            case LTE -> OperationType.GTE;
+            case GTH -> OperationType.LTH;
+            case GTE -> OperationType.LTE;
+            default -> opType;
+        };
+    }
+
+    private static JvmOpcode getCompareWithZeroJump(OperationType opType) {
+        return switch (opType) {
+            case LTH -> JvmOpcode.IFLT;
+            case LTE -> JvmOpcode.IFLE;
+            case GTH -> JvmOpcode.IFGT;
+            case GTE -> JvmOpcode.IFGE;
+            case EQ -> JvmOpcode.IFEQ;
+            case NEQ -> JvmOpcode.IFNE;
+            default -> throw new NotImplementedException(opType);
+        };
+    }
+
+    /**
+     * @return the jump that compares two ints for the given operation, or null if the operation is not a comparison
+     */
+    private static JvmOpcode getCompareJump(OperationType opType) {
+        return switch (opType) {
+            case LTH -> JvmOpcode.IF_ICMPLT;
+            case LTE -> JvmOpcode.IF_ICMPLE;
+            case GTH -> JvmOpcode.IF_ICMPGT;
+            case GTE -> JvmOpcode.IF_ICMPGE;
+            case EQ -> JvmOpcode.IF_ICMPEQ;
+            case NEQ -> JvmOpcode.IF_ICMPNE;
+            default -> null;
+        };
+    }
+
+    private String newLabel(String prefix) {
+        String label;
+        do {
+            label = prefix + "_" + labelCounter++;
+        } while (currentMethod.getLabels().containsKey(label));
 
-        code.append(temp_code);
-        return code.toString();
+        return label;
     }
 
-    private String generatePutInstr(PutFieldInstruction intr){
-        var code = new StringBuilder();
-        code.append("aload 0").append(NL);
-        Operand field = intr.getField();
-        String value = intr.getValue().toString().split(" ")[1].split("\\.")[0];
-        code.append("ldc ").append(value).append(NL);
-        String className = ollirResult.getOllirClass().getClassName();
-        String fieldName = field.getName();
-        Type fieldType = field.getType();
-        code.append("putfield ").append(className).append("/").append(fieldName).append(" ").append(getTypeJasmin(fieldType)).append(NL);
-        return code.toString();
+    private int getRegister(Operand operand) {
+        if (operand.getType().getTypeOfElement() == ElementType.THIS) {
+            return 0;
+        }
+
+        return currentMethod.getVarTable().get(operand.getName()).getVirtualReg();
     }
 
-    private String generateGetInstr(GetFieldInstruction intr){
-        var code = new StringBuilder();
-        code.append("aload 0").append(NL);
-        Operand field = intr.getField();
-        String className = ollirResult.getOllirClass().getClassName();
-        String fieldName = field.getName();
-        Type fieldType = field.getType();
-        code.append("getfield ").append(className).append("/").append(fieldName).append(" ").append(getTypeJasmin(fieldType)).append(NL);
-        return code.toString();
+    /**
+     * The locals of a method are 'this' (if not static), the parameters and the virtual registers of the var table,
+     * which already reflect the result of register allocation. The registers used by the code are also taken into
+     * account, in case some variable is not in the var table.
+     *
+     * @param method
+     * @param code
+     * @return the number of local variable slots the method needs
+     */
+    private static int getMaxLocals(Method method, List<JvmInstruction> code) {
+        int maxLocals = (method.isStaticMethod() ? 0 : 1) + method.getParams().size();
+
+        for (var descriptor : method.getVarTable().values()) {
+            maxLocals = Math.max(maxLocals, descriptor.getVirtualReg() + 1);
+        }
+
+        for (var inst : code) {
+            maxLocals = Math.max(maxLocals, getLocal(inst) + 1);
+        }
+
+        return maxLocals;
     }
 
+    /**
+     * @param inst
+     * @return the local variable the instruction reads or writes, or -1 if it does not access locals
+     */
+    private static int getLocal(JvmInstruction inst) {
+        if (inst instanceof Iinc iinc) {
+            return iinc.local();
+        }
 
-    private String generateOpCondInstruction(OpCondInstruction instr) {
-        var code = new StringBuilder();
+        if (inst instanceof IntOperand intOperand) {
+            return switch (intOperand.opcode()) {
+                case ILOAD, ALOAD, ISTORE, ASTORE -> intOperand.value();
+                default -> -1;
+            };
+        }
 
-        code.append(generators.apply(instr.getCondition()));
-        var label = instr.getLabel();
-        if (label != null){
-            code.append(label).append(NL);
+        if (inst instanceof Simple simple) {
+            return switch (simple.opcode()) {
+                case ILOAD_0, ALOAD_0, ISTORE_0, ASTORE_0 -> 0;
+                case ILOAD_1, ALOAD_1, ISTORE_1, ASTORE_1 -> 1;
+                case ILOAD_2, ALOAD_2, ISTORE_2, ASTORE_2 -> 2;
+                case ILOAD_3, ALOAD_3, ISTORE_3, ASTORE_3 -> 3;
+                default -> -1;
+            };
         }
-       return code.toString();
+
+        return -1;
     }
 
-    private String generateGoToInstruction(GotoInstruction instr) {
-        var code = new StringBuilder();
-        code.append("goto ").append(instr.getLabel()).append(NL);
-        return code.toString();
+    private static boolean producesValue(CallInstruction call) {
+        var invocationType = call.getInvocationType();
+        if (invocationType == CallType.NEW || invocationType == CallType.arraylength) {
+            return true;
+        }
+
+        return call.getReturnType().getTypeOfElement() != ElementType.VOID;
     }
 
-    private String generateSingleOpInstruction(SingleOpCondInstruction instr) {
-        var code = new StringBuilder();
-        code.append(generators.apply(instr.getCondition())).append("ifne ").append(instr.getLabel()).append(NL);
+    private static String getMethodName(CallInstruction call) {
+        var literal = ((LiteralElement) call.getMethodName()).getLiteral();
 
-        return code.toString();
+        // method names are string literals
+        return literal.substring(1, literal.length() - 1);
     }
 
-    private String generateUnaryOpInstruction(UnaryOpInstruction instr) {
-        var code = new StringBuilder();
-        code.append(generators.apply(instr.getOperand()));
-        switch (instr.getOperation().getOpType()) {
-            case NEQ -> code.append("ineg");
-            case NOT -> code.append("iconst_1").append(NL).append("ixor");
-            case NOTB -> code.append("iconst_1").append(NL).append("ixor");
-            default -> throw new NotImplementedException(instr.getOperation().getOpType());
+    private String getCallDescriptor(CallInstruction call) {
+        var descriptor = new StringBuilder("(");
+        for (var arg : call.getArguments()) {
+            descriptor.append(getDescriptor(arg.getType()));
         }
-        code.append(NL);
-        return code.toString();
+        descriptor.append(")").append(getDescriptor(call.getReturnType()));
+
+        return descriptor.toString();
+    }
+
+    private String getClassType(Element element) {
+        if (element.getType().getTypeOfElement() == ElementType.THIS) {
+            return ollirResult.getOllirClass().getClassName();
+        }
+
+        return ((ClassType) element.getType()).getName();
     }
 
+    /**
+     * @param simpleName
+     * @return the internal name of the class, using the full name given in its import, if any
+     */
+    private String getClassName(String simpleName) {
+        var classUnit = ollirResult.getOllirClass();
+
+        if (simpleName.equals(classUnit.getClassName())) {
+            var classPackage = classUnit.getPackage();
+            return classPackage == null ? simpleName : classPackage.replace('.', '/') + "/" + simpleName;
+        }
+
+        for (var importName : classUnit.getImports()) {
+            if (importName.equals(simpleName) || importName.endsWith("." + simpleName)) {
+                return importName.replace('.', '/');
+            }
+        }
+
+        return simpleName;
+    }
+
+    private String getDescriptor(Type type) {
+        return switch (type.getTypeOfElement()) {
+            case INT32 -> "I";
+            case BOOLEAN -> "Z";
+            case ARRAYREF -> {
+                ArrayType arrayType = (ArrayType) type;
+                yield "[".repeat(Math.max(1, arrayType.getNumDimensions())) + getDescriptor(arrayType.getElementType());
+            }
+            case OBJECTREF, CLASS -> "L" + getClassName(((ClassType) type).getName()) + ";";
+            case THIS -> "L" + getClassName(ollirResult.getOllirClass().getClassName()) + ";";
+            case STRING -> "Ljava/lang/String;";
+            case VOID -> "V";
+        };
+    }
+
+    private static int getAccessFlags(AccessModifier accessModifier, boolean isStatic, boolean isFinal) {
+        var flags = switch (accessModifier) {
+            case PUBLIC -> JvmClass.ACC_PUBLIC;
+            case PRIVATE -> JvmClass.ACC_PRIVATE;
+            case PROTECTED -> JvmClass.ACC_PROTECTED;
+            case DEFAULT -> 0;
+        };
+
+        if (isStatic) {
+            flags |= JvmClass.ACC_STATIC;
+        }
+        if (isFinal) {
+            flags |= JvmClass.ACC_FINAL;
+        }
+
+        return flags;
+    }
 }
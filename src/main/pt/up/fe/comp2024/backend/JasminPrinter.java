@@ -0,0 +1,126 @@
+package pt.up.fe.comp2024.backend;
+
+import pt.up.fe.comp2024.backend.JvmInstruction.*;
+
+/**
+ * Prints a {@link JvmClass} as Jasmin code.
+ */
+public class JasminPrinter {
+
+    private static final String NL = "\n";
+    private static final String TAB = "   ";
+
+    private JasminPrinter() {
+    }
+
+    public static String print(JvmClass jvmClass) {
+        var code = new StringBuilder();
+
+        code.append(".class ").append(getModifiers(jvmClass.getAccessFlags())).append(jvmClass.getName()).append(NL);
+        code.append(".super ").append(jvmClass.getSuperName()).append(NL).append(NL);
+
+        for (var field : jvmClass.getFields()) {
+            code.append(".field ").append(getModifiers(field.accessFlags())).append(field.name()).append(" ")
+                    .append(field.descriptor()).append(NL);
+        }
+
+        for (var method : jvmClass.getMethods()) {
+            code.append(NL).append(printMethod(method));
+        }
+
+        return code.toString();
+    }
+
+    private static String printMethod(JvmMethod method) {
+        var code = new StringBuilder();
+
+        code.append(".method ").append(getModifiers(method.getAccessFlags()))
+                .append(method.getName()).append(method.getDescriptor()).append(NL);
+
+        // Add limits
+        code.append(TAB).append(".limit stack ").append(method.getMaxStack()).append(NL);
+        code.append(TAB).append(".limit locals ").append(method.getMaxLocals()).append(NL);
+
+        for (var inst : method.getInstructions()) {
+            if (inst instanceof Label label) {
+                code.append(label.name()).append(":").append(NL);
+                continue;
+            }
+
+            code.append(TAB).append(printInstruction(inst)).append(NL);
+        }
+
+        code.append(".end method").append(NL);
+
+        return code.toString();
+    }
+
+    /**
+     * @param inst
+     * @return the instruction as a line of Jasmin code
+     */
+    public static String printInstruction(JvmInstruction inst) {
+        if (inst instanceof Simple) {
+            return inst.opcode().getMnemonic();
+        }
+
+        if (inst instanceof IntOperand intOperand) {
+            if (intOperand.opcode() == JvmOpcode.NEWARRAY) {
+                return "newarray int";
+            }
+
+            return intOperand.opcode().getMnemonic() + " " + intOperand.value();
+        }
+
+        if (inst instanceof Iinc iinc) {
+            return "iinc " + iinc.local() + " " + iinc.increment();
+        }
+
+        if (inst instanceof Jump jump) {
+            return jump.opcode().getMnemonic() + " " + jump.label();
+        }
+
+        if (inst instanceof Member member) {
+            var separator = isField(member.opcode()) ? " " : "";
+            return member.opcode().getMnemonic() + " " + member.owner() + "/" + member.name() + separator
+                    + member.descriptor();
+        }
+
+        if (inst instanceof TypeOperand typeOperand) {
+            return typeOperand.opcode().getMnemonic() + " " + typeOperand.className();
+        }
+
+        if (inst instanceof Label label) {
+            return label.name() + ":";
+        }
+
+        throw new IllegalArgumentException("Unexpected instruction: " + inst);
+    }
+
+    private static boolean isField(JvmOpcode opcode) {
+        return opcode == JvmOpcode.GETFIELD || opcode == JvmOpcode.PUTFIELD || opcode == JvmOpcode.GETSTATIC
+                || opcode == JvmOpcode.PUTSTATIC;
+    }
+
+    private static String getModifiers(int accessFlags) {
+        var modifiers = new StringBuilder();
+
+        if ((accessFlags & JvmClass.ACC_PUBLIC) != 0) {
+            modifiers.append("public ");
+        }
+        if ((accessFlags & JvmClass.ACC_PRIVATE) != 0) {
+            modifiers.append("private ");
+        }
+        if ((accessFlags & JvmClass.ACC_PROTECTED) != 0) {
+            modifiers.append("protected ");
+        }
+        if ((accessFlags & JvmClass.ACC_STATIC) != 0) {
+            modifiers.append("static ");
+        }
+        if ((accessFlags & JvmClass.ACC_FINAL) != 0) {
+            modifiers.append("final ");
+        }
+
+        return modifiers.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package pt.up.fe.comp2024.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class ready to be printed as Jasmin or written as a class file. Names are internal class names
+ * (e.g. java/lang/Object) and types are JVM descriptors.
+ */
+public class JvmClass {
+
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_PRIVATE = 0x0002;
+    public static final int ACC_PROTECTED = 0x0004;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_FINAL = 0x0010;
+    // Set in every class, selects the modern semantics of invokespecial
+    public static final int ACC_SUPER = 0x0020;
+
+    private final String name;
+    private final String superName;
+    private final int accessFlags;
+    private final List<JvmField> fields;
+    private final List<JvmMethod> methods;
+
+    public JvmClass(String name, String superName, int accessFlags) {
+        this.name = name;
+        this.superName = superName;
+        this.accessFlags = accessFlags;
+        this.fields = new ArrayList<>();
+        this.methods = new ArrayList<>();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSuperName() {
+        return superName;
+    }
+
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    public List<JvmField> getFields() {
+        return fields;
+    }
+
+    public List<JvmMethod> getMethods() {
+        return methods;
+    }
+
+    /**
+     * A field declaration.
+     */
+    public record JvmField(int accessFlags, String name, String descriptor) {
+    }
+}
@@ -0,0 +1,67 @@
+package pt.up.fe.comp2024.backend;
+
+/**
+ * An instruction of a JVM method body, the common representation of the Jasmin printer and of the class file writer.
+ * <p>
+ * Labels are pseudo-instructions that mark the position of the next instruction.
+ */
+public sealed interface JvmInstruction {
+
+    /**
+     * @return the opcode of the instruction, or null for labels
+     */
+    JvmOpcode opcode();
+
+    /**
+     * An instruction without operands, e.g. iadd or iload_1.
+     */
+    record Simple(JvmOpcode opcode) implements JvmInstruction {
+    }
+
+    /**
+     * An instruction with an integer operand: a constant (bipush, sipush, ldc), a local variable (iload, astore...)
+     * or the type code of newarray.
+     */
+    record IntOperand(JvmOpcode opcode, int value) implements JvmInstruction {
+    }
+
+    /**
+     * Increments a local variable by a constant.
+     */
+    record Iinc(int local, int increment) implements JvmInstruction {
+
+        @Override
+        public JvmOpcode opcode() {
+            return JvmOpcode.IINC;
+        }
+    }
+
+    /**
+     * A conditional or unconditional jump.
+     */
+    record Jump(JvmOpcode opcode, String label) implements JvmInstruction {
+    }
+
+    /**
+     * An access to a field or a call to a method. The owner is an internal class name (e.g. java/lang/Object).
+     */
+    record Member(JvmOpcode opcode, String owner, String name, String descriptor) implements JvmInstruction {
+    }
+
+    /**
+     * An instruction with a class operand, e.g. new. The class is an internal class name.
+     */
+    record TypeOperand(JvmOpcode opcode, String className) implements JvmInstruction {
+    }
+
+    /**
+     * Marks the position of the next instruction.
+     */
+    record Label(String name) implements JvmInstruction {
+
+        @Override
+        public JvmOpcode opcode() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package pt.up.fe.comp2024.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A method of a {@link JvmClass}, with its body as a list of instructions.
+ */
+public class JvmMethod {
+
+    private final int accessFlags;
+    private final String name;
+    private final String descriptor;
+    private final List<JvmInstruction> instructions;
+    private int maxStack;
+    private int maxLocals;
+
+    public JvmMethod(int accessFlags, String name, String descriptor) {
+        this.accessFlags = accessFlags;
+        this.name = name;
+        this.descriptor = descriptor;
+        this.instructions = new ArrayList<>();
+        this.maxStack = 0;
+        this.maxLocals = 0;
+    }
+
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * @return the body of the method, can be modified
+     */
+    public List<JvmInstruction> getInstructions() {
+        return instructions;
+    }
+
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    public void setMaxStack(int maxStack) {
+        this.maxStack = maxStack;
+    }
+
+    public int getMaxLocals() {
+        return maxLocals;
+    }
+
+    public void setMaxLocals(int maxLocals) {
+        this.maxLocals = maxLocals;
+    }
+}
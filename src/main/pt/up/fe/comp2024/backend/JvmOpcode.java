@@ -0,0 +1,132 @@
+package pt.up.fe.comp2024.backend;
+
+/**
+ * The JVM opcodes the backend can emit, with their Jasmin mnemonic and their value in a class file.
+ */
+public enum JvmOpcode {
+    NOP(0x00),
+    ICONST_M1(0x02),
+    ICONST_0(0x03),
+    ICONST_1(0x04),
+    ICONST_2(0x05),
+    ICONST_3(0x06),
+    ICONST_4(0x07),
+    ICONST_5(0x08),
+    BIPUSH(0x10),
+    SIPUSH(0x11),
+    LDC(0x12),
+    ILOAD(0x15),
+    ALOAD(0x19),
+    ILOAD_0(0x1a),
+    ILOAD_1(0x1b),
+    ILOAD_2(0x1c),
+    ILOAD_3(0x1d),
+    ALOAD_0(0x2a),
+    ALOAD_1(0x2b),
+    ALOAD_2(0x2c),
+    ALOAD_3(0x2d),
+    IALOAD(0x2e),
+    AALOAD(0x32),
+    ISTORE(0x36),
+    ASTORE(0x3a),
+    ISTORE_0(0x3b),
+    ISTORE_1(0x3c),
+    ISTORE_2(0x3d),
+    ISTORE_3(0x3e),
+    ASTORE_0(0x4b),
+    ASTORE_1(0x4c),
+    ASTORE_2(0x4d),
+    ASTORE_3(0x4e),
+    IASTORE(0x4f),
+    AASTORE(0x53),
+    POP(0x57),
+    DUP(0x59),
+    DUP_X1(0x5a),
+    DUP_X2(0x5b),
+    SWAP(0x5f),
+    IADD(0x60),
+    ISUB(0x64),
+    IMUL(0x68),
+    IDIV(0x6c),
+    IREM(0x70),
+    INEG(0x74),
+    ISHL(0x78),
+    ISHR(0x7a),
+    IUSHR(0x7c),
+    IAND(0x7e),
+    IOR(0x80),
+    IXOR(0x82),
+    IINC(0x84),
+    IFEQ(0x99),
+    IFNE(0x9a),
+    IFLT(0x9b),
+    IFGE(0x9c),
+    IFGT(0x9d),
+    IFLE(0x9e),
+    IF_ICMPEQ(0x9f),
+    IF_ICMPNE(0xa0),
+    IF_ICMPLT(0xa1),
+    IF_ICMPGE(0xa2),
+    IF_ICMPGT(0xa3),
+    IF_ICMPLE(0xa4),
+    IF_ACMPEQ(0xa5),
+    IF_ACMPNE(0xa6),
+    GOTO(0xa7),
+    IRETURN(0xac),
+    ARETURN(0xb0),
+    RETURN(0xb1),
+    GETSTATIC(0xb2),
+    PUTSTATIC(0xb3),
+    GETFIELD(0xb4),
+    PUTFIELD(0xb5),
+    INVOKEVIRTUAL(0xb6),
+    INVOKESPECIAL(0xb7),
+    INVOKESTATIC(0xb8),
+    NEW(0xbb),
+    NEWARRAY(0xbc),
+    ANEWARRAY(0xbd),
+    ARRAYLENGTH(0xbe),
+    IFNULL(0xc6),
+    IFNONNULL(0xc7);
+
+    private final int code;
+    private final String mnemonic;
+
+    JvmOpcode(int code) {
+        this.code = code;
+        this.mnemonic = name().toLowerCase();
+    }
+
+    /**
+     * @return the value of the opcode in a class file
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @return the name of the opcode in Jasmin
+     */
+    public String getMnemonic() {
+        return mnemonic;
+    }
+
+    /**
+     * @return true if the opcode is a conditional or unconditional jump to a label
+     */
+    public boolean isJump() {
+        return (code >= IFEQ.code && code <= GOTO.code) || this == IFNULL || this == IFNONNULL;
+    }
+
+    /**
+     * @return true if execution never continues to the next instruction
+     */
+    public boolean isUnconditionalExit() {
+        return this == GOTO || this == IRETURN || this == ARETURN || this == RETURN;
+    }
+
+    @Override
+    public String toString() {
+        return mnemonic;
+    }
+}
@@ -0,0 +1,437 @@
+package pt.up.fe.comp2024.backend;
+
+import pt.up.fe.comp2024.backend.JvmInstruction.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites short sequences of JVM instructions into shorter or cheaper ones with the same effect.
+ * <p>
+ * Each rule of {@link #RULES} looks at the instructions starting at some position and, if they match, says how many
+ * of them to replace and with what. Rules are tried at every position until none matches. A label in the middle of a
+ * sequence is an entry point, so rules only match sequences without labels, unless they match the labels themselves.
+ */
+public class PeepholeOptimizer {
+
+    /**
+     * The result of a rule: replace the given number of instructions with the replacement.
+     */
+    record Rewrite(int length, List<JvmInstruction> replacement) {
+    }
+
+    @FunctionalInterface
+    interface Rule {
+
+        /**
+         * @param code  the instructions of the method
+         * @param index the position the rule is tried at
+         * @return the rewrite, or null if the rule does not match
+         */
+        Rewrite apply(List<JvmInstruction> code, int index);
+    }
+
+    private static final List<Rule> RULES = List.of(
+            PeepholeOptimizer::removeUnreachable,
+            PeepholeOptimizer::removeJumpToNext,
+            PeepholeOptimizer::invertJumpOverGoto,
+            PeepholeOptimizer::foldConstantBranch,
+            PeepholeOptimizer::branchOnNot,
+            PeepholeOptimizer::branchOnComparison,
+            PeepholeOptimizer::compareWithZero,
+            PeepholeOptimizer::increment,
+            PeepholeOptimizer::dupInsteadOfReload,
+            PeepholeOptimizer::dupInsteadOfLoad,
+            PeepholeOptimizer::removePushPop
+    );
+
+    private static final Map<JvmOpcode, JvmOpcode> NEGATED = new HashMap<>();
+    private static final Map<JvmOpcode, JvmOpcode> SWAPPED = new HashMap<>();
+    private static final Map<JvmOpcode, JvmOpcode> AGAINST_ZERO = new HashMap<>();
+
+    static {
+        addNegated(JvmOpcode.IFEQ, JvmOpcode.IFNE);
+        addNegated(JvmOpcode.IFLT, JvmOpcode.IFGE);
+        addNegated(JvmOpcode.IFGT, JvmOpcode.IFLE);
+        addNegated(JvmOpcode.IF_ICMPEQ, JvmOpcode.IF_ICMPNE);
+        addNegated(JvmOpcode.IF_ICMPLT, JvmOpcode.IF_ICMPGE);
+        addNegated(JvmOpcode.IF_ICMPGT, JvmOpcode.IF_ICMPLE);
+        addNegated(JvmOpcode.IF_ACMPEQ, JvmOpcode.IF_ACMPNE);
+        addNegated(JvmOpcode.IFNULL, JvmOpcode.IFNONNULL);
+
+        SWAPPED.put(JvmOpcode.IF_ICMPEQ, JvmOpcode.IF_ICMPEQ);
+        SWAPPED.put(JvmOpcode.IF_ICMPNE, JvmOpcode.IF_ICMPNE);
+        SWAPPED.put(JvmOpcode.IF_ICMPLT, JvmOpcode.IF_ICMPGT);
+        SWAPPED.put(JvmOpcode.IF_ICMPGT, JvmOpcode.IF_ICMPLT);
+        SWAPPED.put(JvmOpcode.IF_ICMPLE, JvmOpcode.IF_ICMPGE);
+        SWAPPED.put(JvmOpcode.IF_ICMPGE, JvmOpcode.IF_ICMPLE);
+
+        AGAINST_ZERO.put(JvmOpcode.IF_ICMPEQ, JvmOpcode.IFEQ);
+        AGAINST_ZERO.put(JvmOpcode.IF_ICMPNE, JvmOpcode.IFNE);
+        AGAINST_ZERO.put(JvmOpcode.IF_ICMPLT, JvmOpcode.IFLT);
+        AGAINST_ZERO.put(JvmOpcode.IF_ICMPGE, JvmOpcode.IFGE);
+        AGAINST_ZERO.put(JvmOpcode.IF_ICMPGT, JvmOpcode.IFGT);
+        AGAINST_ZERO.put(JvmOpcode.IF_ICMPLE, JvmOpcode.IFLE);
+    }
+
+    private static void addNegated(JvmOpcode a, JvmOpcode b) {
+        NEGATED.put(a, b);
+        NEGATED.put(b, a);
+    }
+
+    private PeepholeOptimizer() {
+    }
+
+    /**
+     * Optimizes the instructions of a method, in place.
+     */
+    public static void optimize(List<JvmInstruction> code) {
+        boolean changed;
+        do {
+            changed = removeUnusedLabels(code);
+
+            for (int i = 0; i < code.size(); i++) {
+                for (var rule : RULES) {
+                    var rewrite = rule.apply(code, i);
+                    if (rewrite == null) {
+                        continue;
+                    }
+
+                    var window = code.subList(i, i + rewrite.length());
+                    window.clear();
+                    window.addAll(rewrite.replacement());
+                    changed = true;
+                    break;
+                }
+            }
+        } while (changed);
+    }
+
+    /**
+     * Labels no instruction jumps to are not entry points, and would stop other rules from matching.
+     */
+    private static boolean removeUnusedLabels(List<JvmInstruction> code) {
+        var targets = new ArrayList<String>();
+        for (var inst : code) {
+            if (inst instanceof Jump jump) {
+                targets.add(jump.label());
+            }
+        }
+
+        return code.removeIf(inst -> inst instanceof Label label && !targets.contains(label.name()));
+    }
+
+    // Rules
+
+    /**
+     * Removes the instructions after a goto or a return, up to the next label.
+     */
+    private static Rewrite removeUnreachable(List<JvmInstruction> code, int index) {
+        var exit = code.get(index).opcode();
+        if (exit == null || !exit.isUnconditionalExit()) {
+            return null;
+        }
+
+        int end = index + 1;
+        while (end < code.size() && !(code.get(end) instanceof Label)) {
+            end++;
+        }
+
+        if (end == index + 1) {
+            return null;
+        }
+
+        return new Rewrite(end - index, List.of(code.get(index)));
+    }
+
+    /**
+     * goto L; L: -> L:
+     */
+    private static Rewrite removeJumpToNext(List<JvmInstruction> code, int index) {
+        if (!(code.get(index) instanceof Jump jump) || jump.opcode() != JvmOpcode.GOTO) {
+            return null;
+        }
+
+        for (int i = index + 1; i < code.size() && code.get(i) instanceof Label label; i++) {
+            if (label.name().equals(jump.label())) {
+                return new Rewrite(1, List.of());
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * if&lt;cond&gt; L1; goto L2; L1: -> if&lt;!cond&gt; L2; L1:
+     */
+    private static Rewrite invertJumpOverGoto(List<JvmInstruction> code, int index) {
+        if (index + 2 >= code.size() || !(code.get(index) instanceof Jump branch)
+                || !NEGATED.containsKey(branch.opcode())
+                || !(code.get(index + 1) instanceof Jump jump) || jump.opcode() != JvmOpcode.GOTO
+                || !(code.get(index + 2) instanceof Label label) || !label.name().equals(branch.label())) {
+            return null;
+        }
+
+        return new Rewrite(2, List.of(new Jump(NEGATED.get(branch.opcode()), jump.label())));
+    }
+
+    /**
+     * iconst_1; ifne L -> goto L, iconst_0; ifne L -> (nothing), and the same for ifeq
+     */
+    private static Rewrite foldConstantBranch(List<JvmInstruction> code, int index) {
+        var constant = getConstant(code.get(index));
+        if (constant == null || index + 1 >= code.size() || !(code.get(index + 1) instanceof Jump branch)) {
+            return null;
+        }
+
+        boolean taken;
+        switch (branch.opcode()) {
+            case IFEQ -> taken = constant == 0;
+            case IFNE -> taken = constant != 0;
+            case IFLT -> taken = constant < 0;
+            case IFGE -> taken = constant >= 0;
+            case IFGT -> taken = constant > 0;
+            case IFLE -> taken = constant <= 0;
+            default -> {
+                return null;
+            }
+        }
+
+        return new Rewrite(2, taken ? List.of(new Jump(JvmOpcode.GOTO, branch.label())) : List.of());
+    }
+
+    /**
+     * Booleans are negated with 'iconst_1; ixor'. iconst_1; ixor; ifne L -> ifeq L, and the same for ifeq
+     */
+    private static Rewrite branchOnNot(List<JvmInstruction> code, int index) {
+        if (index + 2 >= code.size() || !isOpcode(code.get(index), JvmOpcode.ICONST_1)
+                || !isOpcode(code.get(index + 1), JvmOpcode.IXOR)
+                || !(code.get(index + 2) instanceof Jump branch)
+                || branch.opcode() != JvmOpcode.IFEQ && branch.opcode() != JvmOpcode.IFNE) {
+            return null;
+        }
+
+        return new Rewrite(3, List.of(new Jump(NEGATED.get(branch.opcode()), branch.label())));
+    }
+
+    /**
+     * A comparison whose boolean result is only used by a branch jumps directly:
+     * if&lt;cond&gt; T; iconst_0; goto E; T: iconst_1; E: ifne L -> if&lt;cond&gt; L
+     */
+    private static Rewrite branchOnComparison(List<JvmInstruction> code, int index) {
+        if (index + 6 >= code.size() || !(code.get(index) instanceof Jump compare)
+                || !NEGATED.containsKey(compare.opcode())
+                || !isOpcode(code.get(index + 1), JvmOpcode.ICONST_0)
+                || !(code.get(index + 2) instanceof Jump gotoEnd) || gotoEnd.opcode() != JvmOpcode.GOTO
+                || !(code.get(index + 3) instanceof Label trueLabel) || !trueLabel.name().equals(compare.label())
+                || !isOpcode(code.get(index + 4), JvmOpcode.ICONST_1)
+                || !(code.get(index + 5) instanceof Label endLabel) || !endLabel.name().equals(gotoEnd.label())
+                || !(code.get(index + 6) instanceof Jump branch)
+                || branch.opcode() != JvmOpcode.IFEQ && branch.opcode() != JvmOpcode.IFNE) {
+            return null;
+        }
+
+        // The labels must not be entry points from elsewhere
+        if (countJumps(code, trueLabel.name()) != 1 || countJumps(code, endLabel.name()) != 1) {
+            return null;
+        }
+
+        var opcode = branch.opcode() == JvmOpcode.IFNE ? compare.opcode() : NEGATED.get(compare.opcode());
+        return new Rewrite(7, List.of(new Jump(opcode, branch.label())));
+    }
+
+    /**
+     * iconst_0; if_icmp&lt;cond&gt; L -> if&lt;cond&gt; L, and iconst_0; iload x; if_icmp&lt;cond&gt; L -> iload x;
+     * if&lt;swapped cond&gt; L
+     */
+    private static Rewrite compareWithZero(List<JvmInstruction> code, int index) {
+        if (index + 1 >= code.size() || !isOpcode(code.get(index), JvmOpcode.ICONST_0)) {
+            return null;
+        }
+
+        if (code.get(index + 1) instanceof Jump compare && AGAINST_ZERO.containsKey(compare.opcode())) {
+            return new Rewrite(2, List.of(new Jump(AGAINST_ZERO.get(compare.opcode()), compare.label())));
+        }
+
+        if (index + 2 < code.size() && isIntPush(code.get(index + 1))
+                && code.get(index + 2) instanceof Jump compare && AGAINST_ZERO.containsKey(compare.opcode())) {
+            var swapped = SWAPPED.get(compare.opcode());
+            return new Rewrite(3, List.of(code.get(index + 1), new Jump(AGAINST_ZERO.get(swapped), compare.label())));
+        }
+
+        return null;
+    }
+
+    /**
+     * iload x; &lt;c&gt;; iadd; istore x -> iinc x c, also for isub and with the operands of iadd swapped
+     */
+    private static Rewrite increment(List<JvmInstruction> code, int index) {
+        if (index + 3 >= code.size()) {
+            return null;
+        }
+
+        var first = code.get(index);
+        var second = code.get(index + 1);
+        var operation = code.get(index + 2).opcode();
+        int stored = getStoredLocal(code.get(index + 3), false);
+
+        int local;
+        Integer constant;
+        if (getLoadedLocal(first, false) >= 0 && getConstant(second) != null) {
+            local = getLoadedLocal(first, false);
+            constant = operation == JvmOpcode.ISUB ? Integer.valueOf(-getConstant(second)) : getConstant(second);
+        } else if (operation == JvmOpcode.IADD && getConstant(first) != null && getLoadedLocal(second, false) >= 0) {
+            local = getLoadedLocal(second, false);
+            constant = getConstant(first);
+        } else {
+            return null;
+        }
+
+        if (operation != JvmOpcode.IADD && operation != JvmOpcode.ISUB || local != stored
+                || constant < Short.MIN_VALUE || constant > Short.MAX_VALUE) {
+            return null;
+        }
+
+        return new Rewrite(4, List.of(new Iinc(local, constant)));
+    }
+
+    /**
+     * istore x; iload x -> dup; istore x, and the same for references
+     */
+    private static Rewrite dupInsteadOfReload(List<JvmInstruction> code, int index) {
+        if (index + 1 >= code.size()) {
+            return null;
+        }
+
+        for (boolean isReference : new boolean[]{false, true}) {
+            int stored = getStoredLocal(code.get(index), isReference);
+            if (stored >= 0 && getLoadedLocal(code.get(index + 1), isReference) == stored) {
+                return new Rewrite(2, List.of(new Simple(JvmOpcode.DUP), code.get(index)));
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * iload x; iload x -> iload x; dup, and the same for references, e.g. 'this' for two field accesses
+     */
+    private static Rewrite dupInsteadOfLoad(List<JvmInstruction> code, int index) {
+        if (index + 1 >= code.size()) {
+            return null;
+        }
+
+        for (boolean isReference : new boolean[]{false, true}) {
+            int loaded = getLoadedLocal(code.get(index), isReference);
+            if (loaded >= 0 && getLoadedLocal(code.get(index + 1), isReference) == loaded) {
+                return new Rewrite(2, List.of(code.get(index), new Simple(JvmOpcode.DUP)));
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * A value pushed only to be popped: iload x; pop -> (nothing), also for constants and dup
+     */
+    private static Rewrite removePushPop(List<JvmInstruction> code, int index) {
+        if (index + 1 >= code.size() || !isOpcode(code.get(index + 1), JvmOpcode.POP)) {
+            return null;
+        }
+
+        var push = code.get(index);
+        if (isIntPush(push) || getLoadedLocal(push, true) >= 0 || isOpcode(push, JvmOpcode.DUP)) {
+            return new Rewrite(2, List.of());
+        }
+
+        return null;
+    }
+
+    // Helpers
+
+    private static boolean isOpcode(JvmInstruction inst, JvmOpcode opcode) {
+        return inst instanceof Simple simple && simple.opcode() == opcode;
+    }
+
+    private static int countJumps(List<JvmInstruction> code, String label) {
+        int count = 0;
+        for (var inst : code) {
+            if (inst instanceof Jump jump && jump.label().equals(label)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return true if the instruction only pushes an int, from a constant or a local
+     */
+    private static boolean isIntPush(JvmInstruction inst) {
+        return getConstant(inst) != null || getLoadedLocal(inst, false) >= 0;
+    }
+
+    /**
+     * @return the int constant the instruction pushes, or null if it is not a constant
+     */
+    private static Integer getConstant(JvmInstruction inst) {
+        if (inst instanceof IntOperand intOperand) {
+            return switch (intOperand.opcode()) {
+                case BIPUSH, SIPUSH, LDC -> intOperand.value();
+                default -> null;
+            };
+        }
+
+        if (inst instanceof Simple simple) {
+            return switch (simple.opcode()) {
+                case ICONST_M1 -> -1;
+                case ICONST_0 -> 0;
+                case ICONST_1 -> 1;
+                case ICONST_2 -> 2;
+                case ICONST_3 -> 3;
+                case ICONST_4 -> 4;
+                case ICONST_5 -> 5;
+                default -> null;
+            };
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the local the instruction loads, or -1 if it is not a load of the given kind
+     */
+    private static int getLoadedLocal(JvmInstruction inst, boolean isReference) {
+        var load = isReference ? JvmOpcode.ALOAD : JvmOpcode.ILOAD;
+        var load0 = isReference ? JvmOpcode.ALOAD_0 : JvmOpcode.ILOAD_0;
+        var load3 = isReference ? JvmOpcode.ALOAD_3 : JvmOpcode.ILOAD_3;
+
+        return getLocal(inst, load, load0, load3);
+    }
+
+    /**
+     * @return the local the instruction stores to, or -1 if it is not a store of the given kind
+     */
+    private static int getStoredLocal(JvmInstruction inst, boolean isReference) {
+        var store = isReference ? JvmOpcode.ASTORE : JvmOpcode.ISTORE;
+        var store0 = isReference ? JvmOpcode.ASTORE_0 : JvmOpcode.ISTORE_0;
+        var store3 = isReference ? JvmOpcode.ASTORE_3 : JvmOpcode.ISTORE_3;
+
+        return getLocal(inst, store, store0, store3);
+    }
+
+    private static int getLocal(JvmInstruction inst, JvmOpcode opcode, JvmOpcode shortForm0, JvmOpcode shortForm3) {
+        if (inst instanceof IntOperand intOperand && intOperand.opcode() == opcode) {
+            return intOperand.value();
+        }
+
+        if (inst instanceof Simple simple && simple.opcode().ordinal() >= shortForm0.ordinal()
+                && simple.opcode().ordinal() <= shortForm3.ordinal()) {
+            return simple.opcode().ordinal() - shortForm0.ordinal();
+        }
+
+        return -1;
+    }
+}
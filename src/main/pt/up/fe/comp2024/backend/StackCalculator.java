@@ -0,0 +1,173 @@
+package pt.up.fe.comp2024.backend;
+
+import pt.up.fe.comp2024.backend.JvmInstruction.*;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calculates the maximum size of the operand stack of a method, by simulating the stack effect of each instruction
+ * along every path of its body.
+ */
+public class StackCalculator {
+
+    private StackCalculator() {
+    }
+
+    /**
+     * @param instructions the body of a method
+     * @return the highest number of stack slots used at any point of the body
+     */
+    public static int getMaxStack(List<JvmInstruction> instructions) {
+
+        Map<String, Integer> labelIndexes = new HashMap<>();
+        for (int i = 0; i < instructions.size(); i++) {
+            if (instructions.get(i) instanceof Label label) {
+                labelIndexes.put(label.name(), i);
+            }
+        }
+
+        // Stack depth before each instruction, -1 if the instruction has not been reached yet
+        var depths = new int[instructions.size()];
+        Arrays.fill(depths, -1);
+
+        var worklist = new ArrayDeque<Integer>();
+        int maxStack = 0;
+
+        if (!instructions.isEmpty()) {
+            depths[0] = 0;
+            worklist.add(0);
+        }
+
+        while (!worklist.isEmpty()) {
+            int index = worklist.poll();
+            var inst = instructions.get(index);
+
+            int depth = depths[index] + getStackEffect(inst);
+            if (depth < 0) {
+                throw new RuntimeException("Instruction '" + JasminPrinter.printInstruction(inst).strip()
+                        + "' pops more values than there are on the stack");
+            }
+            maxStack = Math.max(maxStack, depth);
+
+            if (inst instanceof Jump jump) {
+                var target = labelIndexes.get(jump.label());
+                if (target == null) {
+                    throw new RuntimeException("Jump to undefined label '" + jump.label() + "'");
+                }
+                propagate(target, depth, depths, worklist);
+            }
+
+            var opcode = inst.opcode();
+            if ((opcode == null || !opcode.isUnconditionalExit()) && index + 1 < instructions.size()) {
+                propagate(index + 1, depth, depths, worklist);
+            }
+        }
+
+        return maxStack;
+    }
+
+    private static void propagate(int index, int depth, int[] depths, ArrayDeque<Integer> worklist) {
+
+        // Already visited, the verifier requires the same depth on every path
+        if (depths[index] != -1) {
+            if (depths[index] != depth) {
+                throw new RuntimeException("Inconsistent stack depth at instruction " + index + ": " + depths[index]
+                        + " and " + depth);
+            }
+            return;
+        }
+
+        depths[index] = depth;
+        worklist.add(index);
+    }
+
+    /**
+     * @param inst
+     * @return the number of slots the instruction pushes minus the number of slots it pops
+     */
+    static int getStackEffect(JvmInstruction inst) {
+
+        if (inst instanceof Label) {
+            return 0;
+        }
+
+        if (inst instanceof Member member) {
+            return getMemberStackEffect(member);
+        }
+
+        return switch (inst.opcode()) {
+            case NOP, SWAP, INEG, IINC, GOTO, RETURN, NEWARRAY, ANEWARRAY, ARRAYLENGTH -> 0;
+            case ICONST_M1, ICONST_0, ICONST_1, ICONST_2, ICONST_3, ICONST_4, ICONST_5, BIPUSH, SIPUSH, LDC,
+                    ILOAD, ALOAD, ILOAD_0, ILOAD_1, ILOAD_2, ILOAD_3, ALOAD_0, ALOAD_1, ALOAD_2, ALOAD_3,
+                    DUP, DUP_X1, DUP_X2, NEW -> 1;
+            case IALOAD, AALOAD, ISTORE, ASTORE, ISTORE_0, ISTORE_1, ISTORE_2, ISTORE_3, ASTORE_0, ASTORE_1,
+                    ASTORE_2, ASTORE_3, POP, IADD, ISUB, IMUL, IDIV, IREM, ISHL, ISHR, IUSHR, IAND, IOR, IXOR,
+                    IFEQ, IFNE, IFLT, IFGE, IFGT, IFLE, IFNULL, IFNONNULL, IRETURN, ARETURN -> -1;
+            case IF_ICMPEQ, IF_ICMPNE, IF_ICMPLT, IF_ICMPGE, IF_ICMPGT, IF_ICMPLE, IF_ACMPEQ, IF_ACMPNE -> -2;
+            case IASTORE, AASTORE -> -3;
+            default -> throw new RuntimeException("Unexpected opcode '" + inst.opcode() + "' without a member operand");
+        };
+    }
+
+    private static int getMemberStackEffect(Member member) {
+        var descriptor = member.descriptor();
+
+        return switch (member.opcode()) {
+            case GETSTATIC -> getSlots(descriptor);
+            case PUTSTATIC -> -getSlots(descriptor);
+            // pops the object
+            case GETFIELD -> getSlots(descriptor) - 1;
+            case PUTFIELD -> -getSlots(descriptor) - 1;
+            case INVOKESTATIC -> getReturnSlots(descriptor) - getArgumentSlots(descriptor);
+            // also pops the object
+            case INVOKEVIRTUAL, INVOKESPECIAL -> getReturnSlots(descriptor) - getArgumentSlots(descriptor) - 1;
+            default -> throw new RuntimeException("Unexpected opcode '" + member.opcode() + "' with a member operand");
+        };
+    }
+
+    /**
+     * @param descriptor a method descriptor, e.g. (I[ILjava/lang/String;)V
+     * @return the number of stack slots taken by the arguments of the method
+     */
+    private static int getArgumentSlots(String descriptor) {
+        int slots = 0;
+        int index = 1;
+
+        while (descriptor.charAt(index) != ')') {
+            int start = index;
+
+            while (descriptor.charAt(index) == '[') {
+                index++;
+            }
+
+            if (descriptor.charAt(index) == 'L') {
+                index = descriptor.indexOf(';', index);
+            }
+
+            slots += getSlots(descriptor.substring(start, index + 1));
+            index++;
+        }
+
+        return slots;
+    }
+
+    private static int getReturnSlots(String descriptor) {
+        return getSlots(descriptor.substring(descriptor.indexOf(')') + 1));
+    }
+
+    /**
+     * @param descriptor a field descriptor, or V
+     * @return the number of stack slots taken by a value of the given type
+     */
+    private static int getSlots(String descriptor) {
+        return switch (descriptor.charAt(0)) {
+            case 'V' -> 0;
+            case 'J', 'D' -> 2;
+            default -> 1;
+        };
+    }
+}
@@ -0,0 +1,31 @@
+package pt.up.fe.comp2024.cache;
+
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What the {@link CompilationCache} stores for the generated Jasmin code of a unit.
+ */
+class CacheEntry {
+
+    private final String className;
+    private final String jasminCode;
+    private final List<CachedReport> reports;
+
+    private CacheEntry(String className, String jasminCode, List<CachedReport> reports) {
+        this.className = className;
+        this.jasminCode = jasminCode;
+        this.reports = reports;
+    }
+
+    static CacheEntry fromJasminResult(JasminResult result) {
+        return new CacheEntry(result.getClassName(), result.getJasminCode(),
+                CachedReport.fromReports(result.getReports()));
+    }
+
+    JasminResult toJasminResult(Map<String, String> config) {
+        return new JasminResult(className, jasminCode, CachedReport.toReports(reports), config);
+    }
+}
@@ -0,0 +1,30 @@
+package pt.up.fe.comp2024.cache;
+
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A report as stored in the {@link CompilationCache}. Exceptions are not kept, only the text of the report.
+ */
+record CachedReport(ReportType type, Stage stage, int line, int column, String message) {
+
+    static List<CachedReport> fromReports(List<Report> reports) {
+        return reports.stream()
+                .map(report -> new CachedReport(report.getType(), report.getStage(), report.getLine(),
+                        report.getColumn(), report.getMessage()))
+                .toList();
+    }
+
+    static List<Report> toReports(List<CachedReport> reports) {
+        List<Report> result = new ArrayList<>();
+        for (var report : reports) {
+            result.add(new Report(report.type(), report.stage(), report.line(), report.column(), report.message()));
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,33 @@
+package pt.up.fe.comp2024.cache;
+
+import pt.up.fe.comp2024.backend.ClassFileResult;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What the {@link CompilationCache} stores for the class file of a unit generated with '-e'.
+ */
+class ClassFileEntry {
+
+    private final String className;
+    private final String classBytes;
+    private final List<CachedReport> reports;
+
+    private ClassFileEntry(String className, String classBytes, List<CachedReport> reports) {
+        this.className = className;
+        this.classBytes = classBytes;
+        this.reports = reports;
+    }
+
+    static ClassFileEntry fromClassFileResult(ClassFileResult result) {
+        return new ClassFileEntry(result.getClassName(), Base64.getEncoder().encodeToString(result.getClassBytes()),
+                CachedReport.fromReports(result.getReports()));
+    }
+
+    ClassFileResult toClassFileResult(Map<String, String> config) {
+        return new ClassFileResult(className, Base64.getDecoder().decode(classBytes), CachedReport.toReports(reports),
+                config);
+    }
+}
@@ -0,0 +1,352 @@
+package pt.up.fe.comp2024.cache;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.backend.ClassFileResult;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of the results of each stage of the compiler, addressed by the contents of the compilation units.
+ * <p>
+ * Each stage has a folder with its entries:
+ * <ul>
+ * <li>semantics: the analysed tree, symbol table and reports, as JSON</li>
+ * <li>ollir: the OLLIR code generated from the tree, before OLLIR optimizations</li>
+ * <li>jasmin: the generated Jasmin code and all the reports of the unit, as JSON</li>
+ * <li>class: the class file generated with '-e' and all the reports of the unit, as JSON</li>
+ * </ul>
+ * The key of an entry is a SHA-256 of the code of the unit, of the options the stage depends on and of the
+ * {@link CompilerFingerprint}, so changing '-r' only reruns the OLLIR optimizations and the backend, and entries of
+ * other builds of the compiler are never read (they are evicted as they become the least recently used).
+ * <p>
+ * Entries are written to a temporary file and atomically renamed, so several compiler processes can share the same
+ * folder and never read a partial entry. The folder is kept under a maximum size by evicting the least recently used
+ * entries. Recency is the modification time of the entry, which is refreshed on every hit. Only one process evicts at a
+ * time, coordinated by a file lock.
+ */
+public class CompilationCache {
+
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final String LOCK_FILE = ".lock";
+
+    // Change when the entries change
+    private static final String FORMAT_VERSION = "2";
+
+    // Temporary files older than this were left behind by writers that died
+    private static final Duration STALE_TEMP_AGE = Duration.ofHours(1);
+
+    private enum StageFolder {
+        SEMANTICS("semantics", ".json"),
+        OLLIR("ollir", ".ollir"),
+        JASMIN("jasmin", ".json"),
+        CLASS("class", ".json");
+
+        private final String name;
+        private final String extension;
+
+        StageFolder(String name, String extension) {
+            this.name = name;
+            this.extension = extension;
+        }
+    }
+
+    private final Path cacheDir;
+    private final long maxBytes;
+    private final String fingerprint;
+    private final Gson gson;
+
+    // Estimate of the size of the folder, corrected each time entries are evicted
+    private final AtomicLong currentBytes;
+
+    public CompilationCache(Path cacheDir, long maxBytes) {
+        this(cacheDir, maxBytes, CompilerFingerprint.get());
+    }
+
+    /**
+     * @param fingerprint identifies the build of the compiler that reads and writes the entries, see
+     *                    {@link CompilerFingerprint}
+     */
+    public CompilationCache(Path cacheDir, long maxBytes, String fingerprint) {
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+        this.fingerprint = fingerprint;
+        this.gson = new GsonBuilder().setPrettyPrinting().create();
+
+        try {
+            for (var stage : StageFolder.values()) {
+                Files.createDirectories(cacheDir.resolve(stage.name));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not create cache folder '" + cacheDir + "'", e);
+        }
+
+        this.currentBytes = new AtomicLong(listEntries().stream().mapToLong(EntryInfo::size).sum());
+    }
+
+    /**
+     * @param config
+     * @return a cache in the folder given with '-k', if any
+     */
+    public static Optional<CompilationCache> fromConfig(Map<String, String> config) {
+        return CompilerConfig.getCacheDir(config)
+                .map(cacheDir -> new CompilationCache(cacheDir.toPath(), CompilerConfig.getCacheSize(config)));
+    }
+
+    /**
+     * @param code
+     * @param config configuration of the returned result
+     * @return the result of the semantic analysis of the given code, if cached
+     */
+    public Optional<JmmSemanticsResult> getSemantics(String code, Map<String, String> config) {
+        return read(StageFolder.SEMANTICS, getKey(StageFolder.SEMANTICS, code))
+                .flatMap(json -> parse(() -> SemanticsEntry.fromJson(json, config)));
+    }
+
+    public void putSemantics(String code, JmmSemanticsResult semanticsResult) {
+        write(StageFolder.SEMANTICS, getKey(StageFolder.SEMANTICS, code), SemanticsEntry.toJson(semanticsResult));
+    }
+
+    /**
+     * @param code
+     * @param config
+     * @return the OLLIR code generated for the given code with the given options, if cached
+     */
+    public Optional<String> getOllirCode(String code, Map<String, String> config) {
+        return read(StageFolder.OLLIR, getKey(StageFolder.OLLIR, code, CompilerConfig.getOptimize(config)));
+    }
+
+    public void putOllirCode(String code, Map<String, String> config, String ollirCode) {
+        write(StageFolder.OLLIR, getKey(StageFolder.OLLIR, code, CompilerConfig.getOptimize(config)), ollirCode);
+    }
+
+    /**
+     * @param code
+     * @param config configuration of the returned result
+     * @return the Jasmin code generated for the given code with the given options, if cached
+     */
+    public Optional<JasminResult> getJasmin(String code, Map<String, String> config) {
+        return read(StageFolder.JASMIN, getBackendKey(StageFolder.JASMIN, code, config))
+                .flatMap(json -> parse(() -> gson.fromJson(json, CacheEntry.class).toJasminResult(config)));
+    }
+
+    public void putJasmin(String code, Map<String, String> config, JasminResult jasminResult) {
+        write(StageFolder.JASMIN, getBackendKey(StageFolder.JASMIN, code, config),
+                gson.toJson(CacheEntry.fromJasminResult(jasminResult)));
+    }
+
+    /**
+     * @param code
+     * @param config configuration of the returned result
+     * @return the class file generated with '-e' for the given code with the given options, if cached
+     */
+    public Optional<ClassFileResult> getClassFile(String code, Map<String, String> config) {
+        return read(StageFolder.CLASS, getBackendKey(StageFolder.CLASS, code, config))
+                .flatMap(json -> parse(() -> gson.fromJson(json, ClassFileEntry.class).toClassFileResult(config)));
+    }
+
+    public void putClassFile(String code, Map<String, String> config, ClassFileResult classFileResult) {
+        write(StageFolder.CLASS, getBackendKey(StageFolder.CLASS, code, config),
+                gson.toJson(ClassFileEntry.fromClassFileResult(classFileResult)));
+    }
+
+    /**
+     * The key of the final output, which depends on all the options of the OLLIR optimizations.
+     */
+    private String getBackendKey(StageFolder stage, String code, Map<String, String> config) {
+        return getKey(stage, code, CompilerConfig.getOptimize(config), CompilerConfig.getRegisterAllocation(config),
+                CompilerConfig.getUnrollFactor(config));
+    }
+
+    /**
+     * Options are normalized by the caller, so that e.g. a missing option and its default get the same key.
+     */
+    private String getKey(StageFolder stage, String code, Object... options) {
+        MessageDigest digest = CompilerFingerprint.newDigest();
+
+        var keyHeader = new StringBuilder();
+        keyHeader.append(FORMAT_VERSION).append('\0');
+        keyHeader.append(fingerprint).append('\0');
+        keyHeader.append(stage.name).append('\0');
+        for (var option : options) {
+            keyHeader.append(option).append('\0');
+        }
+
+        digest.update(keyHeader.toString().getBytes(StandardCharsets.UTF_8));
+        digest.update(code.getBytes(StandardCharsets.UTF_8));
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private Optional<String> read(StageFolder stage, String key) {
+        var entryFile = getEntryFile(stage, key);
+
+        try {
+            var contents = Files.readString(entryFile);
+
+            // Mark the entry as recently used
+            Files.setLastModifiedTime(entryFile, FileTime.from(Instant.now()));
+
+            return Optional.of(contents);
+        } catch (IOException e) {
+            // A missing entry, or one evicted by another process while reading it, is just a miss
+            return Optional.empty();
+        }
+    }
+
+    private static <T> Optional<T> parse(Supplier<T> parser) {
+        try {
+            return Optional.of(parser.get());
+        } catch (JsonParseException e) {
+            // Corrupted entries are misses, they will be overwritten
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores an entry. Failing to store is not an error, the unit will simply be compiled again.
+     */
+    private void write(StageFolder stage, String key, String contents) {
+        Path tempFile = null;
+        long size;
+        try {
+            tempFile = Files.createTempFile(cacheDir.resolve(stage.name), key, TEMP_EXTENSION);
+            Files.writeString(tempFile, contents);
+            // The encoded size, the same the eviction sums over the folder
+            size = Files.size(tempFile);
+
+            // If another process stored the same key meanwhile, both entries have the same contents
+            Files.move(tempFile, getEntryFile(stage, key), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Could not store unit in cache '" + cacheDir + "': " + e.getMessage());
+            deleteQuietly(tempFile);
+            return;
+        }
+
+        if (currentBytes.addAndGet(size) > maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the folder is under the maximum size.
+     */
+    private synchronized void evict() {
+        // The monitor excludes other threads of this process, the file lock other processes
+        try (FileChannel lockChannel = FileChannel.open(cacheDir.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+             FileLock lock = lockChannel.tryLock()) {
+
+            // Another process is already evicting
+            if (lock == null) {
+                return;
+            }
+
+            var entries = new ArrayList<>(listEntries());
+            entries.sort(Comparator.comparing(EntryInfo::lastUsed));
+
+            long total = entries.stream().mapToLong(EntryInfo::size).sum();
+            for (var entry : entries) {
+                if (total <= maxBytes) {
+                    break;
+                }
+
+                deleteQuietly(entry.path());
+                total -= entry.size();
+            }
+
+            currentBytes.set(total);
+            deleteStaleTempFiles();
+        } catch (IOException e) {
+            System.err.println("Could not evict entries from cache '" + cacheDir + "': " + e.getMessage());
+        }
+    }
+
+    private List<EntryInfo> listEntries() {
+        var entries = new ArrayList<EntryInfo>();
+
+        for (var stage : StageFolder.values()) {
+            for (var file : listFiles(stage, stage.extension)) {
+                try {
+                    var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    entries.add(new EntryInfo(file, attributes.size(), attributes.lastModifiedTime()));
+                } catch (IOException e) {
+                    // Deleted by another process while listing
+                }
+            }
+        }
+
+        return entries;
+    }
+
+    private void deleteStaleTempFiles() {
+        var limit = Instant.now().minus(STALE_TEMP_AGE);
+
+        for (var stage : StageFolder.values()) {
+            for (var file : listFiles(stage, TEMP_EXTENSION)) {
+                try {
+                    if (Files.getLastModifiedTime(file).toInstant().isBefore(limit)) {
+                        deleteQuietly(file);
+                    }
+                } catch (IOException e) {
+                    // Renamed or deleted meanwhile
+                }
+            }
+        }
+    }
+
+    private List<Path> listFiles(StageFolder stage, String extension) {
+        var stageDir = cacheDir.resolve(stage.name);
+
+        try (Stream<Path> files = Files.list(stageDir)) {
+            return files.filter(file -> file.toString().endsWith(extension)).toList();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not list cache folder '" + stageDir + "'", e);
+        }
+    }
+
+    private Path getEntryFile(StageFolder stage, String key) {
+        return cacheDir.resolve(stage.name).resolve(key + stage.extension);
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Nothing to do, it will be tried again in the next eviction
+        }
+    }
+
+    private record EntryInfo(Path path, long size, FileTime lastUsed) {
+    }
+}
@@ -0,0 +1,75 @@
+package pt.up.fe.comp2024.cache;
+
+import pt.up.fe.comp2024.JmmCompiler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.stream.Stream;
+
+/**
+ * Identifies the build of the compiler, so that cached results of an older build are never reused.
+ * <p>
+ * The fingerprint is a SHA-256 of the compiled code of the compiler, either its jar or the class files of its classes
+ * folder.
+ */
+public class CompilerFingerprint {
+
+    private static String fingerprint;
+
+    private CompilerFingerprint() {
+    }
+
+    /**
+     * @return the fingerprint of the running compiler, computed on the first call
+     */
+    public static synchronized String get() {
+        if (fingerprint == null) {
+            fingerprint = compute();
+        }
+
+        return fingerprint;
+    }
+
+    private static String compute() {
+        MessageDigest digest = newDigest();
+
+        Path location;
+        try {
+            location = Path.of(JmmCompiler.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new RuntimeException("Could not find the location of the compiler classes", e);
+        }
+
+        try {
+            if (Files.isDirectory(location)) {
+                try (Stream<Path> files = Files.walk(location)) {
+                    // Sorted, so the fingerprint does not depend on the order of the file system
+                    for (var classFile : files.filter(file -> file.toString().endsWith(".class")).sorted().toList()) {
+                        digest.update(location.relativize(classFile).toString().getBytes());
+                        digest.update(Files.readAllBytes(classFile));
+                    }
+                }
+            } else {
+                digest.update(Files.readAllBytes(location));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the compiler classes in '" + location + "'", e);
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+    }
+}
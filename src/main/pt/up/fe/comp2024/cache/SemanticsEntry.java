@@ -0,0 +1,49 @@
+package pt.up.fe.comp2024.cache;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp.jmm.ast.JmmSerializer;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What the {@link CompilationCache} stores for the semantic analysis of a unit: the analysed tree, the symbol table
+ * and the reports of parsing and analysis.
+ */
+class SemanticsEntry {
+
+    private static final Gson GSON = new GsonBuilder()
+            .setPrettyPrinting()
+            .registerTypeHierarchyAdapter(JmmNode.class, new JmmSerializer())
+            .create();
+
+    private final JsonElement rootNode;
+    private final JmmSymbolTable symbolTable;
+    private final List<CachedReport> reports;
+
+    private SemanticsEntry(JsonElement rootNode, JmmSymbolTable symbolTable, List<CachedReport> reports) {
+        this.rootNode = rootNode;
+        this.symbolTable = symbolTable;
+        this.reports = reports;
+    }
+
+    static String toJson(JmmSemanticsResult result) {
+        var entry = new SemanticsEntry(GSON.toJsonTree(result.getRootNode(), JmmNode.class),
+                (JmmSymbolTable) result.getSymbolTable(), CachedReport.fromReports(result.getReports()));
+
+        return GSON.toJson(entry);
+    }
+
+    static JmmSemanticsResult fromJson(String json, Map<String, String> config) {
+        var entry = GSON.fromJson(json, SemanticsEntry.class);
+        var rootNode = JmmNodeImpl.fromJson(entry.rootNode.toString());
+
+        return new JmmSemanticsResult(rootNode, entry.symbolTable, CachedReport.toReports(entry.reports), config);
+    }
+}
@@ -0,0 +1,36 @@
+package pt.up.fe.comp2024.daemon;
+
+import java.util.Map;
+
+/**
+ * A request to the {@link CompilerServer}, sent as a single line of JSON.
+ */
+public class CompileRequest {
+
+    // same keys as the configuration built by CompilerConfig (e.g. inputFile, outputDir, optimize)
+    private final Map<String, String> config;
+
+    // if null, the server reads the code from the input file in the configuration
+    private final String code;
+
+    // if true, the server stops after answering this request
+    private final boolean shutdown;
+
+    public CompileRequest(Map<String, String> config, String code, boolean shutdown) {
+        this.config = config;
+        this.code = code;
+        this.shutdown = shutdown;
+    }
+
+    public Map<String, String> getConfig() {
+        return config;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+}
@@ -0,0 +1,58 @@
+package pt.up.fe.comp2024.daemon;
+
+import java.util.List;
+
+/**
+ * The answer of the {@link CompilerServer} to a {@link CompileRequest}, sent as a single line of JSON.
+ */
+public class CompileResponse {
+
+    private final String className;
+
+    // null if the class file was generated directly, with '-e'
+    private final String jasminCode;
+
+    // path of the class file, if the request had an output folder
+    private final String classFile;
+
+    private final List<String> reports;
+
+    // null if the unit compiled
+    private final String error;
+
+    public CompileResponse(String className, String jasminCode, String classFile, List<String> reports, String error) {
+        this.className = className;
+        this.jasminCode = jasminCode;
+        this.classFile = classFile;
+        this.reports = reports;
+        this.error = error;
+    }
+
+    public static CompileResponse newError(String error) {
+        return new CompileResponse(null, null, null, List.of(), error);
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getJasminCode() {
+        return jasminCode;
+    }
+
+    public String getClassFile() {
+        return classFile;
+    }
+
+    public List<String> getReports() {
+        return reports;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
@@ -0,0 +1,75 @@
+package pt.up.fe.comp2024.daemon;
+
+import com.google.gson.Gson;
+import pt.up.fe.comp2024.utils.Formatter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Thin client of the {@link CompilerServer}. Only loads the JDK and Gson, the compilation itself happens in the
+ * server.
+ */
+public class CompilerClient {
+
+    private final Path socketPath;
+    private final Gson gson;
+
+    public CompilerClient(Path socketPath) {
+        this.socketPath = socketPath;
+        this.gson = new Gson();
+    }
+
+    /**
+     * Sends a request to the server and waits for the answer.
+     *
+     * @param request
+     * @return
+     */
+    public CompileResponse send(CompileRequest request) {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath));
+             BufferedReader reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+             Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8)) {
+
+            writer.write(gson.toJson(request));
+            writer.write("\n");
+            writer.flush();
+
+            var line = reader.readLine();
+            if (line == null) {
+                throw new RuntimeException("Compiler server at '" + socketPath + "' closed the connection");
+            }
+
+            return gson.fromJson(line, CompileResponse.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not reach compiler server at '" + socketPath + "'", e);
+        }
+    }
+
+    /**
+     * Asks the server to compile the input file of the given configuration, printing its reports.
+     *
+     * @param config
+     * @return true if the unit compiled without errors
+     */
+    public boolean compile(Map<String, String> config) {
+        var response = send(new CompileRequest(config, null, false));
+
+        response.getReports().forEach(System.out::println);
+
+        if (!response.isSuccess()) {
+            System.err.println(Formatter.errorMsg(response.getError()));
+            return false;
+        }
+
+        return true;
+    }
+}
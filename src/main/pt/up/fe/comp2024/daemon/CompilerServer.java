@@ -0,0 +1,176 @@
+package pt.up.fe.comp2024.daemon;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.JmmCompiler;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-running compiler that keeps the JVM, the ANTLR runtime and the OLLIR and Jasmin libraries warm between
+ * compilations.
+ * <p>
+ * Listens on a Unix domain socket. Each connection sends any number of {@link CompileRequest}s, one JSON object per
+ * line, and gets a {@link CompileResponse} per request, also one per line, in the same order. Connections are served
+ * in parallel by '-j' threads. A request with "shutdown" set stops the server.
+ */
+public class CompilerServer {
+
+    private final Path socketPath;
+    private final Map<String, String> serverConfig;
+    private final JmmCompiler compiler;
+    private final Gson gson;
+    private final ExecutorService workers;
+
+    private ServerSocketChannel serverChannel;
+
+    /**
+     * @param socketPath
+     * @param serverConfig options given when starting the server, used as defaults for every request
+     */
+    public CompilerServer(Path socketPath, Map<String, String> serverConfig) {
+        this.socketPath = socketPath;
+        this.serverConfig = serverConfig;
+        this.compiler = JmmCompiler.fromConfig(serverConfig);
+        this.gson = new Gson();
+        this.workers = Executors.newFixedThreadPool(CompilerConfig.getJobs(serverConfig));
+    }
+
+    /**
+     * Accepts connections until a shutdown request arrives.
+     */
+    public void serve() {
+        try {
+            // a socket file left by a previous server that did not stop cleanly would make bind fail
+            Files.deleteIfExists(socketPath);
+
+            serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+            System.out.println("Listening on " + socketPath);
+
+            while (true) {
+                SocketChannel client;
+                try {
+                    client = serverChannel.accept();
+                } catch (ClosedChannelException e) {
+                    // closed by a shutdown request
+                    break;
+                }
+
+                workers.submit(() -> handle(client));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Compiler server failed on '" + socketPath + "'", e);
+        } finally {
+            workers.shutdown();
+            try {
+                Files.deleteIfExists(socketPath);
+            } catch (IOException e) {
+                System.err.println("Could not delete socket '" + socketPath + "': " + e.getMessage());
+            }
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (client;
+             BufferedReader reader = new BufferedReader(Channels.newReader(client, StandardCharsets.UTF_8));
+             Writer writer = Channels.newWriter(client, StandardCharsets.UTF_8)) {
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                CompileRequest request;
+                try {
+                    request = gson.fromJson(line, CompileRequest.class);
+                } catch (JsonParseException e) {
+                    send(writer, CompileResponse.newError("Malformed request: " + e.getMessage()));
+                    continue;
+                }
+
+                if (request.isShutdown()) {
+                    send(writer, new CompileResponse(null, null, null, List.of(), null));
+                    serverChannel.close();
+                    return;
+                }
+
+                send(writer, compile(request));
+            }
+        } catch (IOException e) {
+            System.err.println("Lost connection to client: " + e.getMessage());
+        }
+    }
+
+    private void send(Writer writer, CompileResponse response) throws IOException {
+        writer.write(gson.toJson(response));
+        writer.write("\n");
+        writer.flush();
+    }
+
+    private CompileResponse compile(CompileRequest request) {
+
+        var config = new HashMap<>(serverConfig);
+        if (request.getConfig() != null) {
+            config.putAll(request.getConfig());
+        }
+
+        try {
+            var code = request.getCode();
+            if (code == null) {
+                var inputFile = CompilerConfig.getInputFile(config)
+                        .orElseThrow(() -> new RuntimeException("Request has neither code nor an input file"));
+                code = SpecsIo.read(inputFile);
+            }
+
+            if (CompilerConfig.getEmitClass(config)) {
+                var classFileResult = compiler.compileClass(code, config);
+
+                var classFile = CompilerConfig.getOutputDir(config)
+                        .map(outputDir -> classFileResult.write(outputDir).getAbsolutePath())
+                        .orElse(null);
+
+                return new CompileResponse(classFileResult.getClassName(), null, classFile,
+                        toStrings(classFileResult.getReports()), null);
+            }
+
+            var jasminResult = compiler.compile(code, config);
+
+            var classFile = CompilerConfig.getOutputDir(config)
+                    .map(outputDir -> compiler.writeClass(jasminResult, outputDir).getAbsolutePath())
+                    .orElse(null);
+
+            return new CompileResponse(jasminResult.getClassName(), jasminResult.getJasminCode(), classFile,
+                    toStrings(jasminResult.getReports()), null);
+        } catch (RuntimeException e) {
+            return CompileResponse.newError(e.getMessage());
+        }
+    }
+
+    private static List<String> toStrings(List<Report> reports) {
+        return reports.stream()
+                .map(Report::toString)
+                .toList();
+    }
+}
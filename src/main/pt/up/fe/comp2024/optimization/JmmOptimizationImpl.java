@@ -3,14 +3,83 @@ package pt.up.fe.comp2024.optimization;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
 import pt.up.fe.comp.jmm.ollir.JmmOptimization;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.optimization.ast.ConstantPropagation;
+import pt.up.fe.comp2024.optimization.passes.CommonSubexpressionElimination;
+import pt.up.fe.comp2024.optimization.passes.CopyPropagation;
+import pt.up.fe.comp2024.optimization.passes.DeadCodeElimination;
+import pt.up.fe.comp2024.optimization.passes.Inlining;
+import pt.up.fe.comp2024.optimization.passes.LoopInvariantCodeMotion;
+import pt.up.fe.comp2024.optimization.passes.LoopUnrolling;
+import pt.up.fe.comp2024.optimization.passes.RegisterAllocation;
+import pt.up.fe.comp2024.optimization.passes.SparseConditionalConstantPropagation;
+import pt.up.fe.comp2024.optimization.passes.SsaConstruction;
+import pt.up.fe.comp2024.optimization.passes.SsaDestruction;
+import pt.up.fe.comp2024.optimization.passes.StrengthReduction;
+import pt.up.fe.comp2024.optimization.passes.TailRecursionElimination;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 public class JmmOptimizationImpl implements JmmOptimization {
 
+    /**
+     * Passes run in order over the same OLLIR class. The optimizations only run with '-o'. Register allocation must be
+     * the last one, since it maps the variables left by the other passes to registers.
+     */
+    private List<OllirPass> createPasses(Map<String, String> config) {
+        var passes = new ArrayList<OllirPass>();
+
+        if (CompilerConfig.getOptimize(config)) {
+            // First, so that the other passes see the inlined bodies together with their arguments
+            passes.add(new Inlining());
+            passes.add(new TailRecursionElimination());
+
+            // The sparse optimizations run in SSA form
+            passes.add(new SsaConstruction());
+            passes.add(new SparseConditionalConstantPropagation());
+            passes.add(new SsaDestruction());
+
+            passes.add(new LoopInvariantCodeMotion());
+            passes.add(new CommonSubexpressionElimination());
+            passes.add(new CopyPropagation());
+            passes.add(new StrengthReduction());
+            // Last of the loop passes, so that the copies of the body are already optimized
+            passes.add(new LoopUnrolling());
+            // Removes the copies of the reduced products, and the branches the unrolled loops no longer take
+            passes.add(new CopyPropagation());
+            passes.add(new DeadCodeElimination());
+        }
+
+        passes.add(new RegisterAllocation());
+
+        return passes;
+    }
+
+    /**
+     * With '-o', propagates and folds constants in the AST, in place, before OLLIR is generated.
+     */
+    @Override
+    public JmmSemanticsResult optimize(JmmSemanticsResult semanticsResult) {
+
+        if (!CompilerConfig.getOptimize(semanticsResult.getConfig())) {
+            return semanticsResult;
+        }
+
+        new ConstantPropagation().apply(semanticsResult.getRootNode());
+
+        return semanticsResult;
+    }
+
     @Override
     public OllirResult toOllir(JmmSemanticsResult semanticsResult) {
 
+        OptUtils.resetTempNumber();
+
         var visitor = new OllirGeneratorVisitor(semanticsResult.getSymbolTable());
         var ollirCode = visitor.visit(semanticsResult.getRootNode());
 
@@ -20,7 +89,21 @@ public class JmmOptimizationImpl implements JmmOptimization {
     @Override
     public OllirResult optimize(OllirResult ollirResult) {
 
-        //TODO: Do your OLLIR-based optimizations here
+        var classUnit = ollirResult.getOllirClass();
+
+        for (var ollirPass : createPasses(ollirResult.getConfig())) {
+            try {
+                var passReports = ollirPass.optimize(classUnit, ollirResult.getConfig());
+                ollirResult.getReports().addAll(passReports);
+            } catch (Exception e) {
+                ollirResult.getReports().add(Report.newError(Stage.OPTIMIZATION,
+                        -1,
+                        -1,
+                        "Problem while executing optimization pass '" + ollirPass.getClass() + "'",
+                        e)
+                );
+            }
+        }
 
         return ollirResult;
     }
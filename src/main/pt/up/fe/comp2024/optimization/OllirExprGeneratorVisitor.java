@@ -42,6 +42,7 @@ public class OllirExprGeneratorVisitor extends PreorderJmmVisitor<Void, OllirExp
         addVisit(ARRAY_ACCESS_EXPR, this::visitArrayAccess);
         addVisit(NEW_ARRAY, this::visitNewArray);
         addVisit(ARRAY_INITIALIZATION, this::visitArrayInitialization);
+        addVisit(PARENTHESIS, this::visitParenthesis);
         // array init
         setDefaultVisit(this::defaultVisit);
     }
@@ -97,6 +98,11 @@ public class OllirExprGeneratorVisitor extends PreorderJmmVisitor<Void, OllirExp
     }
 
     private OllirExprResult visitBoolExpr(JmmNode node, Void unused) {
+        var op = node.get("op");
+        if (op.equals("&&") || op.equals("||")) {
+            return visitShortCircuit(node);
+        }
+
         var lhs = visit(node.getJmmChild(0));
         var rhs = visit(node.getJmmChild(1));
 
@@ -106,45 +112,114 @@ public class OllirExprGeneratorVisitor extends PreorderJmmVisitor<Void, OllirExp
         computation.append(lhs.getComputation());
         computation.append(rhs.getComputation());
 
-        if(node.get("op").equals("<") || node.get("op").equals(">")){
-
-
-            // code to compute self
-            Type resType = TypeUtils.getExprType(node, table);
-            String resOllirType = OptUtils.toOllirType(resType);
-            code.append(OptUtils.getTemp()).append(resOllirType);
-
-            computation.append(code).append(SPACE)
-                    .append(ASSIGN).append(resOllirType).append(SPACE)
-                    .append(lhs.getCode()).append(SPACE);
-
-            Type type = TypeUtils.getExprType(node, table);
-            computation.append(node.get("op")).append(OptUtils.toOllirType(type)).append(SPACE)
-                    .append(rhs.getCode()).append(END_STMT);
-
-        } else if (node.get("op").equals("&&")) {
-            String result_variable = OptUtils.getTemp();
-            computation.append("if(").append(lhs.getCode()).append(") goto ").append("true_1;").append(NL);
-            computation.append(result_variable).append(".bool ").append(":=.bool ").append(lhs.getCode()).append(";").append(NL);
-            computation.append("goto end;").append(NL);
-            computation.append("true_1:").append(NL);
-            computation.append(result_variable).append(".bool ").append(":=.bool ").append(rhs.getCode()).append(";").append(NL);
-            computation.append("end:").append(NL);
-            code.append(result_variable).append(".bool");
-        } else if (node.get("op").equals("||")) {
-            String result_variable = OptUtils.getTemp();
-            computation.append("if(").append(lhs.getCode()).append(") goto ").append("true_1;").append(NL);
-            computation.append(result_variable).append(".bool ").append(":=.bool ").append(rhs.getCode()).append(";").append(NL);
-            computation.append("goto end;").append(NL);
-            computation.append("true_1:").append(NL);
-            computation.append(result_variable).append(".bool ").append(":=.bool ").append(lhs.getCode()).append(";").append(NL);
-            computation.append("end:").append(NL);
-            code.append(result_variable).append(".bool");
-        }
+        // code to compute self
+        Type resType = TypeUtils.getExprType(node, table);
+        String resOllirType = OptUtils.toOllirType(resType);
+        code.append(OptUtils.getTemp()).append(resOllirType);
+
+        computation.append(code).append(SPACE)
+                .append(ASSIGN).append(resOllirType).append(SPACE)
+                .append(lhs.getCode()).append(SPACE);
+
+        computation.append(op).append(resOllirType).append(SPACE)
+                .append(rhs.getCode()).append(END_STMT);
 
         return new OllirExprResult(code.toString(), computation.toString());
     }
 
+    /**
+     * The value of 'a &amp;&amp; b' is false without evaluating b if a is false, and 'a || b' is true if a is true.
+     */
+    private OllirExprResult visitShortCircuit(JmmNode node) {
+        boolean isOr = node.get("op").equals("||");
+        String result = OptUtils.getTemp() + ".bool";
+        String skipLabel = OptUtils.getLabel(isOr ? "or_true" : "and_rhs");
+        String endLabel = OptUtils.getLabel(isOr ? "or_end" : "and_end");
+
+        var lhs = visit(node.getJmmChild(0));
+        StringBuilder computation = new StringBuilder();
+        computation.append(lhs.getComputation());
+
+        // The left side is only ever the condition as it is, since its code may already be a negation. && jumps to
+        // the right side when the left is true, and || jumps over it.
+        computation.append("if (").append(lhs.getCode()).append(") goto ").append(skipLabel).append(END_STMT);
+        if (isOr) {
+            appendRhs(node, result, computation);
+        } else {
+            computation.append(result).append(SPACE).append(ASSIGN).append(".bool 0.bool").append(END_STMT);
+        }
+        computation.append("goto ").append(endLabel).append(END_STMT);
+
+        computation.append(skipLabel).append(":").append(NL);
+        if (isOr) {
+            computation.append(result).append(SPACE).append(ASSIGN).append(".bool 1.bool").append(END_STMT);
+        } else {
+            appendRhs(node, result, computation);
+        }
+        computation.append(endLabel).append(":").append(NL);
+
+        return new OllirExprResult(result, computation);
+    }
+
+    private void appendRhs(JmmNode node, String result, StringBuilder computation) {
+        var rhs = visit(node.getJmmChild(1));
+        computation.append(rhs.getComputation());
+        computation.append(result).append(SPACE).append(ASSIGN).append(".bool ").append(rhs.getCode()).append(END_STMT);
+    }
+
+    /**
+     * Generates the code of a condition that jumps to the label when its value is jumpIf, and falls through otherwise.
+     * The operands of &amp;&amp; and || jump directly, and are only evaluated while the result is not known.
+     */
+    public String visitCondition(JmmNode node, String label, boolean jumpIf) {
+        StringBuilder code = new StringBuilder();
+
+        if (PARENTHESIS.check(node)) {
+            return visitCondition(node.getJmmChild(0), label, jumpIf);
+        }
+
+        if (UNARY_EXPR.check(node)) {
+            return visitCondition(node.getJmmChild(0), label, !jumpIf);
+        }
+
+        var op = BOOLEAN_EXPR.check(node) ? node.get("op") : "";
+
+        if (op.equals("&&") || op.equals("||")) {
+            // The left side alone decides the result when it is true for ||, and false for &&
+            boolean decisive = op.equals("||");
+            if (jumpIf == decisive) {
+                code.append(visitCondition(node.getJmmChild(0), label, decisive));
+                code.append(visitCondition(node.getJmmChild(1), label, decisive));
+            } else {
+                String skipLabel = OptUtils.getLabel("skip");
+                code.append(visitCondition(node.getJmmChild(0), skipLabel, decisive));
+                code.append(visitCondition(node.getJmmChild(1), label, jumpIf));
+                code.append(skipLabel).append(":").append(NL);
+            }
+            return code.toString();
+        }
+
+        if (op.equals("<") || op.equals(">")) {
+            var lhs = visit(node.getJmmChild(0));
+            var rhs = visit(node.getJmmChild(1));
+            code.append(lhs.getComputation());
+            code.append(rhs.getComputation());
+
+            // Jumping when the comparison is false is jumping when its negation is true
+            if (!jumpIf) {
+                op = op.equals("<") ? ">=" : "<=";
+            }
+            code.append("if (").append(lhs.getCode()).append(SPACE).append(op).append(".bool ")
+                    .append(rhs.getCode()).append(") goto ").append(label).append(END_STMT);
+            return code.toString();
+        }
+
+        var condition = visit(node);
+        code.append(condition.getComputation());
+        code.append("if (").append(jumpIf ? "" : "!.bool ").append(condition.getCode()).append(") goto ")
+                .append(label).append(END_STMT);
+        return code.toString();
+    }
 
 
     private OllirExprResult visitVarRef(JmmNode node, Void unused) {
@@ -231,6 +306,8 @@ public class OllirExprGeneratorVisitor extends PreorderJmmVisitor<Void, OllirExp
                 Type param_type = TypeUtils.getExprType(param,table);
                 if(param.getKind().equals("IntegerLiteral")){
                     computation.append(param.get("value")).append(OptUtils.toOllirType(param_type));
+                } else if (param.getKind().equals("BooleanLiteral")) {
+                    computation.append(visit(param).getCode());
                 } else if (param.getKind().equals("BinaryExpr")) {
                     var bnrexpr = visit(param);
                     computation.append(bnrexpr.getCode());
@@ -288,12 +365,28 @@ public class OllirExprGeneratorVisitor extends PreorderJmmVisitor<Void, OllirExp
         return new OllirExprResult(code.toString(), computation.toString());
     }
 
+    private OllirExprResult visitParenthesis(JmmNode node, Void unused) {
+        return visit(node.getJmmChild(0));
+    }
+
     private OllirExprResult visitUnaryExpr(JmmNode node, Void unused){
-        var code = new StringBuilder();
-        var computation = new StringBuilder();
-        code.append("!.bool ");
-        code.append(visit(node.getChild(0)).getCode());
-        return new OllirExprResult(code.toString(), computation.toString());
+        var operand = visitOperand(node.getChild(0));
+        return new OllirExprResult("!.bool " + operand.getCode(), operand.getComputation());
+    }
+
+    /**
+     * Generates an expression whose code can be used where OLLIR expects a single operand. The code of a negation is
+     * an operation, so it is stored in a temporary first.
+     */
+    public OllirExprResult visitOperand(JmmNode node) {
+        var result = visit(node);
+        if (!result.getCode().startsWith("!")) {
+            return result;
+        }
+
+        String temp = OptUtils.getTemp() + ".bool";
+        String computation = result.getComputation() + temp + SPACE + ASSIGN + ".bool " + result.getCode() + END_STMT;
+        return new OllirExprResult(temp, computation);
     }
 
     private OllirExprResult visitNewArray(JmmNode node, Void unused){
@@ -48,6 +48,8 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
         addVisit(METHOD_EXPR, this::visitMethodExpr);
         addVisit(IF_CHAIN_STATEMENT, this::visitIfStmt);
         addVisit(WHILE_STATEMENT, this::visitWhileStmt);
+        addVisit(CODE_BLOCK, this::visitCodeBlock);
+        addVisit(SOMETHING, this::visitExprStmt);
         setDefaultVisit(this::defaultVisit);
     }
 
@@ -101,7 +103,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
         var expr = OllirExprResult.EMPTY;
 
         if (node.getNumChildren() > 0) {
-            expr = exprVisitor.visit(node.getJmmChild(0));
+            expr = exprVisitor.visitOperand(node.getJmmChild(0));
         }
 
         code.append(expr.getComputation());
@@ -181,9 +183,6 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
         var afterParam = j;
         for (int i = afterParam; i < node.getNumChildren(); i++) {
             var child = node.getJmmChild(i);
-            if (child.isInstance(SOMETHING)) {
-                child = child.getChild(0);
-            }
             var childCode = visit(child);
             code.append(childCode);
         }
@@ -260,40 +259,59 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
 
     private String visitIfStmt(JmmNode node, Void unused){
         StringBuilder code = new StringBuilder();
-        JmmNode if_node = node.getChild(0);
-        JmmNode else_node = node.getChild(1);
-        OllirExprResult exprResult = exprVisitor.visit(if_node.getChild(0));
-        code.append(exprResult.getComputation());
-        code.append("if (").append(exprResult.getCode()).append(") goto ").append("true_0;").append(NL);
-        for(JmmNode stmt : else_node.getChild(0).getChildren()){
-            code.append(visit(stmt));
-        }
-        code.append("goto end_0;").append(NL);
-        code.append("true_0:").append(NL);
-        for(JmmNode stmt : if_node.getChild(1).getChildren()){
+        String endLabel = OptUtils.getLabel("endif");
+
+        // An if, then any number of 'else if', then the else
+        for (int i = 0; i < node.getNumChildren() - 1; i++) {
+            JmmNode if_node = node.getChild(i);
+            if (!IF_STATEMENT.check(if_node)) {
+                if_node = if_node.getChild(0);
+            }
 
-            code.append(visit(stmt));
+            // A false condition skips to the next one
+            String elseLabel = OptUtils.getLabel("else");
+            code.append(exprVisitor.visitCondition(if_node.getChild(0), elseLabel, false));
+            code.append(visit(if_node.getChild(1)));
+            code.append("goto ").append(endLabel).append(END_STMT);
+            code.append(elseLabel).append(":").append(NL);
         }
-        code.append("end_0:").append(NL);
+
+        JmmNode else_node = node.getChild(node.getNumChildren() - 1);
+        code.append(visit(else_node.getChild(0)));
+        code.append(endLabel).append(":").append(NL);
         return code.toString();
 
     }
 
     private String visitWhileStmt(JmmNode node, Void unused){
         StringBuilder code = new StringBuilder();
-        OllirExprResult exprResult = exprVisitor.visit(node.getChild(0));
-        code.append(exprResult.getComputation()).append(NL);
-        code.append("if (").append(exprResult.getCode()).append(") goto ").append("whilebody_0;").append(NL);
-        code.append("goto endwhile_0;").append(NL);
-        code.append("whilebody_0:").append(NL);
-        for(JmmNode stmt : node.getChild(1).getChildren()){
-            code.append(visit(stmt));
+        String bodyLabel = OptUtils.getLabel("whilebody");
+        String endLabel = OptUtils.getLabel("endwhile");
+
+        // The condition is checked before the first iteration and at the end of each one, where it is computed again
+        code.append(exprVisitor.visitCondition(node.getChild(0), endLabel, false));
+        code.append(bodyLabel).append(":").append(NL);
+        code.append(visit(node.getChild(1)));
+        code.append(exprVisitor.visitCondition(node.getChild(0), bodyLabel, true));
+        code.append(endLabel).append(":").append(NL);
+        return code.toString();
+    }
+
+    private String visitCodeBlock(JmmNode node, Void unused) {
+        StringBuilder code = new StringBuilder();
+        for (JmmNode child : node.getChildren()) {
+            code.append(visit(child));
         }
-        code.append("if (").append(exprResult.getCode()).append(") goto ").append("whilebody_0;").append(NL);
-        code.append("endwhile_0:");
         return code.toString();
     }
 
+    /**
+     * An expression used as a statement, only calls have code of their own.
+     */
+    private String visitExprStmt(JmmNode node, Void unused) {
+        return visit(node.getChild(0));
+    }
+
     /**
      * Default visitor. Visits every child node and return an empty string.
      *
@@ -0,0 +1,23 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.ClassUnit;
+import pt.up.fe.comp.jmm.report.Report;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents an optimization pass over OLLIR code.
+ */
+public interface OllirPass {
+
+    /**
+     * Optimizes the methods of the given class, in place.
+     *
+     * @param classUnit the class that will be optimized
+     * @param config    the compiler options
+     * @return a list of reports with the problems found by the pass
+     */
+    List<Report> optimize(ClassUnit classUnit, Map<String, String> config);
+
+}
@@ -12,7 +12,28 @@ import java.util.Optional;
 import static pt.up.fe.comp2024.ast.Kind.TYPE;
 
 public class OptUtils {
-    private static int tempNumber = -1;
+    // Each thread has its own counter, so units compiled in parallel neither share nor race on it
+    private static final ThreadLocal<Integer> tempNumber = ThreadLocal.withInitial(() -> -1);
+    private static final ThreadLocal<Integer> labelNumber = ThreadLocal.withInitial(() -> -1);
+
+    /**
+     * Restarts the numbering of temporaries and labels, so that each unit gets the same names regardless of what was
+     * compiled before it in the same thread.
+     */
+    public static void resetTempNumber() {
+        tempNumber.set(-1);
+        labelNumber.set(-1);
+    }
+
+    /**
+     * @return a label that is not used anywhere else in the unit, e.g. endif_3
+     */
+    public static String getLabel(String prefix) {
+
+        int next = labelNumber.get() + 1;
+        labelNumber.set(next);
+        return prefix + "_" + next;
+    }
 
     public static String getTemp() {
 
@@ -26,8 +47,9 @@ public class OptUtils {
 
     public static int getNextTempNum() {
 
-        tempNumber += 1;
-        return tempNumber;
+        int next = tempNumber.get() + 1;
+        tempNumber.set(next);
+        return next;
     }
 
     public static String toOllirType(JmmNode typeNode) {
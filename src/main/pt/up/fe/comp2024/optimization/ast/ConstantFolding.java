@@ -0,0 +1,165 @@
+package pt.up.fe.comp2024.optimization.ast;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp2024.ast.Kind;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static pt.up.fe.comp2024.ast.Kind.*;
+
+/**
+ * Replaces expressions whose operands are all literals by the literal they evaluate to, with the semantics of Java
+ * (int arithmetic wraps around on overflow). Divisions by zero are left to fail at runtime.
+ */
+public class ConstantFolding {
+
+    private static final List<String> LOCATION_ATTRIBUTES = List.of("lineStart", "colStart", "lineEnd", "colEnd");
+
+    private ConstantFolding() {
+    }
+
+    /**
+     * Folds the given expression and all its subexpressions, in place.
+     *
+     * @param expr
+     * @return the node that is now in the place of the expression, which is the expression itself if it could not be
+     * folded
+     */
+    public static JmmNode fold(JmmNode expr) {
+
+        // Children are replaced while iterating
+        for (var child : new ArrayList<>(expr.getChildren())) {
+            fold(child);
+        }
+
+        var folded = evaluate(expr);
+        if (folded.isEmpty()) {
+            return expr;
+        }
+
+        expr.replace(folded.get());
+        return folded.get();
+    }
+
+    private static Optional<JmmNode> evaluate(JmmNode expr) {
+
+        if (PARENTHESIS.check(expr)) {
+            var inner = expr.getChild(0);
+            return isLiteral(inner) ? Optional.of(inner.copy()) : Optional.empty();
+        }
+
+        if (UNARY_EXPR.check(expr)) {
+            var operand = expr.getChild(0);
+            if (expr.get("op").equals("!") && BOOLEAN_LITERAL.check(operand)) {
+                return Optional.of(newBoolean(!getBoolean(operand), expr));
+            }
+            return Optional.empty();
+        }
+
+        if (BINARY_EXPR.check(expr)) {
+            return evaluateBinary(expr);
+        }
+
+        if (BOOLEAN_EXPR.check(expr)) {
+            return evaluateBoolean(expr);
+        }
+
+        return Optional.empty();
+    }
+
+    private static Optional<JmmNode> evaluateBinary(JmmNode expr) {
+        var left = getInteger(expr.getChild(0));
+        var right = getInteger(expr.getChild(1));
+        if (left.isEmpty() || right.isEmpty()) {
+            return Optional.empty();
+        }
+
+        int a = left.get();
+        int b = right.get();
+
+        return switch (expr.get("op")) {
+            case "+" -> Optional.of(newInteger(a + b, expr));
+            case "-" -> Optional.of(newInteger(a - b, expr));
+            case "*" -> Optional.of(newInteger(a * b, expr));
+            case "/" -> b == 0 ? Optional.empty() : Optional.of(newInteger(a / b, expr));
+            default -> Optional.empty();
+        };
+    }
+
+    private static Optional<JmmNode> evaluateBoolean(JmmNode expr) {
+        var left = expr.getChild(0);
+        var right = expr.getChild(1);
+
+        switch (expr.get("op")) {
+            case "<", ">" -> {
+                var a = getInteger(left);
+                var b = getInteger(right);
+                if (a.isEmpty() || b.isEmpty()) {
+                    return Optional.empty();
+                }
+
+                boolean result = expr.get("op").equals("<") ? a.get() < b.get() : a.get() > b.get();
+                return Optional.of(newBoolean(result, expr));
+            }
+            case "&&", "||" -> {
+                if (!BOOLEAN_LITERAL.check(left) || !BOOLEAN_LITERAL.check(right)) {
+                    return Optional.empty();
+                }
+
+                boolean result = expr.get("op").equals("&&") ? getBoolean(left) && getBoolean(right)
+                        : getBoolean(left) || getBoolean(right);
+                return Optional.of(newBoolean(result, expr));
+            }
+            default -> {
+                return Optional.empty();
+            }
+        }
+    }
+
+    /**
+     * @param node
+     * @return true if the node is an integer or boolean literal
+     */
+    public static boolean isLiteral(JmmNode node) {
+        return INTEGER_LITERAL.check(node) || BOOLEAN_LITERAL.check(node);
+    }
+
+    private static Optional<Integer> getInteger(JmmNode node) {
+        if (!INTEGER_LITERAL.check(node)) {
+            return Optional.empty();
+        }
+
+        // The lexer accepts literals that do not fit an int
+        try {
+            return Optional.of(Integer.parseInt(node.get("value")));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static boolean getBoolean(JmmNode node) {
+        return Boolean.parseBoolean(node.get("value"));
+    }
+
+    private static JmmNode newInteger(int value, JmmNode location) {
+        return newLiteral(INTEGER_LITERAL, Integer.toString(value), location);
+    }
+
+    private static JmmNode newBoolean(boolean value, JmmNode location) {
+        return newLiteral(BOOLEAN_LITERAL, Boolean.toString(value), location);
+    }
+
+    private static JmmNode newLiteral(Kind kind, String value, JmmNode location) {
+        var literal = new JmmNodeImpl(kind.getNodeName());
+        literal.put("value", value);
+
+        for (var attribute : LOCATION_ATTRIBUTES) {
+            location.getOptional(attribute).ifPresent(attributeValue -> literal.put(attribute, attributeValue));
+        }
+
+        return literal;
+    }
+}
@@ -0,0 +1,237 @@
+package pt.up.fe.comp2024.optimization.ast;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.ast.TypeUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static pt.up.fe.comp2024.ast.Kind.*;
+
+/**
+ * Replaces the uses of int and boolean local variables that hold a known constant by that constant, and folds the
+ * resulting expressions.
+ * <p>
+ * Statements are visited in execution order, keeping the locals known to be constant at each point. Locals assigned
+ * anywhere inside a while loop are not constant inside it or after it, and after an if only the constants all
+ * branches agree on are kept. Fields and parameters are never propagated.
+ */
+public class ConstantPropagation {
+
+    /**
+     * Propagates constants in all methods of the given AST, in place.
+     *
+     * @param root
+     */
+    public void apply(JmmNode root) {
+        for (var method : root.getDescendants(METHOD_DECL)) {
+            applyToMethod(method);
+        }
+    }
+
+    private void applyToMethod(JmmNode method) {
+        var locals = new HashSet<String>();
+        for (var varDecl : method.getChildren(VAR_DECL)) {
+            var typeName = varDecl.getChild(0).get("name");
+            if (typeName.equals(TypeUtils.getIntTypeName()) || typeName.equals(TypeUtils.getBooleanTypeName())) {
+                locals.add(varDecl.get("name"));
+            }
+        }
+
+        var constants = new Constants(locals);
+
+        for (var child : new ArrayList<>(method.getChildren())) {
+            if (TYPE.check(child) || PARAM.check(child) || VAR_DECL.check(child)) {
+                continue;
+            }
+
+            visitStmt(child, constants);
+        }
+    }
+
+    private void visitStmt(JmmNode stmt, Constants constants) {
+
+        if (CODE_BLOCK.check(stmt)) {
+            for (var child : new ArrayList<>(stmt.getChildren())) {
+                visitStmt(child, constants);
+            }
+        } else if (ASSIGN_STMT.check(stmt)) {
+            visitAssign(stmt, constants);
+        } else if (RETURN_STMT.check(stmt) || SOMETHING.check(stmt)) {
+            for (var child : new ArrayList<>(stmt.getChildren())) {
+                visitExpr(child, constants);
+            }
+        } else if (WHILE_STATEMENT.check(stmt)) {
+            visitWhile(stmt, constants);
+        } else if (IF_CHAIN_STATEMENT.check(stmt)) {
+            visitIfChain(stmt, constants);
+        } else if (METHOD_EXPR.check(stmt)) {
+            visitExpr(stmt, constants);
+        } else {
+            // Unknown statement, only needs to forget what it may change
+            constants.killAll(getAssignedVariables(stmt));
+        }
+    }
+
+    private void visitAssign(JmmNode assign, Constants constants) {
+        var lhs = assign.getChild(0);
+
+        // The array itself is not a use, only the index
+        if (ARRAY_ACCESS_EXPR.check(lhs)) {
+            visitExpr(lhs.getChild(1), constants);
+        }
+
+        var rhs = visitExpr(assign.getChild(1), constants);
+
+        if (VAR_REF_EXPR.check(lhs)) {
+            var name = lhs.get("name");
+            if (ConstantFolding.isLiteral(rhs)) {
+                constants.put(name, rhs);
+            } else {
+                constants.kill(name);
+            }
+        }
+    }
+
+    private void visitWhile(JmmNode whileStmt, Constants constants) {
+
+        // The condition and the body run after any iteration, so whatever the loop assigns is unknown
+        constants.killAll(getAssignedVariables(whileStmt));
+
+        visitExpr(whileStmt.getChild(0), constants);
+
+        // What the body learns only holds until the end of the iteration
+        visitStmt(whileStmt.getChild(1), constants.copy());
+    }
+
+    private void visitIfChain(JmmNode ifChain, Constants constants) {
+        var branchResults = new ArrayList<Constants>();
+        boolean hasElse = false;
+
+        for (var branch : ifChain.getChildren()) {
+            var ifStmt = ELSE_IF_STATEMENT.check(branch) ? branch.getChild(0) : branch;
+
+            if (IF_STATEMENT.check(ifStmt)) {
+                // Conditions cannot assign locals, so they all see the constants from before the chain
+                visitExpr(ifStmt.getChild(0), constants);
+
+                var branchConstants = constants.copy();
+                visitStmt(ifStmt.getChild(1), branchConstants);
+                branchResults.add(branchConstants);
+            } else if (ELSE_STATEMENT.check(branch)) {
+                var branchConstants = constants.copy();
+                visitStmt(branch.getChild(0), branchConstants);
+                branchResults.add(branchConstants);
+                hasElse = true;
+            }
+        }
+
+        // Without an else, the chain may run no branch at all
+        if (!hasElse) {
+            branchResults.add(constants.copy());
+        }
+
+        constants.retainCommon(branchResults);
+    }
+
+    /**
+     * Replaces the constant variables inside the expression and folds it.
+     *
+     * @return the node now in the place of the expression
+     */
+    private JmmNode visitExpr(JmmNode expr, Constants constants) {
+        substitute(expr, constants);
+        return ConstantFolding.fold(expr);
+    }
+
+    private void substitute(JmmNode expr, Constants constants) {
+        if (VAR_REF_EXPR.check(expr)) {
+            var value = constants.get(expr.get("name"));
+            if (value != null) {
+                expr.replace(value.copy());
+            }
+            return;
+        }
+
+        for (var child : new ArrayList<>(expr.getChildren())) {
+            substitute(child, constants);
+        }
+    }
+
+    private static Set<String> getAssignedVariables(JmmNode stmt) {
+        var assigned = new HashSet<String>();
+
+        stmt.getDescendantsAndSelfStream()
+                .filter(ASSIGN_STMT::check)
+                .map(assign -> assign.getChild(0))
+                .filter(VAR_REF_EXPR::check)
+                .forEach(lhs -> assigned.add(lhs.get("name")));
+
+        return assigned;
+    }
+
+    /**
+     * The locals known to hold a literal at some point of a method.
+     */
+    private static class Constants {
+
+        private final Set<String> locals;
+        private final Map<String, JmmNode> values;
+
+        Constants(Set<String> locals) {
+            this(locals, new HashMap<>());
+        }
+
+        private Constants(Set<String> locals, Map<String, JmmNode> values) {
+            this.locals = locals;
+            this.values = values;
+        }
+
+        JmmNode get(String name) {
+            return values.get(name);
+        }
+
+        void put(String name, JmmNode literal) {
+            // Only locals, since fields can be changed by calls
+            if (locals.contains(name)) {
+                values.put(name, literal);
+            }
+        }
+
+        void kill(String name) {
+            values.remove(name);
+        }
+
+        void killAll(Set<String> names) {
+            values.keySet().removeAll(names);
+        }
+
+        Constants copy() {
+            return new Constants(locals, new HashMap<>(values));
+        }
+
+        /**
+         * Keeps only the constants that have the same value in all the given states.
+         */
+        void retainCommon(List<Constants> others) {
+            values.clear();
+
+            var first = others.get(0);
+            for (var entry : first.values.entrySet()) {
+                var literal = entry.getValue();
+                boolean common = others.stream()
+                        .map(other -> other.values.get(entry.getKey()))
+                        .allMatch(other -> other != null && other.getKind().equals(literal.getKind())
+                                && other.get("value").equals(literal.get("value")));
+
+                if (common) {
+                    values.put(entry.getKey(), literal);
+                }
+            }
+        }
+    }
+}
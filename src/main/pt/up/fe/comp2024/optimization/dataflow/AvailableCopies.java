@@ -0,0 +1,111 @@
+package pt.up.fe.comp2024.optimization.dataflow;
+
+import org.specs.comp.ollir.*;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Computes which copies 'x := y' between variables hold before each instruction of a method: on every path to the
+ * instruction the copy was executed, and neither x nor y was assigned since. A copy is identified by the index of its
+ * instruction.
+ */
+public class AvailableCopies extends BitSetAnalysis {
+
+    private final Map<Integer, String> sources;
+    private final Map<Integer, String> destinations;
+    private final BitSet[] gen;
+    private final BitSet[] kill;
+
+    public AvailableCopies(ControlFlowGraph cfg) {
+        super(cfg, Direction.FORWARD, Meet.INTERSECTION);
+
+        var method = cfg.getMethod();
+        int size = cfg.size();
+
+        this.sources = new HashMap<>();
+        this.destinations = new HashMap<>();
+        var copiesByVariable = new HashMap<String, BitSet>();
+        for (int i = 0; i < size; i++) {
+            var def = DefUse.getDef(cfg.getInstruction(i), method);
+            if (def.isEmpty()) {
+                continue;
+            }
+
+            var source = getCopiedVariable((AssignInstruction) cfg.getInstruction(i), method);
+            if (source.isPresent() && !source.get().equals(def.get())) {
+                sources.put(i, source.get());
+                destinations.put(i, def.get());
+                copiesByVariable.computeIfAbsent(source.get(), key -> new BitSet()).set(i);
+                copiesByVariable.computeIfAbsent(def.get(), key -> new BitSet()).set(i);
+            }
+        }
+
+        this.gen = new BitSet[size];
+        this.kill = new BitSet[size];
+        for (int i = 0; i < size; i++) {
+            gen[i] = new BitSet();
+            kill[i] = new BitSet();
+
+            var def = DefUse.getDef(cfg.getInstruction(i), method);
+            if (def.isPresent() && copiesByVariable.containsKey(def.get())) {
+                kill[i].or(copiesByVariable.get(def.get()));
+            }
+
+            if (sources.containsKey(i)) {
+                gen[i].set(i);
+            }
+        }
+
+        solve();
+    }
+
+    @Override
+    protected int getUniverseSize() {
+        return cfg.size();
+    }
+
+    @Override
+    protected BitSet getGen(int index) {
+        return gen[index];
+    }
+
+    @Override
+    protected BitSet getKill(int index) {
+        return kill[index];
+    }
+
+    /**
+     * @param index    the index of an instruction
+     * @param variable
+     * @return the variable that holds the same value as the given one right before the instruction, if a copy between
+     * them is available there
+     */
+    public Optional<String> getCopySource(int index, String variable) {
+        var available = getIn(index);
+        for (int copy = available.nextSetBit(0); copy >= 0; copy = available.nextSetBit(copy + 1)) {
+            if (destinations.get(copy).equals(variable)) {
+                return Optional.of(sources.get(copy));
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * @param assign
+     * @param method
+     * @return the variable the assignment copies, if its right-hand side is just a variable
+     */
+    public static Optional<String> getCopiedVariable(AssignInstruction assign, Method method) {
+        if (assign.getRhs() instanceof SingleOpInstruction single
+                && !(single.getSingleOperand() instanceof ArrayOperand)
+                && DefUse.isVariable(single.getSingleOperand(), method)) {
+            return Optional.of(((Operand) single.getSingleOperand()).getName());
+        }
+
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,205 @@
+package pt.up.fe.comp2024.optimization.dataflow;
+
+import org.specs.comp.ollir.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Computes which expressions have already been computed, on every path, before each instruction of a method, with
+ * none of their operands changed since.
+ * <p>
+ * Expressions are the right-hand sides of assignments that have no side effects: unary and binary operations, array
+ * loads and array lengths. Array loads also read memory, so any array store or call makes them unavailable.
+ */
+public class AvailableExpressions extends BitSetAnalysis {
+
+    private final List<String> expressions;
+    private final Map<String, Integer> expressionIndexes;
+    private final BitSet[] gen;
+    private final BitSet[] kill;
+
+    public AvailableExpressions(ControlFlowGraph cfg) {
+        super(cfg, Direction.FORWARD, Meet.INTERSECTION);
+
+        var method = cfg.getMethod();
+        int size = cfg.size();
+
+        // Number the expressions, and remember which variables and memory they read
+        this.expressions = new ArrayList<>();
+        this.expressionIndexes = new HashMap<>();
+        var operandsByExpression = new ArrayList<Set<String>>();
+        var memoryExpressions = new BitSet();
+
+        for (int i = 0; i < size; i++) {
+            if (!(cfg.getInstruction(i) instanceof AssignInstruction assign)) {
+                continue;
+            }
+
+            var key = getKey(assign.getRhs());
+            if (key.isEmpty() || expressionIndexes.containsKey(key.get())) {
+                continue;
+            }
+
+            int expressionIndex = expressions.size();
+            expressions.add(key.get());
+            expressionIndexes.put(key.get(), expressionIndex);
+            operandsByExpression.add(DefUse.getUses(assign.getRhs(), method));
+            if (readsMemory(assign.getRhs())) {
+                memoryExpressions.set(expressionIndex);
+            }
+        }
+
+        this.gen = new BitSet[size];
+        this.kill = new BitSet[size];
+        for (int i = 0; i < size; i++) {
+            var inst = cfg.getInstruction(i);
+            gen[i] = new BitSet();
+            kill[i] = new BitSet();
+
+            var def = DefUse.getDef(inst, method);
+            if (def.isPresent()) {
+                for (int e = 0; e < expressions.size(); e++) {
+                    if (operandsByExpression.get(e).contains(def.get())) {
+                        kill[i].set(e);
+                    }
+                }
+            }
+
+            if (writesMemory(inst)) {
+                kill[i].or(memoryExpressions);
+            }
+
+            // An expression that reads the variable it is assigned to is not available after the assignment
+            if (inst instanceof AssignInstruction assign) {
+                var key = getKey(assign.getRhs());
+                if (key.isPresent() && !kill[i].get(expressionIndexes.get(key.get()))) {
+                    gen[i].set(expressionIndexes.get(key.get()));
+                }
+            }
+        }
+
+        solve();
+    }
+
+    @Override
+    protected int getUniverseSize() {
+        return expressions.size();
+    }
+
+    @Override
+    protected BitSet getGen(int index) {
+        return gen[index];
+    }
+
+    @Override
+    protected BitSet getKill(int index) {
+        return kill[index];
+    }
+
+    /**
+     * @return the expressions of the method, the position of each is its number in the sets
+     */
+    public List<String> getExpressions() {
+        return expressions;
+    }
+
+    /**
+     * @param index the index of an instruction
+     * @param key   the key of an expression, see {@link #getKey(Instruction)}
+     * @return true if the expression is available right before the instruction
+     */
+    public boolean isAvailable(int index, String key) {
+        var expressionIndex = expressionIndexes.get(key);
+        return expressionIndex != null && getIn(index).get(expressionIndex);
+    }
+
+    /**
+     * @param rhs the right-hand side of an assignment
+     * @return a key that is the same for all instructions that compute the same expression of the same operands, or
+     * empty if the instruction is not an expression without side effects
+     */
+    public static Optional<String> getKey(Instruction rhs) {
+        if (rhs instanceof BinaryOpInstruction binary) {
+            var operation = binary.getOperation().getOpType();
+            var left = describe(binary.getLeftOperand());
+            var right = describe(binary.getRightOperand());
+
+            // 'a + b' and 'b + a' are the same expression
+            if (isCommutative(operation) && left.compareTo(right) > 0) {
+                var swap = left;
+                left = right;
+                right = swap;
+            }
+
+            return Optional.of(operation + "(" + left + "," + right + ")");
+        }
+
+        if (rhs instanceof UnaryOpInstruction unary) {
+            return Optional.of(unary.getOperation().getOpType() + "(" + describe(unary.getOperand()) + ")");
+        }
+
+        if (rhs instanceof SingleOpInstruction single && single.getSingleOperand() instanceof ArrayOperand array) {
+            return Optional.of(describe(array));
+        }
+
+        if (rhs instanceof CallInstruction call && call.getInvocationType() == CallType.arraylength) {
+            return Optional.of("length(" + describe(call.getCaller()) + ")");
+        }
+
+        return Optional.empty();
+    }
+
+    private static boolean isCommutative(OperationType operation) {
+        return switch (operation) {
+            case ADD, MUL, AND, OR, ANDB, ORB, XOR, EQ, NEQ -> true;
+            default -> false;
+        };
+    }
+
+    private static String describe(Element element) {
+        if (element instanceof LiteralElement literal) {
+            return "#" + literal.getLiteral();
+        }
+
+        if (element instanceof ArrayOperand array) {
+            var indexes = new ArrayList<String>();
+            for (var index : array.getIndexOperands()) {
+                indexes.add(describe(index));
+            }
+            return array.getName() + indexes;
+        }
+
+        return ((Operand) element).getName();
+    }
+
+    /**
+     * @param rhs
+     * @return true if the value of the expression depends on the contents of an array
+     */
+    public static boolean readsMemory(Instruction rhs) {
+        return rhs instanceof SingleOpInstruction single && single.getSingleOperand() instanceof ArrayOperand;
+    }
+
+    /**
+     * @param inst
+     * @return true if the instruction may change the contents of an array: array stores and calls, except for
+     * arraylength
+     */
+    public static boolean writesMemory(Instruction inst) {
+        if (inst instanceof AssignInstruction assign) {
+            return assign.getDest() instanceof ArrayOperand || writesMemory(assign.getRhs());
+        }
+
+        if (inst instanceof CallInstruction call) {
+            return call.getInvocationType() != CallType.arraylength;
+        }
+
+        return false;
+    }
+}
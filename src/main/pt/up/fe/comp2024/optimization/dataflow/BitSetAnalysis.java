@@ -0,0 +1,80 @@
+package pt.up.fe.comp2024.optimization.dataflow;
+
+import java.util.BitSet;
+
+/**
+ * A gen/kill dataflow problem whose values are sets of facts, numbered from 0 to the size of the universe.
+ * <p>
+ * The transfer function of each instruction is (value - kill) U gen. With union as meet the facts start empty
+ * (may problems, e.g. liveness); with intersection they start full (must problems, e.g. available expressions).
+ */
+public abstract class BitSetAnalysis extends DataflowAnalysis<BitSet> {
+
+    public enum Meet {
+        UNION,
+        INTERSECTION
+    }
+
+    private final Meet meetOperator;
+
+    protected BitSetAnalysis(ControlFlowGraph cfg, Direction direction, Meet meetOperator) {
+        super(cfg, direction);
+        this.meetOperator = meetOperator;
+    }
+
+    /**
+     * @return the number of facts
+     */
+    protected abstract int getUniverseSize();
+
+    /**
+     * @param index the index of an instruction
+     * @return the facts the instruction makes true, must not be modified
+     */
+    protected abstract BitSet getGen(int index);
+
+    /**
+     * @param index the index of an instruction
+     * @return the facts the instruction makes false, must not be modified
+     */
+    protected abstract BitSet getKill(int index);
+
+    /**
+     * No facts hold at the boundary, by default.
+     */
+    @Override
+    protected BitSet getBoundary() {
+        return new BitSet();
+    }
+
+    @Override
+    protected BitSet getInitial() {
+        var initial = new BitSet();
+
+        if (meetOperator == Meet.INTERSECTION) {
+            initial.set(0, getUniverseSize());
+        }
+
+        return initial;
+    }
+
+    @Override
+    protected BitSet meet(BitSet a, BitSet b) {
+        var result = (BitSet) a.clone();
+
+        switch (meetOperator) {
+            case UNION -> result.or(b);
+            case INTERSECTION -> result.and(b);
+        }
+
+        return result;
+    }
+
+    @Override
+    protected BitSet transfer(int index, BitSet value) {
+        var result = (BitSet) value.clone();
+        result.andNot(getKill(index));
+        result.or(getGen(index));
+        return result;
+    }
+}
@@ -0,0 +1,223 @@
+package pt.up.fe.comp2024.optimization.dataflow;
+
+import org.specs.comp.ollir.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Computes, for each instruction of a method, which variables hold a known int (or boolean, as 0 or 1) constant.
+ * <p>
+ * Each variable is in a three-level lattice: undefined (no value reached it yet, not in the map), a constant, or
+ * {@link Value#NOT_CONSTANT}. Parameters and 'this' are not constant at the entry of the method.
+ */
+public class ConstantAnalysis extends DataflowAnalysis<Map<String, ConstantAnalysis.Value>> {
+
+    /**
+     * The value of a variable that is defined, either constant or not.
+     */
+    public record Value(boolean isConstant, int constant) {
+
+        public static final Value NOT_CONSTANT = new Value(false, 0);
+
+        public static Value of(int constant) {
+            return new Value(true, constant);
+        }
+    }
+
+    public ConstantAnalysis(ControlFlowGraph cfg) {
+        super(cfg, Direction.FORWARD);
+        solve();
+    }
+
+    @Override
+    protected Map<String, Value> getBoundary() {
+        var boundary = new HashMap<String, Value>();
+
+        for (var entry : cfg.getMethod().getVarTable().entrySet()) {
+            if (entry.getValue().getScope() == VarScope.PARAMETER || entry.getKey().equals("this")) {
+                boundary.put(entry.getKey(), Value.NOT_CONSTANT);
+            }
+        }
+
+        return boundary;
+    }
+
+    @Override
+    protected Map<String, Value> getInitial() {
+        return Map.of();
+    }
+
+    @Override
+    protected Map<String, Value> meet(Map<String, Value> a, Map<String, Value> b) {
+        var result = new HashMap<>(a);
+
+        b.forEach((variable, value) -> result.merge(variable, value,
+                (first, second) -> first.equals(second) ? first : Value.NOT_CONSTANT));
+
+        return result;
+    }
+
+    @Override
+    protected Map<String, Value> transfer(int index, Map<String, Value> value) {
+        var inst = cfg.getInstruction(index);
+        var def = DefUse.getDef(inst, cfg.getMethod());
+
+        if (def.isEmpty()) {
+            return value;
+        }
+
+        var result = new HashMap<>(value);
+        var rhsValue = evaluate(((AssignInstruction) inst).getRhs(), value, cfg.getMethod());
+        if (rhsValue == null) {
+            result.remove(def.get());
+        } else {
+            result.put(def.get(), rhsValue);
+        }
+
+        return result;
+    }
+
+    /**
+     * @param index    the index of an instruction
+     * @param variable
+     * @return the constant the variable holds right before the instruction, if it is always the same
+     */
+    public Optional<Integer> getConstant(int index, String variable) {
+        var value = getIn(index).get(variable);
+        return value != null && value.isConstant() ? Optional.of(value.constant()) : Optional.empty();
+    }
+
+    /**
+     * @param index   the index of an instruction
+     * @param element
+     * @return the constant the element evaluates to right before the instruction, if it is always the same
+     */
+    public Optional<Integer> getConstant(int index, Element element) {
+        var value = evaluate(element, getIn(index), cfg.getMethod());
+        return value != null && value.isConstant() ? Optional.of(value.constant()) : Optional.empty();
+    }
+
+    /**
+     * @param index the index of an instruction
+     * @param expr  an expression, e.g. the right-hand side or the condition of the instruction
+     * @return the constant the expression evaluates to right before the instruction, if it is always the same
+     */
+    public Optional<Integer> getConstant(int index, Instruction expr) {
+        var value = evaluate(expr, getIn(index), cfg.getMethod());
+        return value != null && value.isConstant() ? Optional.of(value.constant()) : Optional.empty();
+    }
+
+    /**
+     * @param values the values of the variables, undefined ones are not in the map
+     * @return the value of the expression, or null if undefined
+     */
+    public static Value evaluate(Instruction rhs, Map<String, Value> values, Method method) {
+        if (rhs instanceof SingleOpInstruction single) {
+            return evaluate(single.getSingleOperand(), values, method);
+        }
+
+        if (rhs instanceof UnaryOpInstruction unary) {
+            var operand = evaluate(unary.getOperand(), values, method);
+            if (operand == null || !operand.isConstant()) {
+                return operand;
+            }
+
+            return fold(unary.getOperation().getOpType(), operand.constant()).map(Value::of).orElse(Value.NOT_CONSTANT);
+        }
+
+        if (rhs instanceof BinaryOpInstruction binary) {
+            var left = evaluate(binary.getLeftOperand(), values, method);
+            var right = evaluate(binary.getRightOperand(), values, method);
+
+            if (Value.NOT_CONSTANT.equals(left) || Value.NOT_CONSTANT.equals(right)) {
+                return Value.NOT_CONSTANT;
+            }
+            if (left == null || right == null) {
+                return null;
+            }
+
+            return fold(binary.getOperation().getOpType(), left.constant(), right.constant())
+                    .map(Value::of)
+                    .orElse(Value.NOT_CONSTANT);
+        }
+
+        // Calls, fields and new objects
+        return Value.NOT_CONSTANT;
+    }
+
+    /**
+     * @param values the values of the variables, undefined ones are not in the map
+     * @return the value of the element, or null if undefined
+     */
+    public static Value evaluate(Element element, Map<String, Value> values, Method method) {
+        if (element instanceof LiteralElement literal) {
+            return getLiteral(literal).map(Value::of).orElse(Value.NOT_CONSTANT);
+        }
+
+        // Array elements are in memory
+        if (element instanceof ArrayOperand || !DefUse.isVariable(element, method)) {
+            return Value.NOT_CONSTANT;
+        }
+
+        return values.get(((Operand) element).getName());
+    }
+
+    /**
+     * @param literal
+     * @return the value of an int or boolean literal
+     */
+    public static Optional<Integer> getLiteral(LiteralElement literal) {
+        var type = literal.getType().getTypeOfElement();
+        if (type != ElementType.INT32 && type != ElementType.BOOLEAN) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(Integer.parseInt(literal.getLiteral()));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Evaluates a binary operation with the semantics of the JVM. Comparisons and boolean operations give 0 or 1.
+     *
+     * @return the result, or empty if it cannot be computed at compile time (e.g. division by zero)
+     */
+    public static Optional<Integer> fold(OperationType operation, int a, int b) {
+        return switch (operation) {
+            case ADD -> Optional.of(a + b);
+            case SUB -> Optional.of(a - b);
+            case MUL -> Optional.of(a * b);
+            case DIV -> b == 0 ? Optional.empty() : Optional.of(a / b);
+            case SHL -> Optional.of(a << b);
+            case SHR -> Optional.of(a >> b);
+            case SHRR -> Optional.of(a >>> b);
+            case XOR -> Optional.of(a ^ b);
+            case AND, ANDB -> Optional.of(a & b);
+            case OR, ORB -> Optional.of(a | b);
+            case LTH -> Optional.of(a < b ? 1 : 0);
+            case GTH -> Optional.of(a > b ? 1 : 0);
+            case LTE -> Optional.of(a <= b ? 1 : 0);
+            case GTE -> Optional.of(a >= b ? 1 : 0);
+            case EQ -> Optional.of(a == b ? 1 : 0);
+            case NEQ -> Optional.of(a != b ? 1 : 0);
+            default -> Optional.empty();
+        };
+    }
+
+    /**
+     * Evaluates a unary operation with the semantics of the JVM.
+     *
+     * @return the result, or empty if it cannot be computed at compile time
+     */
+    public static Optional<Integer> fold(OperationType operation, int a) {
+        return switch (operation) {
+            case NOT, NOTB -> Optional.of(a == 0 ? 1 : 0);
+            case SUB -> Optional.of(-a);
+            default -> Optional.empty();
+        };
+    }
+}
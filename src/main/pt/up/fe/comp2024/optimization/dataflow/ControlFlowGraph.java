@@ -0,0 +1,116 @@
+package pt.up.fe.comp2024.optimization.dataflow;
+
+import org.specs.comp.ollir.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The control flow graph of a method, with one node per instruction, identified by its index in
+ * {@link Method#getInstructions()}.
+ * <p>
+ * Has the same edges as {@link Method#buildCFG()}, but is built from the current instructions and labels of the
+ * method, so it stays correct after a pass changes them.
+ */
+public class ControlFlowGraph {
+
+    private final Method method;
+    private final List<Instruction> instructions;
+    private final Map<Instruction, Integer> indexes;
+    private final List<List<Integer>> successors;
+    private final List<List<Integer>> predecessors;
+
+    public ControlFlowGraph(Method method) {
+        this.method = method;
+        this.instructions = List.copyOf(method.getInstructions());
+        this.indexes = new HashMap<>();
+        this.successors = new ArrayList<>();
+        this.predecessors = new ArrayList<>();
+
+        for (int i = 0; i < instructions.size(); i++) {
+            indexes.put(instructions.get(i), i);
+            successors.add(new ArrayList<>());
+            predecessors.add(new ArrayList<>());
+        }
+
+        for (int i = 0; i < instructions.size(); i++) {
+            var inst = instructions.get(i);
+
+            switch (inst.getInstType()) {
+                case GOTO -> addEdge(i, getLabelIndex(((GotoInstruction) inst).getLabel()));
+                case RETURN -> {
+                    // no successors, goes to the end of the method
+                }
+                case BRANCH -> {
+                    addEdge(i, getLabelIndex(((CondBranchInstruction) inst).getLabel()));
+                    addEdge(i, i + 1);
+                }
+                default -> addEdge(i, i + 1);
+            }
+        }
+    }
+
+    private void addEdge(int from, int to) {
+
+        // Falling off the end of the method
+        if (to >= instructions.size()) {
+            return;
+        }
+
+        // Both successors of a branch may be the same instruction
+        if (successors.get(from).contains(to)) {
+            return;
+        }
+
+        successors.get(from).add(to);
+        predecessors.get(to).add(from);
+    }
+
+    private int getLabelIndex(String label) {
+        var inst = method.getLabels().get(label);
+        if (inst == null) {
+            throw new RuntimeException("Label '" + label + "' is not defined in method '" + method.getMethodName() + "'");
+        }
+
+        var index = indexes.get(inst);
+        if (index == null) {
+            throw new RuntimeException("Label '" + label + "' marks an instruction that is not in method '"
+                    + method.getMethodName() + "'");
+        }
+
+        return index;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the instructions of the method when the graph was built
+     */
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    public Instruction getInstruction(int index) {
+        return instructions.get(index);
+    }
+
+    public int getIndex(Instruction inst) {
+        return indexes.get(inst);
+    }
+
+    public int size() {
+        return instructions.size();
+    }
+
+    public List<Integer> getSuccessors(int index) {
+        return successors.get(index);
+    }
+
+    public List<Integer> getPredecessors(int index) {
+        return predecessors.get(index);
+    }
+}
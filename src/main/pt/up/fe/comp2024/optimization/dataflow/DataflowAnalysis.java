@@ -0,0 +1,131 @@
+package pt.up.fe.comp2024.optimization.dataflow;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A dataflow problem over the {@link ControlFlowGraph} of a method, solved with a worklist until a fixpoint.
+ * <p>
+ * The value before and after each instruction is always given in execution order, for forward and backward
+ * problems alike. Subclasses define the lattice (initial value, boundary value and meet) and the transfer function,
+ * and call {@link #solve()} at the end of their constructor. Values must implement equals, and the transfer and meet
+ * functions must return new values instead of changing their arguments.
+ *
+ * @param <T> the type of the lattice values
+ */
+public abstract class DataflowAnalysis<T> {
+
+    public enum Direction {
+        FORWARD,
+        BACKWARD
+    }
+
+    protected final ControlFlowGraph cfg;
+    private final Direction direction;
+    private final List<T> in;
+    private final List<T> out;
+
+    protected DataflowAnalysis(ControlFlowGraph cfg, Direction direction) {
+        this.cfg = cfg;
+        this.direction = direction;
+        this.in = new ArrayList<>();
+        this.out = new ArrayList<>();
+    }
+
+    /**
+     * @return the value at the start of the method for forward problems, or at its exits for backward problems
+     */
+    protected abstract T getBoundary();
+
+    /**
+     * @return the value every instruction starts with, the top of the lattice
+     */
+    protected abstract T getInitial();
+
+    protected abstract T meet(T a, T b);
+
+    /**
+     * @param index the index of the instruction
+     * @param value the value before the instruction, or after it for backward problems
+     * @return the value on the other side of the instruction
+     */
+    protected abstract T transfer(int index, T value);
+
+    protected void solve() {
+        int size = cfg.size();
+
+        for (int i = 0; i < size; i++) {
+            in.add(getInitial());
+            out.add(getInitial());
+        }
+
+        // Visiting in program order (or reverse, going backward) makes most problems converge in a few rounds
+        var worklist = new ArrayDeque<Integer>();
+        var queued = new BitSet();
+        for (int i = 0; i < size; i++) {
+            int index = direction == Direction.FORWARD ? i : size - 1 - i;
+            worklist.add(index);
+            queued.set(index);
+        }
+
+        while (!worklist.isEmpty()) {
+            int index = worklist.poll();
+            queued.clear(index);
+
+            var sources = direction == Direction.FORWARD ? cfg.getPredecessors(index) : cfg.getSuccessors(index);
+            var targets = direction == Direction.FORWARD ? cfg.getSuccessors(index) : cfg.getPredecessors(index);
+
+            // The first instruction is reached from the method entry, and instructions without successors lead to
+            // its exit
+            boolean isBoundary = direction == Direction.FORWARD ? index == 0 : sources.isEmpty();
+
+            T value = isBoundary ? getBoundary() : null;
+            for (var source : sources) {
+                var sourceValue = direction == Direction.FORWARD ? out.get(source) : in.get(source);
+                value = value == null ? sourceValue : meet(value, sourceValue);
+            }
+            if (value == null) {
+                value = getInitial();
+            }
+
+            T result = transfer(index, value);
+
+            var entryValues = direction == Direction.FORWARD ? in : out;
+            var exitValues = direction == Direction.FORWARD ? out : in;
+            entryValues.set(index, value);
+
+            if (!result.equals(exitValues.get(index))) {
+                exitValues.set(index, result);
+
+                for (var target : targets) {
+                    if (!queued.get(target)) {
+                        worklist.add(target);
+                        queued.set(target);
+                    }
+                }
+            }
+        }
+    }
+
+    public ControlFlowGraph getCfg() {
+        return cfg;
+    }
+
+    /**
+     * @param index the index of an instruction
+     * @return the value right before the instruction executes, must not be modified
+     */
+    public T getIn(int index) {
+        return in.get(index);
+    }
+
+    /**
+     * @param index the index of an instruction
+     * @return the value right after the instruction executes, must not be modified
+     */
+    public T getOut(int index) {
+        return out.get(index);
+    }
+}
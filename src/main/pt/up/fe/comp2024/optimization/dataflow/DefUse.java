@@ -0,0 +1,139 @@
+package pt.up.fe.comp2024.optimization.dataflow;
+
+import org.specs.comp.ollir.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Finds the local variables (parameters, 'this' and locals of the var table) an OLLIR instruction writes and reads.
+ * Fields and class names used as callers are not variables.
+ */
+public class DefUse {
+
+    private DefUse() {
+    }
+
+    /**
+     * @param inst
+     * @param method
+     * @return the variable the instruction assigns, if any. Stores into an array element do not define the array
+     */
+    public static Optional<String> getDef(Instruction inst, Method method) {
+        if (inst instanceof AssignInstruction assign && !(assign.getDest() instanceof ArrayOperand)
+                && isVariable(assign.getDest(), method)) {
+            return Optional.of(((Operand) assign.getDest()).getName());
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * @param inst
+     * @param method
+     * @return the variables the instruction reads, in order of appearance
+     */
+    public static Set<String> getUses(Instruction inst, Method method) {
+        var uses = new LinkedHashSet<String>();
+        for (var operand : getUseOperands(inst, method)) {
+            uses.add(operand.getName());
+        }
+        return uses;
+    }
+
+    /**
+     * @param inst
+     * @param method
+     * @return the operands of the instruction that read a variable, in order of appearance. A variable may appear
+     * more than once
+     */
+    public static List<Operand> getUseOperands(Instruction inst, Method method) {
+        var uses = new ArrayList<Operand>();
+        addUses(inst, method, uses);
+        return uses;
+    }
+
+    private static void addUses(Instruction inst, Method method, List<Operand> uses) {
+        if (inst instanceof PhiInstruction phi) {
+            for (var value : phi.getValues()) {
+                addUses(value, method, uses);
+            }
+            return;
+        }
+
+        switch (inst.getInstType()) {
+            case ASSIGN -> {
+                var assign = (AssignInstruction) inst;
+                if (assign.getDest() instanceof ArrayOperand arrayDest) {
+                    addUses(arrayDest, method, uses);
+                }
+                addUses(assign.getRhs(), method, uses);
+            }
+            case CALL -> {
+                var call = (CallInstruction) inst;
+                // The caller of new is the type being created
+                if (call.getInvocationType() != CallType.NEW) {
+                    addUses(call.getCaller(), method, uses);
+                }
+                for (var arg : call.getArguments()) {
+                    addUses(arg, method, uses);
+                }
+            }
+            case BRANCH -> addUses(((CondBranchInstruction) inst).getCondition(), method, uses);
+            case RETURN -> {
+                var ret = (ReturnInstruction) inst;
+                if (ret.hasReturnValue()) {
+                    addUses(ret.getOperand(), method, uses);
+                }
+            }
+            case PUTFIELD -> {
+                var putField = (PutFieldInstruction) inst;
+                addUses(putField.getObject(), method, uses);
+                addUses(putField.getValue(), method, uses);
+            }
+            case GETFIELD -> addUses(((GetFieldInstruction) inst).getObject(), method, uses);
+            case UNARYOPER, BINARYOPER -> {
+                for (var operand : ((OpInstruction) inst).getOperands()) {
+                    addUses(operand, method, uses);
+                }
+            }
+            case NOPER -> addUses(((SingleOpInstruction) inst).getSingleOperand(), method, uses);
+            case GOTO -> {
+                // no operands
+            }
+        }
+    }
+
+    private static void addUses(Element element, Method method, List<Operand> uses) {
+        if (isVariable(element, method)) {
+            uses.add((Operand) element);
+        }
+
+        if (element instanceof ArrayOperand arrayOperand) {
+            for (var index : arrayOperand.getIndexOperands()) {
+                addUses(index, method, uses);
+            }
+        }
+    }
+
+    /**
+     * @param element
+     * @param method
+     * @return true if the element is a parameter, 'this' or a local variable of the method
+     */
+    public static boolean isVariable(Element element, Method method) {
+        if (element.isLiteral() || !(element instanceof Operand operand)) {
+            return false;
+        }
+
+        if (element.getType().getTypeOfElement() == ElementType.CLASS) {
+            return false;
+        }
+
+        var descriptor = method.getVarTable().get(operand.getName());
+        return descriptor != null && descriptor.getScope() != VarScope.FIELD;
+    }
+}
@@ -0,0 +1,138 @@
+package pt.up.fe.comp2024.optimization.dataflow;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+
+/**
+ * Computes the dominators of each instruction of a method: the instructions that are on every path from the start of
+ * the method to it, including itself.
+ * <p>
+ * Instructions that cannot be reached are dominated by every instruction.
+ */
+public class Dominators extends BitSetAnalysis {
+
+    private final BitSet[] self;
+    private final BitSet reachable;
+
+    public Dominators(ControlFlowGraph cfg) {
+        super(cfg, Direction.FORWARD, Meet.INTERSECTION);
+
+        this.self = new BitSet[cfg.size()];
+        for (int i = 0; i < cfg.size(); i++) {
+            self[i] = new BitSet();
+            self[i].set(i);
+        }
+
+        this.reachable = new BitSet();
+        var worklist = new ArrayDeque<Integer>();
+        if (cfg.size() > 0) {
+            reachable.set(0);
+            worklist.add(0);
+        }
+        while (!worklist.isEmpty()) {
+            for (int successor : cfg.getSuccessors(worklist.poll())) {
+                if (!reachable.get(successor)) {
+                    reachable.set(successor);
+                    worklist.add(successor);
+                }
+            }
+        }
+
+        solve();
+    }
+
+    @Override
+    protected int getUniverseSize() {
+        return cfg.size();
+    }
+
+    @Override
+    protected BitSet getGen(int index) {
+        return self[index];
+    }
+
+    @Override
+    protected BitSet getKill(int index) {
+        return new BitSet();
+    }
+
+    /**
+     * @param index the index of an instruction
+     * @return the instructions that dominate it, must not be modified
+     */
+    public BitSet getDominators(int index) {
+        return getOut(index);
+    }
+
+    /**
+     * @return true if there is a path from the start of the method to the instruction
+     */
+    public boolean isReachable(int index) {
+        return reachable.get(index);
+    }
+
+    /**
+     * @return true if every path from the start of the method to instruction b goes through instruction a
+     */
+    public boolean dominates(int a, int b) {
+        return getOut(b).get(a);
+    }
+
+    /**
+     * @return the closest dominator of the instruction other than itself, its parent in the dominator tree, or -1 for
+     * the first instruction and for instructions that cannot be reached
+     */
+    public int getImmediateDominator(int index) {
+        if (index == 0 || !isReachable(index)) {
+            return -1;
+        }
+
+        // The dominators of an instruction form a chain, the closest one is dominated by all the others
+        var dominators = getDominators(index);
+        int immediate = -1;
+        int depth = -1;
+        for (int d = dominators.nextSetBit(0); d >= 0; d = dominators.nextSetBit(d + 1)) {
+            if (d != index && getDominators(d).cardinality() > depth) {
+                immediate = d;
+                depth = getDominators(d).cardinality();
+            }
+        }
+
+        return immediate;
+    }
+
+    /**
+     * The dominance frontier of an instruction is where its dominance ends: the instructions it does not strictly
+     * dominate, but that have a predecessor it dominates. This is where a value assigned by it may meet others.
+     *
+     * @return the dominance frontier of each instruction
+     */
+    public BitSet[] getDominanceFrontiers() {
+        var frontiers = new BitSet[cfg.size()];
+        for (int i = 0; i < cfg.size(); i++) {
+            frontiers[i] = new BitSet();
+        }
+
+        for (int join = 0; join < cfg.size(); join++) {
+            var predecessors = cfg.getPredecessors(join);
+            if (predecessors.size() < 2 || !isReachable(join)) {
+                continue;
+            }
+
+            int immediate = getImmediateDominator(join);
+            for (int predecessor : predecessors) {
+                if (!isReachable(predecessor)) {
+                    continue;
+                }
+
+                // Every dominator of the predecessor below the immediate dominator of the join
+                for (int runner = predecessor; runner >= 0 && runner != immediate;
+                     runner = getImmediateDominator(runner)) {
+                    frontiers[runner].set(join);
+                }
+            }
+        }
+
+        return frontiers;
+    }
+}
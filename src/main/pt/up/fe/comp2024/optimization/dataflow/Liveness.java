@@ -0,0 +1,133 @@
+package pt.up.fe.comp2024.optimization.dataflow;
+
+import org.specs.comp.ollir.Descriptor;
+import org.specs.comp.ollir.VarScope;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the variables that are live before and after each instruction of a method.
+ * <p>
+ * Variables are numbered in order of their virtual register in the var table, and sets of variables are BitSets
+ * indexed by that number.
+ */
+public class Liveness extends BitSetAnalysis {
+
+    private final List<String> variables;
+    private final Map<String, Integer> variableIndexes;
+    private final BitSet[] defs;
+    private final BitSet[] uses;
+
+    public Liveness(ControlFlowGraph cfg) {
+        super(cfg, Direction.BACKWARD, Meet.UNION);
+
+        var method = cfg.getMethod();
+        this.variables = new ArrayList<>();
+        method.getVarTable().entrySet().stream()
+                .filter(entry -> entry.getValue().getScope() != VarScope.FIELD)
+                .sorted(Map.Entry.<String, Descriptor>comparingByValue(Comparator.comparingInt(Descriptor::getVirtualReg))
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .forEach(entry -> variables.add(entry.getKey()));
+
+        this.variableIndexes = new HashMap<>();
+        for (int i = 0; i < variables.size(); i++) {
+            variableIndexes.put(variables.get(i), i);
+        }
+
+        int size = cfg.size();
+        this.defs = new BitSet[size];
+        this.uses = new BitSet[size];
+
+        for (int i = 0; i < size; i++) {
+            var inst = cfg.getInstruction(i);
+
+            defs[i] = new BitSet();
+            var def = DefUse.getDef(inst, method);
+            if (def.isPresent()) {
+                defs[i].set(variableIndexes.get(def.get()));
+            }
+
+            uses[i] = new BitSet();
+            for (var use : DefUse.getUses(inst, method)) {
+                uses[i].set(variableIndexes.get(use));
+            }
+        }
+
+        solve();
+    }
+
+    @Override
+    protected int getUniverseSize() {
+        return variables.size();
+    }
+
+    @Override
+    protected BitSet getGen(int index) {
+        return uses[index];
+    }
+
+    @Override
+    protected BitSet getKill(int index) {
+        return defs[index];
+    }
+
+    /**
+     * @return the variables of the method, the position of each is its number in the sets
+     */
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    public int getVariableIndex(String variable) {
+        return variableIndexes.get(variable);
+    }
+
+    public BitSet getDefs(int index) {
+        return defs[index];
+    }
+
+    public BitSet getUses(int index) {
+        return uses[index];
+    }
+
+    /**
+     * @param index the index of an instruction
+     * @return the variables live before the instruction, must not be modified
+     */
+    public BitSet getLiveIn(int index) {
+        return getIn(index);
+    }
+
+    /**
+     * @param index the index of an instruction
+     * @return the variables live after the instruction, must not be modified
+     */
+    public BitSet getLiveOut(int index) {
+        return getOut(index);
+    }
+
+    /**
+     * @param index    the index of an instruction
+     * @param variable
+     * @return true if the value of the variable before the instruction may still be read
+     */
+    public boolean isLiveIn(int index, String variable) {
+        var variableIndex = variableIndexes.get(variable);
+        return variableIndex != null && getIn(index).get(variableIndex);
+    }
+
+    /**
+     * @param index    the index of an instruction
+     * @param variable
+     * @return true if the value of the variable after the instruction may still be read
+     */
+    public boolean isLiveOut(int index, String variable) {
+        var variableIndex = variableIndexes.get(variable);
+        return variableIndex != null && getOut(index).get(variableIndex);
+    }
+}
@@ -0,0 +1,87 @@
+package pt.up.fe.comp2024.optimization.dataflow;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A loop of the control flow graph: a header that dominates the source of an edge back to it, and the instructions
+ * that can reach that edge without going through the header.
+ *
+ * @param header    the index of the only instruction through which the loop can be entered
+ * @param body      the indexes of the instructions of the loop, including the header
+ * @param backEdges the indexes of the instructions in the loop that jump back to the header
+ */
+public record NaturalLoop(int header, BitSet body, List<Integer> backEdges) {
+
+    public boolean contains(int index) {
+        return body.get(index);
+    }
+
+    /**
+     * @return the instructions outside the loop that are successors of an instruction in the loop
+     */
+    public BitSet getExits(ControlFlowGraph cfg) {
+        var exits = new BitSet();
+        for (int i = body.nextSetBit(0); i >= 0; i = body.nextSetBit(i + 1)) {
+            for (int successor : cfg.getSuccessors(i)) {
+                if (!body.get(successor)) {
+                    exits.set(successor);
+                }
+            }
+        }
+
+        return exits;
+    }
+
+    /**
+     * Finds the natural loops of a method. Back edges to the same header give a single loop.
+     *
+     * @return the loops, inner loops before the loops that contain them
+     */
+    public static List<NaturalLoop> find(ControlFlowGraph cfg, Dominators dominators) {
+        var loops = new LinkedHashMap<Integer, NaturalLoop>();
+
+        for (int i = 0; i < cfg.size(); i++) {
+            if (!dominators.isReachable(i)) {
+                continue;
+            }
+
+            for (int successor : cfg.getSuccessors(i)) {
+                if (!dominators.dominates(successor, i)) {
+                    continue;
+                }
+
+                var loop = loops.computeIfAbsent(successor,
+                        header -> new NaturalLoop(header, new BitSet(), new ArrayList<>()));
+                loop.backEdges().add(i);
+                addBody(cfg, loop, i);
+            }
+        }
+
+        var sorted = new ArrayList<>(loops.values());
+        sorted.sort((a, b) -> Integer.compare(a.body().cardinality(), b.body().cardinality()));
+        return sorted;
+    }
+
+    private static void addBody(ControlFlowGraph cfg, NaturalLoop loop, int backEdge) {
+        loop.body().set(loop.header());
+
+        var worklist = new ArrayDeque<Integer>();
+        if (!loop.body().get(backEdge)) {
+            loop.body().set(backEdge);
+            worklist.add(backEdge);
+        }
+
+        while (!worklist.isEmpty()) {
+            for (int predecessor : cfg.getPredecessors(worklist.poll())) {
+                if (!loop.body().get(predecessor)) {
+                    loop.body().set(predecessor);
+                    worklist.add(predecessor);
+                }
+            }
+        }
+    }
+}
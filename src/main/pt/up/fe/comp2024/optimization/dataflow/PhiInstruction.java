@@ -0,0 +1,92 @@
+package pt.up.fe.comp2024.optimization.dataflow;
+
+import org.specs.comp.ollir.Element;
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.InstructionType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * The value of a variable where control flow paths meet, in SSA form: the value it had at the end of the predecessor
+ * the path came from. It is the right side of an assignment, 'x_2 := phi(x_0, x_1)'.
+ * <p>
+ * The phis of a join point are consecutive, right before the instruction they join at, and all take their values at
+ * the same time. They only exist between {@link pt.up.fe.comp2024.optimization.passes.SsaConstruction} and
+ * {@link pt.up.fe.comp2024.optimization.passes.SsaDestruction}, the backend never sees them.
+ */
+public class PhiInstruction extends Instruction {
+
+    private final String variable;
+    private final List<Instruction> sources;
+    private final List<Element> values;
+
+    /**
+     * @param variable the variable before renaming, that the phi merges the versions of
+     */
+    public PhiInstruction(String variable) {
+        super(InstructionType.NOPER);
+
+        this.variable = variable;
+        this.sources = new ArrayList<>();
+        this.values = new ArrayList<>();
+    }
+
+    public String getVariable() {
+        return variable;
+    }
+
+    /**
+     * @return the last instruction of each path into the join point, in the same order as {@link #getValues()}
+     */
+    public List<Instruction> getSources() {
+        return sources;
+    }
+
+    public List<Element> getValues() {
+        return values;
+    }
+
+    /**
+     * @return the value of the variable when coming from the source
+     */
+    public Optional<Element> getValue(Instruction source) {
+        int index = sources.indexOf(source);
+        return index < 0 ? Optional.empty() : Optional.of(values.get(index));
+    }
+
+    public void setValue(Instruction source, Element value) {
+        int index = sources.indexOf(source);
+        if (index < 0) {
+            sources.add(source);
+            values.add(value);
+        } else {
+            values.set(index, value);
+        }
+    }
+
+    public void removeSource(Instruction source) {
+        int index = sources.indexOf(source);
+        if (index >= 0) {
+            sources.remove(index);
+            values.remove(index);
+        }
+    }
+
+    /**
+     * Called when the source is replaced, e.g. a branch by a goto.
+     */
+    public void replaceSource(Instruction source, Instruction replacement) {
+        int index = sources.indexOf(source);
+        if (index >= 0) {
+            sources.set(index, replacement);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "phi(" + values.stream().map(Object::toString).collect(Collectors.joining(", ")) + ")";
+    }
+}
@@ -0,0 +1,127 @@
+package pt.up.fe.comp2024.optimization.dataflow;
+
+import org.specs.comp.ollir.VarScope;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Computes which assignments may reach each instruction of a method. A definition is identified by the index of the
+ * instruction that assigns the variable.
+ * <p>
+ * Each variable also has an entry definition, numbered after the instructions, that stands for the value it has
+ * when the method starts: the argument for parameters, nothing for locals.
+ */
+public class ReachingDefinitions extends BitSetAnalysis {
+
+    private final String[] definedVariables;
+    private final Map<String, Integer> entryDefinitions;
+    private final Map<String, BitSet> definitionsByVariable;
+    private final BitSet[] gen;
+    private final BitSet[] kill;
+
+    public ReachingDefinitions(ControlFlowGraph cfg) {
+        super(cfg, Direction.FORWARD, Meet.UNION);
+
+        var method = cfg.getMethod();
+        int size = cfg.size();
+
+        this.definedVariables = new String[size];
+        this.definitionsByVariable = new HashMap<>();
+        this.entryDefinitions = new HashMap<>();
+
+        for (var entry : method.getVarTable().entrySet()) {
+            if (entry.getValue().getScope() == VarScope.FIELD) {
+                continue;
+            }
+
+            int entryDefinition = size + entryDefinitions.size();
+            entryDefinitions.put(entry.getKey(), entryDefinition);
+            definitionsByVariable.computeIfAbsent(entry.getKey(), key -> new BitSet()).set(entryDefinition);
+        }
+
+        for (int i = 0; i < size; i++) {
+            var def = DefUse.getDef(cfg.getInstruction(i), method);
+            if (def.isPresent()) {
+                definedVariables[i] = def.get();
+                definitionsByVariable.computeIfAbsent(def.get(), key -> new BitSet()).set(i);
+            }
+        }
+
+        this.gen = new BitSet[size];
+        this.kill = new BitSet[size];
+        for (int i = 0; i < size; i++) {
+            gen[i] = new BitSet();
+            kill[i] = new BitSet();
+
+            if (definedVariables[i] != null) {
+                gen[i].set(i);
+                kill[i] = definitionsByVariable.get(definedVariables[i]);
+            }
+        }
+
+        solve();
+    }
+
+    @Override
+    protected int getUniverseSize() {
+        return cfg.size() + entryDefinitions.size();
+    }
+
+    /**
+     * Only the entry definitions reach the start of the method.
+     */
+    @Override
+    protected BitSet getBoundary() {
+        var boundary = new BitSet();
+        boundary.set(cfg.size(), getUniverseSize());
+        return boundary;
+    }
+
+    @Override
+    protected BitSet getGen(int index) {
+        return gen[index];
+    }
+
+    @Override
+    protected BitSet getKill(int index) {
+        return kill[index];
+    }
+
+    /**
+     * @param index the index of an instruction
+     * @return the variable the instruction defines, if any
+     */
+    public Optional<String> getDefinedVariable(int index) {
+        return Optional.ofNullable(definedVariables[index]);
+    }
+
+    /**
+     * @param definition
+     * @return true if the definition stands for the value of a variable at the start of the method
+     */
+    public boolean isEntryDefinition(int definition) {
+        return definition >= cfg.size();
+    }
+
+    /**
+     * @param variable
+     * @return the indexes of all instructions that define the variable, and its entry definition
+     */
+    public BitSet getDefinitions(String variable) {
+        return definitionsByVariable.getOrDefault(variable, new BitSet());
+    }
+
+    /**
+     * @param index    the index of an instruction
+     * @param variable
+     * @return the definitions of the variable that may reach the instruction
+     */
+    public BitSet getReachingDefinitions(int index, String variable) {
+        var reaching = (BitSet) getIn(index).clone();
+        reaching.and(getDefinitions(variable));
+        return reaching;
+    }
+}
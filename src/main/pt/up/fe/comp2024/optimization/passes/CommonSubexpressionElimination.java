@@ -0,0 +1,89 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.optimization.dataflow.AvailableExpressions;
+import pt.up.fe.comp2024.optimization.dataflow.ControlFlowGraph;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes each expression only once while its value is known, e.g. the same array element or array length read
+ * twice with no store or call in between.
+ * <p>
+ * An expression is redundant where it is available: on every path it was already computed, and none of its operands
+ * changed since. Every assignment that computes a redundant expression also saves it in a new variable, and the
+ * redundant ones read that variable instead. The copies this leaves are cleaned up by {@link CopyPropagation} and
+ * {@link DeadCodeElimination}.
+ */
+public class CommonSubexpressionElimination implements OllirPass {
+
+    @Override
+    public List<Report> optimize(ClassUnit classUnit, Map<String, String> config) {
+        for (var method : classUnit.getMethods()) {
+            eliminate(method);
+        }
+
+        return List.of();
+    }
+
+    private void eliminate(Method method) {
+        var cfg = new ControlFlowGraph(method);
+        var availableExpressions = new AvailableExpressions(cfg);
+
+        var redundantKeys = new HashSet<String>();
+        for (int i = 0; i < cfg.size(); i++) {
+            var key = getKey(cfg.getInstruction(i));
+            if (key != null && availableExpressions.isAvailable(i, key)) {
+                redundantKeys.add(key);
+            }
+        }
+
+        if (redundantKeys.isEmpty()) {
+            return;
+        }
+
+        // Backwards, since saving an expression adds an instruction
+        var temps = new HashMap<String, Operand>();
+        for (int i = cfg.size() - 1; i >= 0; i--) {
+            var key = getKey(cfg.getInstruction(i));
+            if (key == null || !redundantKeys.contains(key)) {
+                continue;
+            }
+
+            var assign = (AssignInstruction) cfg.getInstruction(i);
+            var type = assign.getTypeOfAssign();
+            var temp = temps.computeIfAbsent(key, k -> MethodEditor.newVariable(method, "cse", type));
+
+            var readTemp = new AssignInstruction(assign.getDest(), type, new SingleOpInstruction(copyOf(temp)));
+            if (availableExpressions.isAvailable(i, key)) {
+                MethodEditor.replace(method, i, readTemp);
+            } else {
+                MethodEditor.replace(method, i, new AssignInstruction(copyOf(temp), type, assign.getRhs()));
+                MethodEditor.insert(method, i + 1, readTemp, false);
+            }
+        }
+    }
+
+    /**
+     * @return the key of the expression the instruction assigns, or null if it is not an assignment of one
+     */
+    private static String getKey(Instruction inst) {
+        if (inst instanceof AssignInstruction assign) {
+            return AvailableExpressions.getKey(assign.getRhs()).orElse(null);
+        }
+
+        return null;
+    }
+
+    /**
+     * Each instruction gets its own operands, since passes may rename them in place.
+     */
+    private static Operand copyOf(Operand operand) {
+        return new Operand(operand.getName(), operand.getType());
+    }
+}
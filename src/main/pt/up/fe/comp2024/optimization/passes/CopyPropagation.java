@@ -0,0 +1,97 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.optimization.dataflow.AvailableCopies;
+import pt.up.fe.comp2024.optimization.dataflow.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.dataflow.DefUse;
+import pt.up.fe.comp2024.optimization.dataflow.Liveness;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Removes the copies between variables that the OLLIR generator leaves, e.g. the temporary that holds the result of
+ * an expression before it is assigned to a local:
+ * <ul>
+ *     <li>'t := a + b; x := t', where t is not read afterwards, is coalesced into 'x := a + b';</li>
+ *     <li>after a copy 'x := y', the uses of x are replaced with y where neither has changed since the copy, on every
+ *     path. The copy usually becomes dead, and is then removed by {@link DeadCodeElimination}.</li>
+ * </ul>
+ */
+public class CopyPropagation implements OllirPass {
+
+    @Override
+    public List<Report> optimize(ClassUnit classUnit, Map<String, String> config) {
+        for (var method : classUnit.getMethods()) {
+            boolean changed;
+            do {
+                changed = coalesce(method);
+                changed |= propagate(method);
+            } while (changed);
+        }
+
+        return List.of();
+    }
+
+    private boolean coalesce(Method method) {
+        var liveness = new Liveness(new ControlFlowGraph(method));
+        var instructions = method.getInstructions();
+        boolean changed = false;
+
+        // Backwards, so that the indexes of the liveness analysis stay valid for the instructions not yet visited
+        for (int i = instructions.size() - 2; i >= 0; i--) {
+            var temp = DefUse.getDef(instructions.get(i), method);
+            var next = instructions.get(i + 1);
+            if (temp.isEmpty() || DefUse.getDef(next, method).isEmpty()) {
+                continue;
+            }
+
+            var source = AvailableCopies.getCopiedVariable((AssignInstruction) next, method);
+            if (source.isEmpty() || !source.get().equals(temp.get())) {
+                continue;
+            }
+
+            // Jumps to the copy would skip the computation of the value
+            var copy = (AssignInstruction) next;
+            var dest = ((Operand) copy.getDest()).getName();
+            if (dest.equals(temp.get()) || liveness.isLiveOut(i + 1, temp.get())
+                    || !MethodEditor.getLabels(method, copy).isEmpty() || !haveSameType(method, dest, temp.get())) {
+                continue;
+            }
+
+            var rhs = ((AssignInstruction) instructions.get(i)).getRhs();
+            MethodEditor.replace(method, i, new AssignInstruction(copy.getDest(), copy.getTypeOfAssign(), rhs));
+            MethodEditor.remove(method, i + 1);
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    private boolean propagate(Method method) {
+        var cfg = new ControlFlowGraph(method);
+        var copies = new AvailableCopies(cfg);
+        boolean changed = false;
+
+        for (int i = 0; i < cfg.size(); i++) {
+            for (var use : DefUse.getUseOperands(cfg.getInstruction(i), method)) {
+                var source = copies.getCopySource(i, use.getName());
+                if (source.isEmpty() || !haveSameType(method, source.get(), use.getName())) {
+                    continue;
+                }
+
+                use.setName(source.get());
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    private static boolean haveSameType(Method method, String a, String b) {
+        var varTable = method.getVarTable();
+        return varTable.get(a).getVarType().toString().equals(varTable.get(b).getVarType().toString());
+    }
+}
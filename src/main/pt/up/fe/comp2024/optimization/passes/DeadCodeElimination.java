@@ -0,0 +1,183 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.optimization.dataflow.ConstantAnalysis;
+import pt.up.fe.comp2024.optimization.dataflow.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.dataflow.DefUse;
+import pt.up.fe.comp2024.optimization.dataflow.Liveness;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Removes code that does not change what a method does:
+ * <ul>
+ *     <li>branches whose condition is always true become gotos, and those whose condition is always false are removed;</li>
+ *     <li>instructions that cannot be reached from the start of the method;</li>
+ *     <li>jumps to the instruction that follows them;</li>
+ *     <li>assignments to variables that are not read afterwards, if computing the value has no side effects. The
+ *     value of a dead call is still computed, and discarded;</li>
+ *     <li>labels no instruction jumps to.</li>
+ * </ul>
+ * Each removal may enable others, so they are repeated until nothing changes.
+ */
+public class DeadCodeElimination implements OllirPass {
+
+    @Override
+    public List<Report> optimize(ClassUnit classUnit, Map<String, String> config) {
+        for (var method : classUnit.getMethods()) {
+            boolean changed;
+            do {
+                changed = foldConstantBranches(method);
+                changed |= removeUnreachable(method);
+                changed |= removeJumpsToNext(method);
+                changed |= removeDeadStores(method);
+                changed |= MethodEditor.removeUnusedLabels(method);
+            } while (changed);
+        }
+
+        return List.of();
+    }
+
+    private boolean foldConstantBranches(Method method) {
+        var constants = new ConstantAnalysis(new ControlFlowGraph(method));
+        var instructions = method.getInstructions();
+        boolean changed = false;
+
+        for (int i = instructions.size() - 1; i >= 0; i--) {
+            if (!(instructions.get(i) instanceof CondBranchInstruction branch)) {
+                continue;
+            }
+
+            var condition = constants.getConstant(i, branch.getCondition());
+            if (condition.isEmpty()) {
+                continue;
+            }
+
+            if (condition.get() != 0) {
+                MethodEditor.replace(method, i, new GotoInstruction(branch.getLabel()));
+            } else {
+                MethodEditor.remove(method, i);
+            }
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    private boolean removeUnreachable(Method method) {
+        var cfg = new ControlFlowGraph(method);
+        if (cfg.size() == 0) {
+            return false;
+        }
+
+        var reachable = new BitSet();
+        var worklist = new ArrayDeque<Integer>();
+        reachable.set(0);
+        worklist.add(0);
+        while (!worklist.isEmpty()) {
+            for (int successor : cfg.getSuccessors(worklist.poll())) {
+                if (!reachable.get(successor)) {
+                    reachable.set(successor);
+                    worklist.add(successor);
+                }
+            }
+        }
+
+        if (reachable.cardinality() == cfg.size()) {
+            return false;
+        }
+
+        // Only unreachable jumps can go to an unreachable instruction, its labels are removed with them
+        var instructions = method.getInstructions();
+        for (int i = cfg.size() - 1; i >= 0; i--) {
+            if (!reachable.get(i)) {
+                instructions.remove(i);
+            }
+        }
+        MethodEditor.removeUnusedLabels(method);
+
+        return true;
+    }
+
+    private boolean removeJumpsToNext(Method method) {
+        var instructions = method.getInstructions();
+        boolean changed = false;
+
+        for (int i = instructions.size() - 2; i >= 0; i--) {
+            String label;
+            if (instructions.get(i) instanceof GotoInstruction gotoInst) {
+                label = gotoInst.getLabel();
+            } else if (instructions.get(i) instanceof CondBranchInstruction branch) {
+                label = branch.getLabel();
+            } else {
+                continue;
+            }
+
+            if (method.getLabels().get(label) == instructions.get(i + 1)) {
+                MethodEditor.remove(method, i);
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    private boolean removeDeadStores(Method method) {
+        var liveness = new Liveness(new ControlFlowGraph(method));
+        var instructions = method.getInstructions();
+        boolean changed = false;
+
+        // The last instruction is always a return or a jump
+        for (int i = instructions.size() - 2; i >= 0; i--) {
+            var def = DefUse.getDef(instructions.get(i), method);
+            if (def.isEmpty() || liveness.isLiveOut(i, def.get())) {
+                continue;
+            }
+
+            var rhs = ((AssignInstruction) instructions.get(i)).getRhs();
+            if (rhs instanceof CallInstruction call && call.getInvocationType() != CallType.NEW) {
+                MethodEditor.replace(method, i, call);
+                changed = true;
+            } else if (!hasSideEffects(rhs)) {
+                MethodEditor.remove(method, i);
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * @param rhs the right-hand side of an assignment
+     * @return true if computing the value may do something besides giving a value, e.g. call a method or throw an
+     * exception
+     */
+    private static boolean hasSideEffects(Instruction rhs) {
+        if (rhs instanceof CallInstruction) {
+            return true;
+        }
+
+        // Loading an array element may throw an exception, if the index is out of bounds
+        if (rhs instanceof SingleOpInstruction single) {
+            return single.getSingleOperand() instanceof ArrayOperand;
+        }
+
+        // Dividing may throw an exception, unless the divisor is a literal other than zero
+        if (rhs instanceof BinaryOpInstruction binary && binary.getOperation().getOpType() == OperationType.DIV) {
+            return !(binary.getRightOperand() instanceof LiteralElement divisor)
+                    || ConstantAnalysis.getLiteral(divisor).map(value -> value == 0).orElse(true);
+        }
+
+        // Fields are only read from 'this', which is never null
+        if (rhs instanceof GetFieldInstruction getField) {
+            return !getField.getObject().getName().equals("this");
+        }
+
+        return false;
+    }
+}
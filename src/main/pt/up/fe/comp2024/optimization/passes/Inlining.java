@@ -0,0 +1,323 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.optimization.dataflow.DefUse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Replaces calls to small methods of the same class with a copy of their body:
+ * <ul>
+ *     <li>the arguments are assigned to new variables that stand for the parameters, and the other variables and labels
+ *     of the callee also get new names in the caller;</li>
+ *     <li>'this' becomes the object the method is called on;</li>
+ *     <li>each return assigns its value to the variable the call was assigned to, and jumps to the instruction after
+ *     the call.</li>
+ * </ul>
+ * Only methods with at most {@link #MAX_CALLEE_SIZE} instructions that call no method of the class are inlined, so a
+ * recursive method is never inlined, not even into itself. Inlining a method may make its caller one that can be
+ * inlined, so calls are inlined until none is left that can be.
+ * <p>
+ * A virtual call runs the method of the class of the object, which may be a subclass, so only methods that cannot be
+ * overridden are inlined: static, private and final methods, and the methods of a final class.
+ */
+public class Inlining implements OllirPass {
+
+    private static final int MAX_CALLEE_SIZE = 16;
+
+    @Override
+    public List<Report> optimize(ClassUnit classUnit, Map<String, String> config) {
+        boolean changed;
+        do {
+            changed = false;
+            for (var method : classUnit.getMethods()) {
+                changed |= inlineCalls(classUnit, method);
+            }
+        } while (changed);
+
+        return List.of();
+    }
+
+    /**
+     * @return true if a call was inlined
+     */
+    private boolean inlineCalls(ClassUnit classUnit, Method method) {
+        var instructions = method.getInstructions();
+        boolean changed = false;
+
+        // Backwards, the instructions not yet visited keep their indexes
+        for (int i = instructions.size() - 2; i >= 0; i--) {
+            var inst = instructions.get(i);
+            var call = getCall(inst);
+            if (call.isEmpty()) {
+                continue;
+            }
+
+            var callee = getCallee(classUnit, call.get());
+            if (callee.isEmpty() || callee.get() == method || !canInline(classUnit, callee.get())) {
+                continue;
+            }
+
+            // The value is assigned to a variable, or discarded
+            Operand dest = null;
+            if (inst instanceof AssignInstruction assign) {
+                if (!(assign.getDest() instanceof Operand operand) || operand instanceof ArrayOperand) {
+                    continue;
+                }
+                dest = operand;
+            }
+
+            inline(method, i, call.get(), callee.get(), dest);
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    private static Optional<CallInstruction> getCall(Instruction inst) {
+        if (inst instanceof CallInstruction call) {
+            return Optional.of(call);
+        }
+
+        if (inst instanceof AssignInstruction assign && assign.getRhs() instanceof CallInstruction call) {
+            return Optional.of(call);
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * @return the method of the class the call invokes, if it is an invokevirtual on an object of the class or an
+     * invokestatic of the class
+     */
+    private static Optional<Method> getCallee(ClassUnit classUnit, CallInstruction call) {
+        var className = classUnit.getClassName();
+        var caller = call.getCaller();
+        boolean isStatic;
+
+        if (call.getInvocationType() == CallType.invokestatic) {
+            if (!(caller instanceof Operand operand) || !operand.getName().equals(className)) {
+                return Optional.empty();
+            }
+            isStatic = true;
+        } else if (call.getInvocationType() == CallType.invokevirtual) {
+            var type = caller.getType();
+            if (type.getTypeOfElement() != ElementType.THIS
+                    && !(type instanceof ClassType classType && classType.getName().equals(className))) {
+                return Optional.empty();
+            }
+            isStatic = false;
+        } else {
+            return Optional.empty();
+        }
+
+        var literal = ((LiteralElement) call.getMethodName()).getLiteral();
+        var name = literal.substring(1, literal.length() - 1);
+        for (var method : classUnit.getMethods()) {
+            if (method.getMethodName().equals(name) && method.isStaticMethod() == isStatic
+                    && method.getParams().size() == call.getArguments().size()) {
+                return Optional.of(method);
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    private static boolean canInline(ClassUnit classUnit, Method callee) {
+        var instructions = callee.getInstructions();
+        if (callee.isConstructMethod() || callee.isVarargs() || instructions.isEmpty()
+                || instructions.size() > MAX_CALLEE_SIZE || !isFinal(classUnit, callee)) {
+            return false;
+        }
+
+        for (var inst : instructions) {
+            var call = getCall(inst);
+            if (call.isPresent() && getCallee(classUnit, call.get()).isPresent()) {
+                return false;
+            }
+
+            var copied = inst instanceof AssignInstruction assign ? assign.getRhs() : inst;
+            if (!(copied instanceof SingleOpInstruction
+                    || copied instanceof OpInstruction || copied instanceof CallInstruction
+                    || copied instanceof FieldInstruction || copied instanceof GotoInstruction
+                    || copied instanceof CondBranchInstruction || copied instanceof ReturnInstruction)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if no subclass can override the method
+     */
+    private static boolean isFinal(ClassUnit classUnit, Method method) {
+        return method.isStaticMethod() || method.isFinalMethod() || classUnit.isFinalClass()
+                || method.getMethodAccessModifier() == AccessModifier.PRIVATE;
+    }
+
+    /**
+     * Replaces the call at the given index with the body of the callee.
+     *
+     * @param dest the variable the value of the call is assigned to, null if it is discarded
+     */
+    private void inline(Method method, int index, CallInstruction call, Method callee, Operand dest) {
+        var instructions = method.getInstructions();
+        var end = instructions.get(index + 1);
+        var endLabels = MethodEditor.getLabels(method, end);
+        var endLabel = endLabels.isEmpty() ? MethodEditor.newLabel(method, callee.getMethodName() + "_end") :
+                endLabels.get(0);
+        method.getLabels().put(endLabel, end);
+
+        var names = new HashMap<String, String>();
+        for (var entry : callee.getVarTable().entrySet()) {
+            var variable = entry.getKey();
+            if (entry.getValue().getScope() != VarScope.FIELD && !variable.equals("this")) {
+                var type = entry.getValue().getVarType();
+                names.put(variable, MethodEditor.newVariable(method, variable + "_in", type).getName());
+            }
+        }
+
+        var labels = new HashMap<String, String>();
+        for (var label : callee.getLabels().keySet()) {
+            labels.put(label, MethodEditor.newLabel(method, label));
+        }
+
+        var copier = new Copier(callee, names, labels, call.getInvocationType() == CallType.invokestatic ?
+                null : (Operand) call.getCaller());
+
+        var body = new ArrayList<Instruction>();
+        for (int i = 0; i < callee.getParams().size(); i++) {
+            var param = (Operand) callee.getParams().get(i);
+            var type = param.getType();
+            body.add(new AssignInstruction(new Operand(names.get(param.getName()), type), type,
+                    new SingleOpInstruction(call.getArguments().get(i))));
+        }
+
+        var copies = new HashMap<Instruction, Instruction>();
+        for (var inst : callee.getInstructions()) {
+            var copy = new ArrayList<Instruction>();
+            if (inst instanceof ReturnInstruction ret) {
+                if (dest != null && ret.hasReturnValue()) {
+                    copy.add(new AssignInstruction(new Operand(dest.getName(), dest.getType()),
+                            dest.getType(), new SingleOpInstruction(copier.copy(ret.getOperand()))));
+                }
+                copy.add(new GotoInstruction(endLabel));
+            } else {
+                copy.add(copier.copy(inst));
+            }
+
+            copies.put(inst, copy.get(0));
+            body.addAll(copy);
+        }
+
+        callee.getLabels().forEach((label, inst) -> method.getLabels().put(labels.get(label), copies.get(inst)));
+
+        // The labels of the call mark the start of the body, the ones of the returns are already in the body
+        MethodEditor.replace(method, index, body.get(0));
+        for (int i = 1; i < body.size(); i++) {
+            MethodEditor.insert(method, index + i, body.get(i), false);
+        }
+    }
+
+    /**
+     * Copies the instructions of a callee, renaming its variables and labels. Variables and labels that are not in
+     * the maps keep their name.
+     *
+     * @param receiver the object 'this' becomes, null for a static callee
+     */
+    record Copier(Method callee, Map<String, String> names, Map<String, String> labels, Operand receiver) {
+
+        Instruction copy(Instruction inst) {
+            if (inst instanceof AssignInstruction assign) {
+                return new AssignInstruction(copy(assign.getDest()), assign.getTypeOfAssign(), copy(assign.getRhs()));
+            }
+            if (inst instanceof SingleOpInstruction single) {
+                return new SingleOpInstruction(copy(single.getSingleOperand()));
+            }
+            if (inst instanceof UnaryOpInstruction unary) {
+                return new UnaryOpInstruction(copy(unary.getOperation()), copy(unary.getOperand()));
+            }
+            if (inst instanceof BinaryOpInstruction binary) {
+                return new BinaryOpInstruction(copy(binary.getLeftOperand()), copy(binary.getOperation()),
+                        copy(binary.getRightOperand()));
+            }
+            if (inst instanceof CallInstruction call) {
+                var args = new ArrayList<Element>();
+                call.getArguments().forEach(arg -> args.add(copy(arg)));
+
+                var methodName = call.getMethodNameTry();
+                return methodName.isPresent() ?
+                        new CallInstruction(call.getInvocationType(), copy(call.getCaller()), copy(methodName.get()),
+                                args, call.getReturnType()) :
+                        new CallInstruction(call.getInvocationType(), copy(call.getCaller()), args,
+                                call.getReturnType());
+            }
+            if (inst instanceof GetFieldInstruction getField) {
+                return new GetFieldInstruction((Operand) copy(getField.getObject()),
+                        (Operand) copy(getField.getField()), getField.getFieldType());
+            }
+            if (inst instanceof PutFieldInstruction putField) {
+                return new PutFieldInstruction((Operand) copy(putField.getObject()),
+                        (Operand) copy(putField.getField()), copy(putField.getValue()), putField.getFieldType());
+            }
+            if (inst instanceof GotoInstruction gotoInst) {
+                return new GotoInstruction(rename(gotoInst.getLabel()));
+            }
+            if (inst instanceof OpCondInstruction opCond) {
+                var branch = new OpCondInstruction((OpInstruction) copy(opCond.getCondition()));
+                branch.setLabel(rename(opCond.getLabel()));
+                return branch;
+            }
+            if (inst instanceof SingleOpCondInstruction singleOpCond) {
+                var branch = new SingleOpCondInstruction((SingleOpInstruction) copy(singleOpCond.getCondition()));
+                branch.setLabel(rename(singleOpCond.getLabel()));
+                return branch;
+            }
+
+            throw new RuntimeException("Cannot inline instruction '" + inst + "' of method '"
+                    + callee.getMethodName() + "'");
+        }
+
+        private Element copy(Element element) {
+            if (element instanceof LiteralElement literal) {
+                return new LiteralElement(literal.getLiteral(), literal.getType());
+            }
+
+            var operand = (Operand) element;
+            if (operand instanceof ArrayOperand array) {
+                var indexes = new ArrayList<Element>();
+                array.getIndexOperands().forEach(indexElement -> indexes.add(copy(indexElement)));
+                return new ArrayOperand(rename(array), array.getType(), indexes);
+            }
+
+            if (operand.getType().getTypeOfElement() == ElementType.THIS && receiver != null) {
+                return new Operand(receiver.getName(), receiver.getType());
+            }
+
+            return new Operand(rename(operand), operand.getType());
+        }
+
+        /**
+         * Fields and class names keep their name.
+         */
+        private String rename(Operand operand) {
+            return DefUse.isVariable(operand, callee) ? names.getOrDefault(operand.getName(), operand.getName()) :
+                    operand.getName();
+        }
+
+        private String rename(String label) {
+            return labels.getOrDefault(label, label);
+        }
+
+        private static Operation copy(Operation operation) {
+            return new Operation(operation.getOpType(), operation.getTypeInfo());
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.optimization.dataflow.AvailableExpressions;
+import pt.up.fe.comp2024.optimization.dataflow.ConstantAnalysis;
+import pt.up.fe.comp2024.optimization.dataflow.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.dataflow.DefUse;
+import pt.up.fe.comp2024.optimization.dataflow.Dominators;
+import pt.up.fe.comp2024.optimization.dataflow.Liveness;
+import pt.up.fe.comp2024.optimization.dataflow.NaturalLoop;
+import pt.up.fe.comp2024.optimization.dataflow.ReachingDefinitions;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves the assignments whose value is the same in every iteration of a loop to a preheader, a block that runs once
+ * right before the loop is entered.
+ * <p>
+ * An assignment 'x := e' is invariant if every variable e reads is only assigned outside the loop, or by a single
+ * invariant assignment in it. Array loads are only invariant if the loop has no array stores or calls, and field
+ * reads if it has no field stores or calls. It can be hoisted if it is the only assignment to x in the loop and x is
+ * not live when the loop starts, so that no use sees a different value. Expressions that may throw an exception
+ * (array accesses, divisions) are only hoisted if they would run anyway before the loop does anything else or exits.
+ * <p>
+ * Inner loops are handled first, and the process is repeated so that their preheaders may in turn be hoisted from the
+ * loops that contain them.
+ */
+public class LoopInvariantCodeMotion implements OllirPass {
+
+    @Override
+    public List<Report> optimize(ClassUnit classUnit, Map<String, String> config) {
+        for (var method : classUnit.getMethods()) {
+            boolean changed;
+            do {
+                changed = hoistFromAnyLoop(method);
+            } while (changed);
+        }
+
+        return List.of();
+    }
+
+    /**
+     * Hoists the invariant instructions of the first loop that has any.
+     *
+     * @return true if an instruction was hoisted
+     */
+    private boolean hoistFromAnyLoop(Method method) {
+        var cfg = new ControlFlowGraph(method);
+        var dominators = new Dominators(cfg);
+        var reachingDefinitions = new ReachingDefinitions(cfg);
+        var liveness = new Liveness(cfg);
+
+        for (var loop : NaturalLoop.find(cfg, dominators)) {
+            var invariant = findHoistable(cfg, loop, dominators, reachingDefinitions, liveness);
+            if (!invariant.isEmpty()) {
+                hoist(method, cfg, loop, dominators, invariant);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private BitSet findHoistable(ControlFlowGraph cfg, NaturalLoop loop, Dominators dominators,
+                                 ReachingDefinitions reachingDefinitions, Liveness liveness) {
+        var method = cfg.getMethod();
+        var body = loop.body();
+
+        boolean writesArrays = false;
+        boolean writesFields = false;
+        var defsInLoop = new HashMap<String, Integer>();
+        for (int i = body.nextSetBit(0); i >= 0; i = body.nextSetBit(i + 1)) {
+            var inst = cfg.getInstruction(i);
+            writesArrays |= AvailableExpressions.writesMemory(inst);
+            writesFields |= inst instanceof PutFieldInstruction || callsMethod(inst);
+            DefUse.getDef(inst, method).ifPresent(def -> defsInLoop.merge(def, 1, Integer::sum));
+        }
+
+        // The instructions that run on each iteration before the loop may exit
+        var exitSources = new ArrayList<Integer>();
+        for (int i = body.nextSetBit(0); i >= 0; i = body.nextSetBit(i + 1)) {
+            for (int successor : cfg.getSuccessors(i)) {
+                if (!body.get(successor)) {
+                    exitSources.add(i);
+                }
+            }
+        }
+
+        var invariant = new BitSet();
+        boolean changed;
+        do {
+            changed = false;
+
+            for (int i = body.nextSetBit(0); i >= 0; i = body.nextSetBit(i + 1)) {
+                if (invariant.get(i) || !(cfg.getInstruction(i) instanceof AssignInstruction assign)) {
+                    continue;
+                }
+
+                var def = DefUse.getDef(assign, method);
+                if (def.isEmpty() || defsInLoop.get(def.get()) != 1 || liveness.isLiveIn(loop.header(), def.get())) {
+                    continue;
+                }
+
+                var rhs = assign.getRhs();
+                if (!isPure(rhs) && !mayThrow(rhs)
+                        || AvailableExpressions.readsMemory(rhs) && writesArrays
+                        || rhs instanceof GetFieldInstruction && writesFields
+                        || !hasInvariantOperands(cfg, i, loop, reachingDefinitions, invariant)) {
+                    continue;
+                }
+
+                if (mayThrow(rhs) && !runsFirst(cfg, i, loop, dominators, exitSources, invariant)) {
+                    continue;
+                }
+
+                invariant.set(i);
+                changed = true;
+            }
+        } while (changed);
+
+        return invariant;
+    }
+
+    private boolean hasInvariantOperands(ControlFlowGraph cfg, int index, NaturalLoop loop,
+                                         ReachingDefinitions reachingDefinitions, BitSet invariant) {
+        for (var use : DefUse.getUses(cfg.getInstruction(index), cfg.getMethod())) {
+            var definitions = reachingDefinitions.getReachingDefinitions(index, use);
+
+            var inLoop = (BitSet) definitions.clone();
+            inLoop.and(loop.body());
+            if (inLoop.isEmpty()) {
+                continue;
+            }
+
+            if (definitions.cardinality() != 1 || !invariant.get(definitions.nextSetBit(0))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * An instruction that may throw can only be hoisted if, whenever the loop is entered, it runs before anything
+     * else with side effects and before the loop can exit.
+     */
+    private boolean runsFirst(ControlFlowGraph cfg, int index, NaturalLoop loop, Dominators dominators,
+                              List<Integer> exitSources, BitSet invariant) {
+        for (int exit : exitSources) {
+            if (!dominators.dominates(index, exit)) {
+                return false;
+            }
+        }
+
+        for (int i = loop.body().nextSetBit(0); i >= 0; i = loop.body().nextSetBit(i + 1)) {
+            if (i == index || invariant.get(i) || !dominators.dominates(i, index)) {
+                continue;
+            }
+
+            // Jumps have no side effects, the branches out of the loop were already checked
+            var inst = cfg.getInstruction(i);
+            if (inst instanceof GotoInstruction || inst instanceof CondBranchInstruction) {
+                continue;
+            }
+
+            if (!(inst instanceof AssignInstruction assign) || assign.getDest() instanceof ArrayOperand
+                    || !isPure(assign.getRhs())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if computing the value has no side effects and cannot throw
+     */
+    private static boolean isPure(Instruction rhs) {
+        if (rhs instanceof SingleOpInstruction single) {
+            return !(single.getSingleOperand() instanceof ArrayOperand);
+        }
+
+        if (rhs instanceof BinaryOpInstruction binary && binary.getOperation().getOpType() == OperationType.DIV) {
+            return binary.getRightOperand() instanceof LiteralElement divisor
+                    && ConstantAnalysis.getLiteral(divisor).map(value -> value != 0).orElse(false);
+        }
+
+        // Fields are only read from 'this', which is never null
+        return rhs instanceof UnaryOpInstruction || rhs instanceof BinaryOpInstruction
+                || rhs instanceof GetFieldInstruction getField && getField.getObject().getName().equals("this");
+    }
+
+    /**
+     * @return true if computing the value has no side effects, but may throw an exception
+     */
+    private static boolean mayThrow(Instruction rhs) {
+        if (isPure(rhs)) {
+            return false;
+        }
+
+        return rhs instanceof SingleOpInstruction || rhs instanceof BinaryOpInstruction
+                || rhs instanceof CallInstruction call && call.getInvocationType() == CallType.arraylength;
+    }
+
+    private static boolean callsMethod(Instruction inst) {
+        if (inst instanceof AssignInstruction assign) {
+            return callsMethod(assign.getRhs());
+        }
+
+        return inst instanceof CallInstruction call
+                && call.getInvocationType() != CallType.arraylength && call.getInvocationType() != CallType.NEW;
+    }
+
+    private void hoist(Method method, ControlFlowGraph cfg, NaturalLoop loop, Dominators dominators, BitSet invariant) {
+        // An invariant instruction comes after the invariant instructions it depends on, which dominate it
+        var hoisted = new ArrayList<Instruction>();
+        invariant.stream()
+                .boxed()
+                .sorted(Comparator.comparingInt((Integer i) -> dominators.getDominators(i).cardinality())
+                        .thenComparingInt(i -> i))
+                .forEach(i -> hoisted.add(cfg.getInstruction(i)));
+
+        // If the header itself is hoisted, the loop now starts at the next instruction that stays
+        int newHeader = loop.header();
+        while (invariant.get(newHeader)) {
+            newHeader++;
+        }
+        var newHeaderInst = cfg.getInstruction(newHeader);
+
+        for (int i = invariant.length() - 1; i >= 0; i = invariant.previousSetBit(i - 1)) {
+            MethodEditor.remove(method, i);
+        }
+
+        MethodEditor.insertPreheader(method, cfg, loop, newHeaderInst, hoisted);
+    }
+}
@@ -0,0 +1,380 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.optimization.dataflow.ConstantAnalysis;
+import pt.up.fe.comp2024.optimization.dataflow.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.dataflow.DefUse;
+import pt.up.fe.comp2024.optimization.dataflow.Dominators;
+import pt.up.fe.comp2024.optimization.dataflow.NaturalLoop;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Unrolls counted loops, the loops 'header: ...; i := i + step; ...; if (i < bound) goto header' that the OLLIR
+ * generator makes of 'while (i < bound)', with a positive int literal step and an int literal bound:
+ * <ul>
+ *     <li>if i is always the same constant when the loop is entered, and the loop then runs only a few times, it is
+ *     replaced with that many copies of its body;</li>
+ *     <li>otherwise, it is preceded by a loop with {@link CompilerConfig#getUnrollFactor(Map)} copies of its body,
+ *     that runs while all the copies are iterations the loop would run. The loop itself runs the remaining
+ *     iterations.</li>
+ * </ul>
+ * Only inner loops whose instructions are contiguous and that are only left through the branch at their end are
+ * unrolled, and only up to {@link #MAX_UNROLLED_SIZE} instructions.
+ */
+public class LoopUnrolling implements OllirPass {
+
+    private static final int MAX_UNROLLED_SIZE = 64;
+    private static final int MAX_TRIP_COUNT = 8;
+
+    private static final Type INT = new Type(ElementType.INT32);
+    private static final Type BOOL = new Type(ElementType.BOOLEAN);
+
+    /**
+     * @param header   the index of the first instruction of the loop
+     * @param latch    the index of the branch back to the header, the last instruction of the loop
+     * @param variable the induction variable, assigned once in each iteration
+     * @param bound    the loop runs while the variable is less than the bound
+     */
+    private record CountedLoop(int header, int latch, String variable, int step, long bound) {
+
+        /**
+         * @return the number of instructions of the body, without the branch back to the header
+         */
+        int size() {
+            return latch - header;
+        }
+    }
+
+    @Override
+    public List<Report> optimize(ClassUnit classUnit, Map<String, String> config) {
+        int factor = CompilerConfig.getUnrollFactor(config);
+
+        for (var method : classUnit.getMethods()) {
+            // The branches back to the header of the loops already unrolled, the loops left run the remainder
+            var unrolled = new HashSet<Instruction>();
+
+            boolean changed;
+            do {
+                changed = unrollAnyLoop(method, factor, unrolled);
+            } while (changed);
+        }
+
+        return List.of();
+    }
+
+    /**
+     * @return true if a loop was unrolled
+     */
+    private boolean unrollAnyLoop(Method method, int factor, Set<Instruction> unrolled) {
+        var cfg = new ControlFlowGraph(method);
+        var dominators = new Dominators(cfg);
+        var loops = NaturalLoop.find(cfg, dominators);
+
+        for (var loop : loops) {
+            var counted = getCountedLoop(cfg, dominators, loop, loops);
+            if (counted.isEmpty() || unrolled.contains(cfg.getInstruction(counted.get().latch()))) {
+                continue;
+            }
+
+            var tripCount = getTripCount(cfg, loop, counted.get());
+            if (tripCount.isPresent() && tripCount.get() * counted.get().size() <= MAX_UNROLLED_SIZE) {
+                unrollFully(method, cfg, counted.get(), tripCount.get());
+                return true;
+            }
+
+            if (factor > 1 && factor * counted.get().size() <= MAX_UNROLLED_SIZE
+                    && canUnrollPartially(cfg, counted.get(), factor)) {
+                unrolled.add(cfg.getInstruction(counted.get().latch()));
+                unrolled.add(unrollPartially(method, cfg, counted.get(), factor));
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private Optional<CountedLoop> getCountedLoop(ControlFlowGraph cfg, Dominators dominators, NaturalLoop loop,
+                                                 List<NaturalLoop> loops) {
+        var method = cfg.getMethod();
+        int header = loop.header();
+        if (loop.backEdges().size() != 1) {
+            return Optional.empty();
+        }
+
+        int latch = loop.backEdges().get(0);
+        if (latch < header || latch + 1 >= cfg.size() || loop.body().cardinality() != latch - header + 1
+                || loop.body().nextClearBit(header) != latch + 1) {
+            return Optional.empty();
+        }
+
+        for (var other : loops) {
+            if (other != loop && loop.contains(other.header())) {
+                return Optional.empty();
+            }
+        }
+
+        // Only left through the latch
+        for (int i = header; i < latch; i++) {
+            if (cfg.getInstruction(i) instanceof ReturnInstruction
+                    || cfg.getSuccessors(i).stream().anyMatch(successor -> !loop.contains(successor))) {
+                return Optional.empty();
+            }
+        }
+
+        // 'if (i < bound) goto header' or 'if (i <= bound) goto header'
+        if (!(cfg.getInstruction(latch) instanceof OpCondInstruction branch)
+                || !(branch.getCondition() instanceof BinaryOpInstruction condition)
+                || !(condition.getLeftOperand() instanceof Operand variable) || variable instanceof ArrayOperand
+                || !DefUse.isVariable(variable, method)) {
+            return Optional.empty();
+        }
+
+        var operation = condition.getOperation().getOpType();
+        var limit = getIntLiteral(condition.getRightOperand());
+        if (limit.isEmpty() || operation != OperationType.LTH && operation != OperationType.LTE) {
+            return Optional.empty();
+        }
+        long bound = operation == OperationType.LTH ? limit.get() : limit.get() + 1L;
+
+        // 'i := i + step', run once in each iteration
+        Integer step = null;
+        for (int i = header; i < latch; i++) {
+            var def = DefUse.getDef(cfg.getInstruction(i), method);
+            if (def.isEmpty() || !def.get().equals(variable.getName())) {
+                continue;
+            }
+
+            var increment = getIncrement((AssignInstruction) cfg.getInstruction(i), variable.getName());
+            if (step != null || increment.isEmpty() || !dominators.dominates(i, latch)) {
+                return Optional.empty();
+            }
+            step = increment.get();
+        }
+
+        if (step == null || step <= 0) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new CountedLoop(header, latch, variable.getName(), step, bound));
+    }
+
+    /**
+     * @return the amount added to the variable, if the assignment is 'i := i + c' or 'i := c + i'
+     */
+    private static Optional<Integer> getIncrement(AssignInstruction assign, String variable) {
+        if (!(assign.getRhs() instanceof BinaryOpInstruction binary)
+                || binary.getOperation().getOpType() != OperationType.ADD) {
+            return Optional.empty();
+        }
+
+        if (isVariable(binary.getLeftOperand(), variable)) {
+            return getIntLiteral(binary.getRightOperand());
+        }
+        if (isVariable(binary.getRightOperand(), variable)) {
+            return getIntLiteral(binary.getLeftOperand());
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * @return how many times the loop runs each time it is entered, if the variable always has the same value then
+     * and it is at most {@link #MAX_TRIP_COUNT}. The loop tests its condition at the end, so it runs at least once.
+     * Loops in which the variable wraps around are not counted, as with 'i <= 2147483647'
+     */
+    private Optional<Integer> getTripCount(ControlFlowGraph cfg, NaturalLoop loop, CountedLoop counted) {
+        var constants = new ConstantAnalysis(cfg);
+
+        Integer initial = null;
+        for (int predecessor : cfg.getPredecessors(counted.header())) {
+            if (loop.contains(predecessor)) {
+                continue;
+            }
+
+            var value = constants.getOut(predecessor).get(counted.variable());
+            if (value == null || !value.isConstant() || initial != null && initial != value.constant()) {
+                return Optional.empty();
+            }
+            initial = value.constant();
+        }
+
+        if (initial == null) {
+            return Optional.empty();
+        }
+
+        long value = initial;
+        int tripCount = 0;
+        do {
+            tripCount++;
+            value += counted.step();
+
+            // The variable wraps around instead, and the loop goes on
+            if (value > Integer.MAX_VALUE) {
+                return Optional.empty();
+            }
+        } while (value < counted.bound() && tripCount <= MAX_TRIP_COUNT);
+
+        return tripCount <= MAX_TRIP_COUNT ? Optional.of(tripCount) : Optional.empty();
+    }
+
+    /**
+     * Replaces the loop with copies of its body, the last one goes on to the instruction after the loop.
+     */
+    private void unrollFully(Method method, ControlFlowGraph cfg, CountedLoop counted, int tripCount) {
+        var copies = copyBody(method, cfg, counted, tripCount, getLabel(method, cfg.getInstruction(counted.latch() + 1)));
+
+        // Only the header can be jumped to from outside the loop
+        var headerLabels = MethodEditor.getLabels(method, cfg.getInstruction(counted.header()));
+        var removed = new HashSet<>(cfg.getInstructions().subList(counted.header(), counted.latch() + 1));
+        method.getLabels().values().removeIf(removed::contains);
+        method.getInstructions().subList(counted.header(), counted.latch() + 1).clear();
+
+        method.getInstructions().addAll(counted.header(), copies);
+        headerLabels.forEach(label -> method.getLabels().put(label, copies.get(0)));
+    }
+
+    /**
+     * The unrolled loop is entered by falling through into the header, or by a jump to it right before it. Each of
+     * its iterations runs the loop the factor times, so it runs while the variable is less than the bound minus
+     * (factor - 1) steps. The variable then reaches at most the bound minus 1 plus a step, which must not wrap around.
+     */
+    private static boolean canUnrollPartially(ControlFlowGraph cfg, CountedLoop counted, int factor) {
+        long unrolledBound = counted.bound() - (long) (factor - 1) * counted.step();
+        if (unrolledBound < Integer.MIN_VALUE || counted.bound() - 1 + counted.step() > Integer.MAX_VALUE) {
+            return false;
+        }
+
+        int previous = counted.header() - 1;
+        if (previous < 0) {
+            return false;
+        }
+
+        var inst = cfg.getInstruction(previous);
+        if (inst instanceof GotoInstruction) {
+            return cfg.getSuccessors(previous).contains(counted.header());
+        }
+
+        return cfg.getSuccessors(previous).contains(counted.header()) && !(inst instanceof ReturnInstruction);
+    }
+
+    /**
+     * Inserts, right before the header:
+     * <pre>
+     *     if (i >= unrolledBound) goto header;
+     *     unrolled: body; ...; body;
+     *     if (i < unrolledBound) goto unrolled;
+     *     if (i >= bound) goto exit;
+     * </pre>
+     *
+     * @return the branch back to the first copy of the body
+     */
+    private Instruction unrollPartially(Method method, ControlFlowGraph cfg, CountedLoop counted, int factor) {
+        var header = cfg.getInstruction(counted.header());
+        var exitLabel = getLabel(method, cfg.getInstruction(counted.latch() + 1));
+        long unrolledBound = counted.bound() - (long) (factor - 1) * counted.step();
+
+        var unrolledLatch = branch(counted.variable(), OperationType.LTH, unrolledBound, null);
+        var copies = copyBody(method, cfg, counted, factor, getLabel(method, unrolledLatch));
+        unrolledLatch.setLabel(getLabel(method, copies.get(0)));
+
+        var insts = new ArrayList<Instruction>();
+        insts.add(branch(counted.variable(), OperationType.GTE, unrolledBound, getLabel(method, header)));
+        insts.addAll(copies);
+        insts.add(unrolledLatch);
+        insts.add(branch(counted.variable(), OperationType.GTE, counted.bound(), exitLabel));
+
+        // The jump right before the header would skip the unrolled loop, its labels move to the header
+        int index = method.getInstructions().indexOf(header);
+        if (method.getInstructions().get(index - 1) instanceof GotoInstruction) {
+            MethodEditor.remove(method, --index);
+        }
+
+        method.getInstructions().addAll(index, insts);
+        return unrolledLatch;
+    }
+
+    /**
+     * The copies of the body of the loop, without its latch, one after the other. Jumps to the latch go to the next
+     * copy, or to the given label from the last one.
+     */
+    private List<Instruction> copyBody(Method method, ControlFlowGraph cfg, CountedLoop counted, int copies,
+                                       String next) {
+        var body = cfg.getInstructions().subList(counted.header(), counted.latch());
+        var latchLabels = MethodEditor.getLabels(method, cfg.getInstruction(counted.latch()));
+
+        // Backwards, each copy jumps to the header of the next one
+        var result = new ArrayList<Instruction>();
+        for (int copy = 0; copy < copies; copy++) {
+            var labels = new HashMap<String, String>();
+            for (var inst : body) {
+                for (var label : MethodEditor.getLabels(method, inst)) {
+                    labels.put(label, MethodEditor.newLabel(method, label));
+                }
+            }
+            for (var label : latchLabels) {
+                labels.put(label, next);
+            }
+
+            var copier = new Inlining.Copier(method, Map.of(), labels, null);
+            var copied = new ArrayList<Instruction>();
+            for (var inst : body) {
+                var copiedInst = copier.copy(inst);
+                for (var label : MethodEditor.getLabels(method, inst)) {
+                    method.getLabels().put(labels.get(label), copiedInst);
+                }
+                copied.add(copiedInst);
+            }
+
+            result.addAll(0, copied);
+            next = getLabel(method, copied.get(0));
+        }
+
+        return result;
+    }
+
+    /**
+     * @return a label of the instruction, a new one if it has none
+     */
+    private static String getLabel(Method method, Instruction inst) {
+        var labels = MethodEditor.getLabels(method, inst);
+        if (!labels.isEmpty()) {
+            return labels.get(0);
+        }
+
+        var label = MethodEditor.newLabel(method, "unrolled");
+        method.getLabels().put(label, inst);
+        return label;
+    }
+
+    private static OpCondInstruction branch(String variable, OperationType operation, long bound, String label) {
+        var branch = new OpCondInstruction(new BinaryOpInstruction(new Operand(variable, INT),
+                new Operation(operation, BOOL), new LiteralElement(Long.toString(bound), INT)));
+        if (label != null) {
+            branch.setLabel(label);
+        }
+        return branch;
+    }
+
+    private static Optional<Integer> getIntLiteral(Element element) {
+        if (element instanceof LiteralElement literal && literal.getType().getTypeOfElement() == ElementType.INT32) {
+            return ConstantAnalysis.getLiteral(literal);
+        }
+
+        return Optional.empty();
+    }
+
+    private static boolean isVariable(Element element, String name) {
+        return element instanceof Operand operand && !(element instanceof ArrayOperand) && !element.isLiteral()
+                && operand.getName().equals(name);
+    }
+}
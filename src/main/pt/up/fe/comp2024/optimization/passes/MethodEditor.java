@@ -0,0 +1,207 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.dataflow.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.dataflow.NaturalLoop;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Changes the instructions of an OLLIR method in place, keeping its labels attached to the right instructions.
+ * <p>
+ * Labels are kept in {@link Method#getLabels()}, which maps each label to the instruction it marks, so an instruction
+ * that is removed or replaced passes its labels on.
+ */
+public class MethodEditor {
+
+    private MethodEditor() {
+    }
+
+    /**
+     * Removes the instruction at the given index. Its labels move to the instruction that follows it.
+     *
+     * @throws RuntimeException if the instruction has labels and is the last of the method
+     */
+    public static void remove(Method method, int index) {
+        var instructions = method.getInstructions();
+        var removed = instructions.get(index);
+
+        var labels = getLabels(method, removed);
+        if (!labels.isEmpty()) {
+            if (index + 1 >= instructions.size()) {
+                throw new RuntimeException("Cannot remove the last instruction of method '" + method.getMethodName()
+                        + "', it has the labels " + labels);
+            }
+
+            moveLabels(method, labels, instructions.get(index + 1));
+        }
+
+        instructions.remove(index);
+    }
+
+    /**
+     * Replaces the instruction at the given index, the new instruction gets its labels.
+     */
+    public static void replace(Method method, int index, Instruction replacement) {
+        var instructions = method.getInstructions();
+        moveLabels(method, getLabels(method, instructions.get(index)), replacement);
+        instructions.set(index, replacement);
+    }
+
+    /**
+     * Inserts an instruction before the one at the given index.
+     *
+     * @param takeLabels if true, jumps to the instruction at the index go to the inserted one instead
+     */
+    public static void insert(Method method, int index, Instruction inst, boolean takeLabels) {
+        var instructions = method.getInstructions();
+
+        if (takeLabels && index < instructions.size()) {
+            moveLabels(method, getLabels(method, instructions.get(index)), inst);
+        }
+
+        instructions.add(index, inst);
+    }
+
+    /**
+     * @return the labels that mark the instruction
+     */
+    public static List<String> getLabels(Method method, Instruction inst) {
+        var labels = new ArrayList<String>();
+
+        for (var entry : method.getLabels().entrySet()) {
+            if (entry.getValue() == inst) {
+                labels.add(entry.getKey());
+            }
+        }
+
+        return labels;
+    }
+
+    private static void moveLabels(Method method, List<String> labels, Instruction target) {
+        for (var label : labels) {
+            method.getLabels().put(label, target);
+        }
+    }
+
+    /**
+     * Inserts instructions that run once each time the loop is entered, right before its header. Jumps into the loop
+     * from outside go to them, the back edges of the loop still go to the header.
+     *
+     * @param cfg       the graph of the method when the loop was found
+     * @param header    the instruction the loop starts at, may be different from the header in the graph if that one
+     *                  was removed
+     * @param preheader the instructions to insert, not empty
+     */
+    public static void insertPreheader(Method method, ControlFlowGraph cfg, NaturalLoop loop, Instruction header,
+                                       List<Instruction> preheader) {
+        var preheaderLabel = newLabel(method, "preheader");
+        for (int predecessor : cfg.getPredecessors(loop.header())) {
+            if (loop.contains(predecessor)) {
+                continue;
+            }
+
+            var inst = cfg.getInstruction(predecessor);
+            if (inst instanceof GotoInstruction gotoInst && method.getLabels().get(gotoInst.getLabel()) == header) {
+                gotoInst.setLabel(preheaderLabel);
+            } else if (inst instanceof CondBranchInstruction branch
+                    && method.getLabels().get(branch.getLabel()) == header) {
+                branch.setLabel(preheaderLabel);
+            }
+        }
+
+        int position = method.getInstructions().indexOf(header);
+        for (int i = 0; i < preheader.size(); i++) {
+            insert(method, position + i, preheader.get(i), false);
+        }
+        method.getLabels().put(preheaderLabel, preheader.get(0));
+
+        // The end of the loop may fall through into the header, and must skip the preheader
+        int headerIndex = loop.header();
+        if (headerIndex > 0 && loop.contains(headerIndex - 1) && fallsThrough(cfg.getInstruction(headerIndex - 1))) {
+            var headerLabels = getLabels(method, header);
+            String headerLabel;
+            if (headerLabels.isEmpty()) {
+                headerLabel = newLabel(method, "header");
+                method.getLabels().put(headerLabel, header);
+            } else {
+                headerLabel = headerLabels.get(0);
+            }
+
+            insert(method, position, new GotoInstruction(headerLabel), false);
+        }
+    }
+
+    private static boolean fallsThrough(Instruction inst) {
+        return !(inst instanceof GotoInstruction) && !(inst instanceof ReturnInstruction);
+    }
+
+    /**
+     * @return a label that is not used in the method, starting with the given prefix
+     */
+    public static String newLabel(Method method, String prefix) {
+        int counter = 0;
+        String label;
+        do {
+            label = prefix + "_" + counter++;
+        } while (method.getLabels().containsKey(label));
+
+        return label;
+    }
+
+    /**
+     * Adds a local variable to the var table of the method, in a register after all the others.
+     *
+     * @return an operand that reads or writes the new variable
+     */
+    public static Operand newVariable(Method method, String prefix, Type type) {
+        var varTable = method.getVarTable();
+
+        int counter = 0;
+        String name;
+        do {
+            name = prefix + counter++;
+        } while (varTable.containsKey(name));
+
+        int register = 0;
+        for (var descriptor : varTable.values()) {
+            register = Math.max(register, descriptor.getVirtualReg() + 1);
+        }
+
+        varTable.put(name, new Descriptor(VarScope.LOCAL, register, type));
+        return new Operand(name, type);
+    }
+
+    /**
+     * @return the labels some goto or branch of the method jumps to
+     */
+    public static Set<String> getJumpTargets(Method method) {
+        var targets = new HashSet<String>();
+
+        for (var inst : method.getInstructions()) {
+            if (inst instanceof GotoInstruction gotoInst) {
+                targets.add(gotoInst.getLabel());
+            } else if (inst instanceof CondBranchInstruction branch) {
+                targets.add(branch.getLabel());
+            }
+        }
+
+        return targets;
+    }
+
+    /**
+     * Removes the labels no instruction jumps to, or that mark an instruction that is no longer in the method.
+     *
+     * @return true if a label was removed
+     */
+    public static boolean removeUnusedLabels(Method method) {
+        var targets = getJumpTargets(method);
+        var instructions = new HashSet<>(method.getInstructions());
+
+        return method.getLabels().entrySet().removeIf(entry ->
+                !targets.contains(entry.getKey()) || !instructions.contains(entry.getValue()));
+    }
+}
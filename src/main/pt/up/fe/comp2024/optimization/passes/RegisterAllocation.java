@@ -0,0 +1,215 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.optimization.dataflow.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.dataflow.Liveness;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns the local variables of each method to as few JVM registers as possible, by coloring the interference
+ * graph given by liveness analysis.
+ * <p>
+ * Controlled by '-r': with -1 the registers of the var table are kept, with 0 the number of registers is minimized
+ * and with n > 0 the number of registers is also minimized, but it is an error if a method needs more than n.
+ * 'this' and the parameters keep the registers the JVM passes them in.
+ */
+public class RegisterAllocation implements OllirPass {
+
+    @Override
+    public List<Report> optimize(ClassUnit classUnit, Map<String, String> config) {
+        int maxRegisters = CompilerConfig.getRegisterAllocation(config);
+        if (maxRegisters < 0) {
+            return List.of();
+        }
+
+        var reports = new ArrayList<Report>();
+        for (var method : classUnit.getMethods()) {
+
+            // The backend always generates its own constructor
+            if (method.isConstructMethod()) {
+                continue;
+            }
+
+            allocate(method, maxRegisters, reports);
+        }
+
+        return reports;
+    }
+
+    private void allocate(Method method, int maxRegisters, List<Report> reports) {
+        var liveness = new Liveness(new ControlFlowGraph(method));
+        var variables = liveness.getVariables();
+        var interference = buildInterferenceGraph(liveness);
+
+        // -1 if the variable can go in any register
+        var precolored = new int[variables.size()];
+        Arrays.fill(precolored, -1);
+        int fixedRegisters = method.isStaticMethod() ? 0 : 1;
+        for (int i = 0; i < variables.size(); i++) {
+            var descriptor = method.getVarTable().get(variables.get(i));
+            if (variables.get(i).equals("this")) {
+                precolored[i] = 0;
+            } else if (descriptor.getScope() == VarScope.PARAMETER) {
+                precolored[i] = descriptor.getVirtualReg();
+                fixedRegisters = Math.max(fixedRegisters, descriptor.getVirtualReg() + 1);
+            }
+        }
+
+        // Tries with more registers until the graph can be colored, each variable can always get a register of its own
+        int numRegisters = fixedRegisters;
+        int[] colors;
+        while ((colors = color(interference, precolored, numRegisters)) == null) {
+            numRegisters++;
+        }
+
+        if (maxRegisters > 0 && numRegisters > maxRegisters) {
+            reports.add(Report.newError(Stage.OPTIMIZATION, -1, -1,
+                    "Method '" + method.getMethodName() + "' needs at least " + numRegisters
+                            + " registers, but option '-r' only allows " + maxRegisters, null));
+            return;
+        }
+
+        for (int i = 0; i < variables.size(); i++) {
+            method.getVarTable().get(variables.get(i)).setVirtualReg(colors[i]);
+        }
+    }
+
+    /**
+     * Two variables interfere if one is assigned while the other is live. A copy 'a := b' does not make a and b
+     * interfere, since they hold the same value.
+     */
+    static BitSet[] buildInterferenceGraph(Liveness liveness) {
+        var cfg = liveness.getCfg();
+        int numVariables = liveness.getVariables().size();
+
+        var interference = new BitSet[numVariables];
+        for (int i = 0; i < numVariables; i++) {
+            interference[i] = new BitSet();
+        }
+
+        for (int i = 0; i < cfg.size(); i++) {
+            var live = (BitSet) liveness.getLiveOut(i).clone();
+
+            if (cfg.getInstruction(i) instanceof AssignInstruction assign
+                    && assign.getRhs() instanceof SingleOpInstruction copy
+                    && !(copy.getSingleOperand() instanceof ArrayOperand)) {
+                live.andNot(liveness.getUses(i));
+            }
+
+            var defs = liveness.getDefs(i);
+            for (int def = defs.nextSetBit(0); def >= 0; def = defs.nextSetBit(def + 1)) {
+                for (int other = live.nextSetBit(0); other >= 0; other = live.nextSetBit(other + 1)) {
+                    addEdge(interference, def, other);
+                }
+            }
+        }
+
+        // Variables live at the start of the method are all in use at the same time, e.g. the parameters
+        if (cfg.size() > 0) {
+            var entry = liveness.getLiveIn(0);
+            for (int a = entry.nextSetBit(0); a >= 0; a = entry.nextSetBit(a + 1)) {
+                for (int b = entry.nextSetBit(a + 1); b >= 0; b = entry.nextSetBit(b + 1)) {
+                    addEdge(interference, a, b);
+                }
+            }
+        }
+
+        return interference;
+    }
+
+    private static void addEdge(BitSet[] interference, int a, int b) {
+        if (a == b) {
+            return;
+        }
+
+        interference[a].set(b);
+        interference[b].set(a);
+    }
+
+    /**
+     * Colors the graph with the given number of colors, by simplification and optimistic selection.
+     *
+     * @return the color of each variable, or null if the graph could not be colored
+     */
+    private int[] color(BitSet[] interference, int[] precolored, int numColors) {
+        int numVariables = interference.length;
+
+        // Simplify, removing first the variables with fewer neighbours than colors
+        var removed = new BitSet();
+        var stack = new ArrayDeque<Integer>();
+        for (int i = 0; i < numVariables; i++) {
+            if (precolored[i] != -1) {
+                removed.set(i);
+            }
+        }
+
+        while (removed.cardinality() < numVariables) {
+            int chosen = -1;
+            int chosenDegree = -1;
+
+            for (int i = removed.nextClearBit(0); i < numVariables; i = removed.nextClearBit(i + 1)) {
+                var neighbours = (BitSet) interference[i].clone();
+                neighbours.andNot(removed);
+                int degree = neighbours.cardinality() + countPrecolored(interference[i], precolored);
+
+                if (degree < numColors) {
+                    chosen = i;
+                    break;
+                }
+
+                // Potential spill, pushed anyway in the hope that its neighbours share colors
+                if (degree > chosenDegree) {
+                    chosen = i;
+                    chosenDegree = degree;
+                }
+            }
+
+            removed.set(chosen);
+            stack.push(chosen);
+        }
+
+        // Select, giving each variable the lowest color its neighbours do not have
+        var colors = Arrays.copyOf(precolored, numVariables);
+        while (!stack.isEmpty()) {
+            int variable = stack.pop();
+
+            var used = new BitSet();
+            var neighbours = interference[variable];
+            for (int n = neighbours.nextSetBit(0); n >= 0; n = neighbours.nextSetBit(n + 1)) {
+                if (colors[n] != -1) {
+                    used.set(colors[n]);
+                }
+            }
+
+            int color = used.nextClearBit(0);
+            if (color >= numColors) {
+                return null;
+            }
+
+            colors[variable] = color;
+        }
+
+        return colors;
+    }
+
+    private static int countPrecolored(BitSet neighbours, int[] precolored) {
+        int count = 0;
+        for (int n = neighbours.nextSetBit(0); n >= 0; n = neighbours.nextSetBit(n + 1)) {
+            if (precolored[n] != -1) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,387 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.optimization.dataflow.ConstantAnalysis;
+import pt.up.fe.comp2024.optimization.dataflow.ConstantAnalysis.Value;
+import pt.up.fe.comp2024.optimization.dataflow.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.dataflow.DefUse;
+import pt.up.fe.comp2024.optimization.dataflow.PhiInstruction;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sparse conditional constant propagation, on the SSA form built by {@link SsaConstruction}.
+ * <p>
+ * Each version of a variable is in the lattice of {@link ConstantAnalysis}, and is only evaluated once the instruction
+ * that defines it can run. An instruction can run once an edge into it can be taken, and a branch on a constant only
+ * takes one of its edges. A phi only merges the values of the edges that can be taken, so a constant that goes around
+ * a loop, or through an arm of an if that never runs, stays constant.
+ * <p>
+ * Afterwards, branches on constants become gotos, the instructions that never run are removed, and the uses of
+ * constant versions read the constant instead.
+ */
+public class SparseConditionalConstantPropagation implements OllirPass {
+
+    private record Edge(int from, int to) {
+    }
+
+    @Override
+    public List<Report> optimize(ClassUnit classUnit, Map<String, String> config) {
+        for (var method : classUnit.getMethods()) {
+            if (!method.getInstructions().isEmpty()) {
+                new Solver(new ControlFlowGraph(method)).solve().rewrite();
+            }
+        }
+
+        return List.of();
+    }
+
+    private static class Solver {
+
+        private final ControlFlowGraph cfg;
+        private final Method method;
+
+        /**
+         * The value of each version, undefined ones are not in the map
+         */
+        private final Map<String, Value> values = new HashMap<>();
+        private final Map<String, List<Integer>> uses = new HashMap<>();
+
+        /**
+         * The index of the first phi of the join point of each phi
+         */
+        private final int[] phiHeads;
+
+        private final BitSet executable = new BitSet();
+        private final Set<Edge> executableEdges = new HashSet<>();
+        private final ArrayDeque<Integer> flowWorklist = new ArrayDeque<>();
+        private final ArrayDeque<Integer> ssaWorklist = new ArrayDeque<>();
+
+        private Solver(ControlFlowGraph cfg) {
+            this.cfg = cfg;
+            this.method = cfg.getMethod();
+            this.phiHeads = new int[cfg.size()];
+
+            var defined = new HashSet<String>();
+            for (int i = 0; i < cfg.size(); i++) {
+                var inst = cfg.getInstruction(i);
+                DefUse.getDef(inst, method).ifPresent(defined::add);
+                for (var use : DefUse.getUses(inst, method)) {
+                    uses.computeIfAbsent(use, key -> new ArrayList<>()).add(i);
+                }
+
+                phiHeads[i] = i > 0 && SsaConstruction.isPhi(inst) && SsaConstruction.isPhi(cfg.getInstruction(i - 1)) ?
+                        phiHeads[i - 1] : i;
+            }
+
+            // Parameters, and variables read before being assigned
+            for (var variable : method.getVarTable().keySet()) {
+                if (!defined.contains(variable)) {
+                    values.put(variable, Value.NOT_CONSTANT);
+                }
+            }
+        }
+
+        private Solver solve() {
+            executable.set(0);
+            flowWorklist.add(0);
+
+            while (!flowWorklist.isEmpty() || !ssaWorklist.isEmpty()) {
+                if (!flowWorklist.isEmpty()) {
+                    visit(flowWorklist.poll());
+                } else {
+                    int index = ssaWorklist.poll();
+                    if (executable.get(index)) {
+                        visit(index);
+                    }
+                }
+            }
+
+            return this;
+        }
+
+        private void visit(int index) {
+            var inst = cfg.getInstruction(index);
+
+            var def = DefUse.getDef(inst, method);
+            if (def.isPresent()) {
+                var rhs = ((AssignInstruction) inst).getRhs();
+                var value = rhs instanceof PhiInstruction phi ? evaluatePhi(index, phi) :
+                        ConstantAnalysis.evaluate(rhs, values, method);
+                update(def.get(), value);
+            }
+
+            for (int successor : getTakenSuccessors(index)) {
+                if (!executableEdges.add(new Edge(index, successor))) {
+                    continue;
+                }
+
+                if (!executable.get(successor)) {
+                    executable.set(successor);
+                    flowWorklist.add(successor);
+                    continue;
+                }
+
+                // A new path into a join point that already runs
+                for (int i = successor; i < cfg.size() && SsaConstruction.isPhi(cfg.getInstruction(i)); i++) {
+                    ssaWorklist.add(i);
+                }
+            }
+        }
+
+        private Value evaluatePhi(int index, PhiInstruction phi) {
+            int head = phiHeads[index];
+            Value result = null;
+
+            for (int i = 0; i < phi.getSources().size(); i++) {
+                var source = phi.getSources().get(i);
+                if (!executableEdges.contains(new Edge(cfg.getIndex(source), head))) {
+                    continue;
+                }
+
+                var value = ConstantAnalysis.evaluate(phi.getValues().get(i), values, method);
+                if (result == null) {
+                    result = value;
+                } else if (value != null && !value.equals(result)) {
+                    result = Value.NOT_CONSTANT;
+                }
+            }
+
+            return result;
+        }
+
+        /**
+         * Values only go down the lattice, a constant that changes is not constant.
+         */
+        private void update(String variable, Value value) {
+            var old = values.get(variable);
+            if (value == null || value.equals(old) || Value.NOT_CONSTANT.equals(old)) {
+                return;
+            }
+
+            values.put(variable, old == null ? value : Value.NOT_CONSTANT);
+            for (int use : uses.getOrDefault(variable, List.of())) {
+                ssaWorklist.add(use);
+            }
+        }
+
+        /**
+         * @return the successors the instruction may go to, given the values known so far
+         */
+        private List<Integer> getTakenSuccessors(int index) {
+            if (!(cfg.getInstruction(index) instanceof CondBranchInstruction branch)) {
+                return cfg.getSuccessors(index);
+            }
+
+            var condition = ConstantAnalysis.evaluate(branch.getCondition(), values, method);
+            if (condition == null) {
+                return List.of();
+            }
+            if (!condition.isConstant()) {
+                return cfg.getSuccessors(index);
+            }
+
+            if (condition.constant() != 0) {
+                return List.of(cfg.getIndex(method.getLabels().get(branch.getLabel())));
+            }
+
+            return index + 1 < cfg.size() ? List.of(index + 1) : List.of();
+        }
+
+        private void rewrite() {
+            removeUntakenPaths();
+            foldConstantBranches();
+            removeUnexecutable();
+            replaceConstants();
+        }
+
+        /**
+         * The phis only keep the values of the paths that can be taken.
+         */
+        private void removeUntakenPaths() {
+            for (int i = executable.nextSetBit(0); i >= 0; i = executable.nextSetBit(i + 1)) {
+                if (!(cfg.getInstruction(i) instanceof AssignInstruction assign)
+                        || !(assign.getRhs() instanceof PhiInstruction phi)) {
+                    continue;
+                }
+
+                for (var source : new ArrayList<>(phi.getSources())) {
+                    if (!executableEdges.contains(new Edge(cfg.getIndex(source), phiHeads[i]))) {
+                        phi.removeSource(source);
+                    }
+                }
+            }
+        }
+
+        /**
+         * A branch on a constant becomes a goto to the successor it takes, the next instruction if it never jumps, so
+         * that it stays the source of the phis of that path.
+         */
+        private void foldConstantBranches() {
+            for (int i = executable.nextSetBit(0); i >= 0; i = executable.nextSetBit(i + 1)) {
+                if (!(cfg.getInstruction(i) instanceof CondBranchInstruction branch)) {
+                    continue;
+                }
+
+                var condition = ConstantAnalysis.evaluate(branch.getCondition(), values, method);
+                if (condition == null || !condition.isConstant()) {
+                    continue;
+                }
+
+                String label;
+                if (condition.constant() != 0) {
+                    label = branch.getLabel();
+                } else {
+                    var next = cfg.getInstruction(i + 1);
+                    var labels = MethodEditor.getLabels(method, next);
+                    label = labels.isEmpty() ? MethodEditor.newLabel(method, "next") : labels.get(0);
+                    method.getLabels().put(label, next);
+                }
+
+                replace(branch, new GotoInstruction(label));
+            }
+        }
+
+        /**
+         * Replaces an instruction, also as the source of the phis of the paths it ends.
+         */
+        private void replace(Instruction inst, Instruction replacement) {
+            MethodEditor.replace(method, method.getInstructions().indexOf(inst), replacement);
+            for (var other : method.getInstructions()) {
+                if (other instanceof AssignInstruction assign && assign.getRhs() instanceof PhiInstruction phi) {
+                    phi.replaceSource(inst, replacement);
+                }
+            }
+        }
+
+        /**
+         * Only instructions that never run jump to the ones that never run, their labels are removed with them.
+         */
+        private void removeUnexecutable() {
+            // Folding the branches replaced instructions in place, the indexes are still those of the graph
+            var removed = new HashSet<Instruction>();
+            for (int i = cfg.size() - 1; i >= 0; i--) {
+                if (!executable.get(i)) {
+                    removed.add(method.getInstructions().remove(i));
+                }
+            }
+
+            method.getLabels().values().removeIf(removed::contains);
+        }
+
+        /**
+         * The uses of constant versions read the constant. Their assignments are then removed, unless a use cannot
+         * be a literal, e.g. an array index, or a phi copies its values at the end of their path.
+         */
+        private void replaceConstants() {
+            var kept = new HashSet<String>();
+            var phiSources = new HashSet<Instruction>();
+            for (var inst : method.getInstructions()) {
+                if (inst instanceof AssignInstruction assign && assign.getRhs() instanceof PhiInstruction phi) {
+                    phiSources.addAll(phi.getSources());
+                }
+
+                for (var use : DefUse.getUseOperands(inst, method)) {
+                    var value = values.get(use.getName());
+                    if (value == null || !value.isConstant()) {
+                        continue;
+                    }
+
+                    var literal = new LiteralElement(Integer.toString(value.constant()), use.getType());
+                    if (!replaceOperand(inst, use, literal)) {
+                        kept.add(use.getName());
+                    }
+                }
+            }
+
+            var instructions = method.getInstructions();
+            for (int i = instructions.size() - 1; i >= 0; i--) {
+                var def = DefUse.getDef(instructions.get(i), method);
+                var value = def.map(values::get).orElse(null);
+                if (value == null || !value.isConstant()) {
+                    continue;
+                }
+
+                var assign = (AssignInstruction) instructions.get(i);
+                if (!kept.contains(def.get()) && !phiSources.contains(assign)) {
+                    MethodEditor.remove(method, i);
+                } else if (!(assign.getRhs() instanceof PhiInstruction)) {
+                    // A phi stays with the others of its join point
+                    var literal = new LiteralElement(Integer.toString(value.constant()), assign.getTypeOfAssign());
+                    replace(assign, new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                            new SingleOpInstruction(literal)));
+                }
+            }
+        }
+
+        /**
+         * @return true if the operand was replaced, false if it is somewhere a literal cannot be
+         */
+        private static boolean replaceOperand(Instruction inst, Operand use, Element literal) {
+            if (inst instanceof PhiInstruction phi) {
+                return replaceIn(phi.getValues(), use, literal);
+            }
+
+            if (inst instanceof AssignInstruction assign) {
+                // The index of an array destination is not in the right-hand side
+                return replaceOperand(assign.getRhs(), use, literal);
+            }
+
+            if (inst instanceof SingleOpInstruction single && single.getSingleOperand() == use) {
+                single.setSingleOperand(literal);
+                return true;
+            }
+
+            if (inst instanceof UnaryOpInstruction unary && unary.getOperand() == use) {
+                unary.setOperand(literal);
+                return true;
+            }
+
+            if (inst instanceof BinaryOpInstruction binary) {
+                if (binary.getLeftOperand() == use) {
+                    binary.setLeftOperand(literal);
+                    return true;
+                }
+                if (binary.getRightOperand() == use) {
+                    binary.setRightOperand(literal);
+                    return true;
+                }
+            }
+
+            if (inst instanceof CondBranchInstruction branch) {
+                return replaceOperand(branch.getCondition(), use, literal);
+            }
+
+            if (inst instanceof ReturnInstruction ret && ret.getOperand() == use) {
+                ret.setOperand(literal);
+                return true;
+            }
+
+            if (inst instanceof CallInstruction call && call.getCaller() != use) {
+                return replaceIn(call.getArguments(), use, literal);
+            }
+
+            return false;
+        }
+
+        private static boolean replaceIn(List<Element> elements, Operand use, Element literal) {
+            for (int i = 0; i < elements.size(); i++) {
+                if (elements.get(i) == use) {
+                    elements.set(i, literal);
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.optimization.dataflow.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.dataflow.DefUse;
+import pt.up.fe.comp2024.optimization.dataflow.Dominators;
+import pt.up.fe.comp2024.optimization.dataflow.Liveness;
+import pt.up.fe.comp2024.optimization.dataflow.PhiInstruction;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts each method to SSA form, where each variable is assigned exactly once. Each assignment of a variable x
+ * defines a new version of it, x_0, x_1..., and the uses read the version that reaches them. Where different versions
+ * meet, a {@link PhiInstruction} defines a version that merges them.
+ * <p>
+ * Phis are placed on the iterated dominance frontiers of the assignments, only where the variable is live. Versions
+ * are named by walking the dominator tree, and get the register of their variable, so that
+ * {@link SsaDestruction} can give them its name back.
+ */
+public class SsaConstruction implements OllirPass {
+
+    @Override
+    public List<Report> optimize(ClassUnit classUnit, Map<String, String> config) {
+        for (var method : classUnit.getMethods()) {
+            if (!method.getInstructions().isEmpty()) {
+                construct(method);
+            }
+        }
+
+        return List.of();
+    }
+
+    private void construct(Method method) {
+        addEntry(method);
+        placePhis(method);
+        rename(method);
+    }
+
+    /**
+     * Phis merge the values of the predecessors of a join point, so the first instruction, where the values of the
+     * parameters come from, must not be one. A jump to the next instruction makes a new first instruction.
+     */
+    private void addEntry(Method method) {
+        var cfg = new ControlFlowGraph(method);
+        if (cfg.getPredecessors(0).isEmpty()) {
+            return;
+        }
+
+        var first = method.getInstructions().get(0);
+        var labels = MethodEditor.getLabels(method, first);
+        var label = labels.isEmpty() ? MethodEditor.newLabel(method, "entry") : labels.get(0);
+        method.getLabels().put(label, first);
+
+        MethodEditor.insert(method, 0, new GotoInstruction(label), false);
+    }
+
+    private void placePhis(Method method) {
+        var cfg = new ControlFlowGraph(method);
+        var dominators = new Dominators(cfg);
+        var frontiers = dominators.getDominanceFrontiers();
+        var liveness = new Liveness(cfg);
+
+        // Where each variable is assigned. The first instruction stands for the values it has when the method starts
+        var definitions = new LinkedHashMap<String, BitSet>();
+        for (int i = 0; i < cfg.size(); i++) {
+            final int index = i;
+            DefUse.getDef(cfg.getInstruction(i), method).ifPresent(def -> {
+                var sites = definitions.computeIfAbsent(def, key -> new BitSet());
+                sites.set(0);
+                sites.set(index);
+            });
+        }
+
+        var phis = new HashMap<Integer, List<String>>();
+        definitions.forEach((variable, sites) -> {
+            var hasPhi = new BitSet();
+            var worklist = new ArrayDeque<Integer>();
+            sites.stream().forEach(worklist::add);
+
+            // A phi is itself an assignment, whose frontier may need more phis
+            while (!worklist.isEmpty()) {
+                var frontier = frontiers[worklist.poll()];
+                for (int join = frontier.nextSetBit(0); join >= 0; join = frontier.nextSetBit(join + 1)) {
+                    if (hasPhi.get(join) || !liveness.isLiveIn(join, variable)) {
+                        continue;
+                    }
+
+                    hasPhi.set(join);
+                    phis.computeIfAbsent(join, key -> new ArrayList<>()).add(variable);
+                    if (!sites.get(join)) {
+                        worklist.add(join);
+                    }
+                }
+            }
+        });
+
+        phis.forEach((join, variables) -> {
+            var joinInst = cfg.getInstruction(join);
+
+            // Inserted backwards before the join point, so the first one gets its labels
+            for (int i = variables.size() - 1; i >= 0; i--) {
+                var variable = variables.get(i);
+                var type = method.getVarTable().get(variable).getVarType();
+                var phi = new AssignInstruction(new Operand(variable, type), type, new PhiInstruction(variable));
+                MethodEditor.insert(method, method.getInstructions().indexOf(joinInst), phi, true);
+                joinInst = phi;
+            }
+        });
+    }
+
+    /**
+     * Walks the dominator tree, keeping the version of each variable that reaches the current instruction on a stack.
+     * The versions an instruction defines are popped when the walk leaves the subtree it dominates.
+     */
+    private void rename(Method method) {
+        var cfg = new ControlFlowGraph(method);
+        var dominators = new Dominators(cfg);
+
+        var children = new ArrayList<List<Integer>>();
+        for (int i = 0; i < cfg.size(); i++) {
+            children.add(new ArrayList<>());
+        }
+        for (int i = 0; i < cfg.size(); i++) {
+            int parent = dominators.getImmediateDominator(i);
+            if (parent >= 0) {
+                children.get(parent).add(i);
+            }
+        }
+
+        var renamed = new HashMap<String, Integer>();
+        for (var inst : cfg.getInstructions()) {
+            DefUse.getDef(inst, method).ifPresent(def -> renamed.put(def, 0));
+        }
+
+        // Before any assignment, a variable is read with its own name
+        var versions = new HashMap<String, ArrayDeque<String>>();
+        for (var variable : renamed.keySet()) {
+            versions.put(variable, new ArrayDeque<>(List.of(variable)));
+        }
+
+        // Negative entries leave the subtree of instruction -(entry + 1)
+        var walk = new ArrayDeque<Integer>();
+        walk.push(0);
+        var pushed = new HashMap<Integer, String>();
+        while (!walk.isEmpty()) {
+            int index = walk.pop();
+            if (index < 0) {
+                var variable = pushed.get(-(index + 1));
+                if (variable != null) {
+                    versions.get(variable).pop();
+                }
+                continue;
+            }
+
+            var inst = cfg.getInstruction(index);
+            var assign = inst instanceof AssignInstruction a ? a : null;
+            boolean isPhi = assign != null && assign.getRhs() instanceof PhiInstruction;
+
+            if (!isPhi) {
+                for (var use : DefUse.getUseOperands(inst, method)) {
+                    var stack = versions.get(use.getName());
+                    if (stack != null) {
+                        use.setName(stack.peek());
+                    }
+                }
+            }
+
+            var def = DefUse.getDef(inst, method);
+            if (def.isPresent() && versions.containsKey(def.get())) {
+                var version = newVersion(method, def.get(), renamed);
+                ((Operand) assign.getDest()).setName(version);
+                versions.get(def.get()).push(version);
+                pushed.put(index, def.get());
+            }
+
+            // The phis that join after this instruction take the versions it leaves. A phi leads to the next phi of
+            // the same join point, which does not join anything
+            if (!isPhi) {
+                for (int successor : cfg.getSuccessors(index)) {
+                    for (int i = successor; i < cfg.size() && isPhi(cfg.getInstruction(i)); i++) {
+                        var phiAssign = (AssignInstruction) cfg.getInstruction(i);
+                        var phi = (PhiInstruction) phiAssign.getRhs();
+                        phi.setValue(inst, new Operand(versions.get(phi.getVariable()).peek(),
+                                phiAssign.getTypeOfAssign()));
+                    }
+                }
+            }
+
+            walk.push(-(index + 1));
+            for (int child : children.get(index)) {
+                walk.push(child);
+            }
+        }
+
+        addUnreachablePredecessors(cfg, dominators);
+    }
+
+    /**
+     * Paths from instructions that never run still join, and keep the variable with its own name.
+     */
+    private void addUnreachablePredecessors(ControlFlowGraph cfg, Dominators dominators) {
+        for (int i = 0; i < cfg.size(); i++) {
+            // Only the first phi of a join point has its predecessors
+            if (!isPhi(cfg.getInstruction(i)) || i > 0 && isPhi(cfg.getInstruction(i - 1))) {
+                continue;
+            }
+
+            for (int predecessor : cfg.getPredecessors(i)) {
+                if (dominators.isReachable(predecessor)) {
+                    continue;
+                }
+
+                for (int j = i; j < cfg.size() && isPhi(cfg.getInstruction(j)); j++) {
+                    var phiAssign = (AssignInstruction) cfg.getInstruction(j);
+                    var phi = (PhiInstruction) phiAssign.getRhs();
+                    phi.setValue(cfg.getInstruction(predecessor),
+                            new Operand(phi.getVariable(), phiAssign.getTypeOfAssign()));
+                }
+            }
+        }
+    }
+
+    static boolean isPhi(Instruction inst) {
+        return inst instanceof AssignInstruction assign && assign.getRhs() instanceof PhiInstruction;
+    }
+
+    /**
+     * Adds a version of the variable to the var table, in the same register.
+     */
+    private String newVersion(Method method, String variable, Map<String, Integer> renamed) {
+        var varTable = method.getVarTable();
+        var descriptor = varTable.get(variable);
+
+        String name;
+        do {
+            int counter = renamed.get(variable);
+            renamed.put(variable, counter + 1);
+            name = variable + "_" + counter;
+        } while (varTable.containsKey(name));
+
+        varTable.put(name, new Descriptor(VarScope.LOCAL, descriptor.getVirtualReg(), descriptor.getVarType()));
+        return name;
+    }
+}
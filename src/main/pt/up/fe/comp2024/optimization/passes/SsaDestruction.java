@@ -0,0 +1,301 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.optimization.dataflow.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.dataflow.DefUse;
+import pt.up.fe.comp2024.optimization.dataflow.Liveness;
+import pt.up.fe.comp2024.optimization.dataflow.PhiInstruction;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Takes each method out of the SSA form built by {@link SsaConstruction}.
+ * <p>
+ * The phis of a join point become copies at the end of each path into it. They all take their values at the same
+ * time, so the copies of a path are ordered so that no value is overwritten before it is read, with a temporary to
+ * break cycles. A branch that also goes elsewhere gets a new block for its copies.
+ * <p>
+ * The versions of a variable then get its name back, unless the optimizations made their values live at the same
+ * time, in which case they keep their own name and get a new register.
+ */
+public class SsaDestruction implements OllirPass {
+
+    /**
+     * A copy 'dest := source' that happens at the same time as others, e.g. of a phi.
+     */
+    record Copy(Operand dest, Element source) {
+    }
+
+    @Override
+    public List<Report> optimize(ClassUnit classUnit, Map<String, String> config) {
+        for (var method : classUnit.getMethods()) {
+            var blocks = new ArrayList<String>();
+            removePhis(method, blocks);
+            mergeVersions(method);
+            removeEmptyBlocks(method, blocks);
+        }
+
+        return List.of();
+    }
+
+    /**
+     * @param blocks the labels of the blocks added for the copies of branches
+     */
+    private void removePhis(Method method, List<String> blocks) {
+        var cfg = new ControlFlowGraph(method);
+
+        for (int head = 0; head < cfg.size(); head++) {
+            if (!SsaConstruction.isPhi(cfg.getInstruction(head))
+                    || head > 0 && SsaConstruction.isPhi(cfg.getInstruction(head - 1))) {
+                continue;
+            }
+
+            // The copies of each path into the join point, in the order of the phis
+            var copies = new LinkedHashMap<Instruction, List<Copy>>();
+            var phis = new ArrayList<Instruction>();
+            for (int i = head; i < cfg.size() && SsaConstruction.isPhi(cfg.getInstruction(i)); i++) {
+                var assign = (AssignInstruction) cfg.getInstruction(i);
+                var phi = (PhiInstruction) assign.getRhs();
+                phis.add(assign);
+
+                for (int j = 0; j < phi.getSources().size(); j++) {
+                    copies.computeIfAbsent(phi.getSources().get(j), key -> new ArrayList<>())
+                            .add(new Copy((Operand) assign.getDest(), phi.getValues().get(j)));
+                }
+            }
+
+            var headInst = cfg.getInstruction(head);
+            copies.forEach((source, pathCopies) ->
+                    insertCopies(method, source, headInst, sequentialize(method, pathCopies), blocks));
+
+            for (var phi : phis) {
+                MethodEditor.remove(method, method.getInstructions().indexOf(phi));
+            }
+        }
+    }
+
+    /**
+     * Inserts the copies on the path from the source instruction to the first phi of the join point.
+     */
+    private void insertCopies(Method method, Instruction source, Instruction head, List<Instruction> copies,
+                              List<String> blocks) {
+        var instructions = method.getInstructions();
+        if (copies.isEmpty() || !instructions.contains(source)) {
+            return;
+        }
+
+        var headLabels = MethodEditor.getLabels(method, head);
+        boolean jumpsToHead = source instanceof GotoInstruction gotoInst && headLabels.contains(gotoInst.getLabel())
+                || source instanceof CondBranchInstruction branch && headLabels.contains(branch.getLabel());
+        boolean fallsToHead = instructions.indexOf(source) + 1 == instructions.indexOf(head)
+                && !(source instanceof GotoInstruction) && !(source instanceof ReturnInstruction);
+
+        // Before the goto, jumps to the goto also take this path
+        if (source instanceof GotoInstruction) {
+            insertAll(method, instructions.indexOf(source), copies, true);
+            return;
+        }
+
+        // A branch also goes elsewhere, so the jump gets a block of its own at the end of the method
+        if (jumpsToHead) {
+            var branch = (CondBranchInstruction) source;
+            var label = MethodEditor.newLabel(method, "phi");
+            var block = new ArrayList<>(fallsToHead ? copy(copies) : copies);
+            block.add(new GotoInstruction(branch.getLabel()));
+
+            insertAll(method, instructions.size(), block, false);
+            method.getLabels().put(label, block.get(0));
+            branch.setLabel(label);
+            blocks.add(label);
+
+            if (!fallsToHead) {
+                return;
+            }
+        }
+
+        // Right before the phis, jumps to them skip the copies
+        insertAll(method, instructions.indexOf(head), copies, false);
+    }
+
+    private static void insertAll(Method method, int index, List<Instruction> insts, boolean takeLabels) {
+        for (int i = insts.size() - 1; i >= 0; i--) {
+            MethodEditor.insert(method, index, insts.get(i), takeLabels);
+        }
+    }
+
+    /**
+     * The same copies, as new instructions, since an instruction can only appear once in a method.
+     */
+    private static List<Instruction> copy(List<Instruction> copies) {
+        var result = new ArrayList<Instruction>();
+        for (var inst : copies) {
+            var assign = (AssignInstruction) inst;
+            var source = ((SingleOpInstruction) assign.getRhs()).getSingleOperand();
+            result.add(assignCopy((Operand) assign.getDest(), source));
+        }
+        return result;
+    }
+
+    /**
+     * Orders copies that happen at the same time. A copy can be done once no other copy still reads its
+     * destination. If every copy left has its destination read by another, they form cycles, and the value of one
+     * destination is saved in a temporary first.
+     */
+    static List<Instruction> sequentialize(Method method, List<Copy> parallel) {
+        var pending = new ArrayList<Copy>();
+        for (var copy : parallel) {
+            if (!(copy.source() instanceof Operand source) || source.isLiteral()
+                    || !source.getName().equals(copy.dest().getName())) {
+                pending.add(copy);
+            }
+        }
+
+        var sequence = new ArrayList<Instruction>();
+        while (!pending.isEmpty()) {
+            Copy ready = null;
+            for (var copy : pending) {
+                if (pending.stream().noneMatch(other -> reads(other, copy.dest().getName()))) {
+                    ready = copy;
+                    break;
+                }
+            }
+
+            if (ready != null) {
+                pending.remove(ready);
+                sequence.add(assignCopy(ready.dest(), ready.source()));
+                continue;
+            }
+
+            var saved = pending.get(0).dest();
+            var temp = MethodEditor.newVariable(method, "pc", saved.getType());
+            sequence.add(assignCopy(temp, saved));
+            for (int i = 0; i < pending.size(); i++) {
+                if (reads(pending.get(i), saved.getName())) {
+                    pending.set(i, new Copy(pending.get(i).dest(), temp));
+                }
+            }
+        }
+
+        return sequence;
+    }
+
+    private static boolean reads(Copy copy, String variable) {
+        return copy.source() instanceof Operand source && !source.isLiteral() && source.getName().equals(variable);
+    }
+
+    private static AssignInstruction assignCopy(Operand dest, Element source) {
+        var sourceCopy = source instanceof LiteralElement literal ?
+                new LiteralElement(literal.getLiteral(), literal.getType()) :
+                new Operand(((Operand) source).getName(), source.getType());
+
+        return new AssignInstruction(new Operand(dest.getName(), dest.getType()), dest.getType(),
+                new SingleOpInstruction(sourceCopy));
+    }
+
+    /**
+     * Versions share the register of their variable. Each version that is never live at the same time as the ones
+     * already merged takes the name of the variable, the others get a register of their own.
+     */
+    private void mergeVersions(Method method) {
+        var varTable = method.getVarTable();
+        var liveness = new Liveness(new ControlFlowGraph(method));
+        var interference = RegisterAllocation.buildInterferenceGraph(liveness);
+        var variables = liveness.getVariables();
+
+        var byRegister = new LinkedHashMap<Integer, List<String>>();
+        for (var variable : variables) {
+            var descriptor = varTable.get(variable);
+            if (descriptor.getScope() != VarScope.FIELD) {
+                byRegister.computeIfAbsent(descriptor.getVirtualReg(), key -> new ArrayList<>()).add(variable);
+            }
+        }
+
+        int nextRegister = 0;
+        for (var descriptor : varTable.values()) {
+            nextRegister = Math.max(nextRegister, descriptor.getVirtualReg() + 1);
+        }
+
+        // The original name, without a version, is the shortest one
+        var renames = new HashMap<String, String>();
+        for (var names : byRegister.values()) {
+            names.sort(Comparator.comparing((String name) -> varTable.get(name).getScope() != VarScope.PARAMETER
+                            && !name.equals("this"))
+                    .thenComparingInt(String::length)
+                    .thenComparing(Comparator.naturalOrder()));
+
+            var merged = new ArrayList<String>();
+            for (var name : names) {
+                int index = liveness.getVariableIndex(name);
+                if (merged.stream().noneMatch(other -> interference[index].get(liveness.getVariableIndex(other)))) {
+                    merged.add(name);
+                } else {
+                    varTable.get(name).setVirtualReg(nextRegister++);
+                }
+            }
+
+            for (var name : merged.subList(1, merged.size())) {
+                renames.put(name, merged.get(0));
+            }
+        }
+
+        if (renames.isEmpty()) {
+            return;
+        }
+
+        for (var inst : method.getInstructions()) {
+            for (var use : DefUse.getUseOperands(inst, method)) {
+                if (renames.containsKey(use.getName())) {
+                    use.setName(renames.get(use.getName()));
+                }
+            }
+
+            if (inst instanceof AssignInstruction assign && DefUse.getDef(assign, method).isPresent()) {
+                var dest = (Operand) assign.getDest();
+                if (renames.containsKey(dest.getName())) {
+                    dest.setName(renames.get(dest.getName()));
+                }
+            }
+        }
+
+        // The copies between versions are now copies of a variable to itself
+        var instructions = method.getInstructions();
+        for (int i = instructions.size() - 2; i >= 0; i--) {
+            if (instructions.get(i) instanceof AssignInstruction assign
+                    && !(assign.getDest() instanceof ArrayOperand)
+                    && assign.getRhs() instanceof SingleOpInstruction single
+                    && single.getSingleOperand() instanceof Operand source && !(source instanceof ArrayOperand)
+                    && !source.isLiteral() && source.getName().equals(((Operand) assign.getDest()).getName())) {
+                MethodEditor.remove(method, i);
+            }
+        }
+
+        renames.keySet().forEach(varTable::remove);
+    }
+
+    /**
+     * The copies of a block added for a branch may all have been removed, the branch then jumps directly.
+     */
+    private void removeEmptyBlocks(Method method, List<String> blocks) {
+        for (var label : blocks) {
+            if (!(method.getLabels().get(label) instanceof GotoInstruction gotoInst)) {
+                continue;
+            }
+
+            for (var inst : method.getInstructions()) {
+                if (inst instanceof CondBranchInstruction branch && branch.getLabel().equals(label)) {
+                    branch.setLabel(gotoInst.getLabel());
+                }
+            }
+
+            method.getLabels().remove(label);
+            MethodEditor.remove(method, method.getInstructions().indexOf(gotoInst));
+        }
+    }
+}
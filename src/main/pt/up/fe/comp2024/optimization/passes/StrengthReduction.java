@@ -0,0 +1,281 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.optimization.dataflow.ConstantAnalysis;
+import pt.up.fe.comp2024.optimization.dataflow.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.dataflow.DefUse;
+import pt.up.fe.comp2024.optimization.dataflow.Dominators;
+import pt.up.fe.comp2024.optimization.dataflow.NaturalLoop;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Replaces expensive arithmetic with cheaper operations:
+ * <ul>
+ *     <li>in a loop where a variable i only changes by 'i := i + c', a product 'i * k' is kept in a new variable,
+ *     computed once before the loop and increased by c * k after each increment of i;</li>
+ *     <li>multiplications by a power of two become left shifts;</li>
+ *     <li>divisions by a power of two become right shifts. Division rounds towards zero, so negative dividends are
+ *     first increased by the divisor minus one.</li>
+ * </ul>
+ * Constants must be literals, the products must be of int literals and variables.
+ */
+public class StrengthReduction implements OllirPass {
+
+    private static final Type INT = new Type(ElementType.INT32);
+
+    /**
+     * A variable that changes by the same amount each time it is assigned in a loop.
+     *
+     * @param definition the index of its only assignment in the loop
+     * @param step       the amount added by the assignment
+     */
+    private record InductionVariable(String name, int definition, int step) {
+    }
+
+    /**
+     * The product of an induction variable and a constant.
+     */
+    private record Product(String variable, int factor) {
+    }
+
+    @Override
+    public List<Report> optimize(ClassUnit classUnit, Map<String, String> config) {
+        for (var method : classUnit.getMethods()) {
+            boolean changed;
+            do {
+                changed = reduceAnyLoop(method);
+            } while (changed);
+
+            reducePowersOfTwo(method);
+        }
+
+        return List.of();
+    }
+
+    /**
+     * Reduces the products of induction variables of the first loop that has any.
+     *
+     * @return true if a product was reduced
+     */
+    private boolean reduceAnyLoop(Method method) {
+        var cfg = new ControlFlowGraph(method);
+        var dominators = new Dominators(cfg);
+
+        for (var loop : NaturalLoop.find(cfg, dominators)) {
+            var inductionVariables = findInductionVariables(cfg, loop);
+
+            // The same product computed more than once in the loop shares a variable
+            var products = new LinkedHashMap<Product, List<Integer>>();
+            for (int i = loop.body().nextSetBit(0); i >= 0; i = loop.body().nextSetBit(i + 1)) {
+                final int index = i;
+                getProduct(cfg.getInstruction(i), inductionVariables)
+                        .ifPresent(product -> products.computeIfAbsent(product, key -> new ArrayList<>()).add(index));
+            }
+
+            if (products.isEmpty()) {
+                continue;
+            }
+
+            var product = products.keySet().iterator().next();
+            reduce(method, cfg, loop, inductionVariables.get(product.variable()), product, products.get(product));
+            return true;
+        }
+
+        return false;
+    }
+
+    private Map<String, InductionVariable> findInductionVariables(ControlFlowGraph cfg, NaturalLoop loop) {
+        var method = cfg.getMethod();
+
+        var definitions = new HashMap<String, List<Integer>>();
+        for (int i = loop.body().nextSetBit(0); i >= 0; i = loop.body().nextSetBit(i + 1)) {
+            final int index = i;
+            DefUse.getDef(cfg.getInstruction(i), method)
+                    .ifPresent(def -> definitions.computeIfAbsent(def, key -> new ArrayList<>()).add(index));
+        }
+
+        var inductionVariables = new HashMap<String, InductionVariable>();
+        definitions.forEach((variable, indexes) -> {
+            if (indexes.size() != 1) {
+                return;
+            }
+
+            var assign = (AssignInstruction) cfg.getInstruction(indexes.get(0));
+            if (assign.getTypeOfAssign().getTypeOfElement() != ElementType.INT32
+                    || !(assign.getRhs() instanceof BinaryOpInstruction binary)) {
+                return;
+            }
+
+            var operation = binary.getOperation().getOpType();
+            var left = binary.getLeftOperand();
+            var right = binary.getRightOperand();
+            if (operation == OperationType.ADD && isVariable(left, variable)) {
+                getIntLiteral(right).ifPresent(step ->
+                        inductionVariables.put(variable, new InductionVariable(variable, indexes.get(0), step)));
+            } else if (operation == OperationType.ADD && isVariable(right, variable)) {
+                getIntLiteral(left).ifPresent(step ->
+                        inductionVariables.put(variable, new InductionVariable(variable, indexes.get(0), step)));
+            } else if (operation == OperationType.SUB && isVariable(left, variable)) {
+                getIntLiteral(right).ifPresent(step ->
+                        inductionVariables.put(variable, new InductionVariable(variable, indexes.get(0), -step)));
+            }
+        });
+
+        return inductionVariables;
+    }
+
+    /**
+     * @return the product the instruction assigns, if it is 'x := i * k' with i an induction variable and k an int
+     * literal
+     */
+    private Optional<Product> getProduct(Instruction inst, Map<String, InductionVariable> inductionVariables) {
+        if (!(inst instanceof AssignInstruction assign) || assign.getDest() instanceof ArrayOperand
+                || !(assign.getRhs() instanceof BinaryOpInstruction binary)
+                || binary.getOperation().getOpType() != OperationType.MUL) {
+            return Optional.empty();
+        }
+
+        for (var operands : List.of(List.of(binary.getLeftOperand(), binary.getRightOperand()),
+                List.of(binary.getRightOperand(), binary.getLeftOperand()))) {
+            if (operands.get(0) instanceof Operand variable && !(variable instanceof ArrayOperand)
+                    && inductionVariables.containsKey(variable.getName())) {
+                var factor = getIntLiteral(operands.get(1));
+                if (factor.isPresent()) {
+                    return Optional.of(new Product(variable.getName(), factor.get()));
+                }
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    private void reduce(Method method, ControlFlowGraph cfg, NaturalLoop loop, InductionVariable inductionVariable,
+                        Product reduced, List<Integer> products) {
+        var product = MethodEditor.newVariable(method, "iv", INT);
+        var header = cfg.getInstruction(loop.header());
+        var definition = cfg.getInstruction(inductionVariable.definition());
+
+        // Each product reads the new variable instead
+        for (int index : products) {
+            var assign = (AssignInstruction) cfg.getInstruction(index);
+            var readProduct = new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                    new SingleOpInstruction(copyOf(product)));
+            MethodEditor.replace(method, method.getInstructions().indexOf(assign), readProduct);
+            if (assign == header) {
+                header = readProduct;
+            }
+        }
+
+        // Increased right after the induction variable, jumps to the next instruction must not skip it
+        var step = new BinaryOpInstruction(copyOf(product), new Operation(OperationType.ADD, INT),
+                new LiteralElement(Integer.toString(inductionVariable.step() * reduced.factor()), INT));
+        MethodEditor.insert(method, method.getInstructions().indexOf(definition) + 1,
+                new AssignInstruction(copyOf(product), INT, step), false);
+
+        var initial = new BinaryOpInstruction(new Operand(reduced.variable(), INT),
+                new Operation(OperationType.MUL, INT), new LiteralElement(Integer.toString(reduced.factor()), INT));
+        MethodEditor.insertPreheader(method, cfg, loop, header, List.of(new AssignInstruction(copyOf(product), INT, initial)));
+    }
+
+    private void reducePowersOfTwo(Method method) {
+        var instructions = method.getInstructions();
+
+        for (int i = instructions.size() - 1; i >= 0; i--) {
+            if (!(instructions.get(i) instanceof AssignInstruction assign)
+                    || !(assign.getRhs() instanceof BinaryOpInstruction binary)) {
+                continue;
+            }
+
+            var operation = binary.getOperation().getOpType();
+            var left = binary.getLeftOperand();
+            var right = binary.getRightOperand();
+
+            if (operation == OperationType.MUL) {
+                var shift = getLog2(right);
+                var other = left;
+                if (shift.isEmpty()) {
+                    shift = getLog2(left);
+                    other = right;
+                }
+
+                if (shift.isPresent()) {
+                    MethodEditor.replace(method, i, new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                            shift(other, OperationType.SHL, shift.get())));
+                }
+            } else if (operation == OperationType.DIV && !(left instanceof ArrayOperand)) {
+                getLog2(right).ifPresent(shift -> divide(method, assign, left, shift));
+            }
+        }
+    }
+
+    /**
+     * Replaces 'x := a / 2^n' with 'x := (a + ((a >> 31) >>> (32 - n))) >> n'. The added bias is 2^n - 1 if a is
+     * negative and 0 otherwise, so that the shift rounds towards zero, like the division.
+     */
+    private void divide(Method method, AssignInstruction assign, Element dividend, int shift) {
+        var sign = MethodEditor.newVariable(method, "sr", INT);
+        var bias = MethodEditor.newVariable(method, "sr", INT);
+        var biased = MethodEditor.newVariable(method, "sr", INT);
+
+        var replacement = List.<Instruction>of(
+                new AssignInstruction(copyOf(sign), INT, shift(dividend, OperationType.SHR, 31)),
+                new AssignInstruction(copyOf(bias), INT, shift(copyOf(sign), OperationType.SHRR, 32 - shift)),
+                new AssignInstruction(copyOf(biased), INT, new BinaryOpInstruction(copyOf(dividend),
+                        new Operation(OperationType.ADD, INT), copyOf(bias))),
+                new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                        shift(copyOf(biased), OperationType.SHR, shift)));
+
+        int index = method.getInstructions().indexOf(assign);
+        MethodEditor.replace(method, index, replacement.get(0));
+        for (int i = 1; i < replacement.size(); i++) {
+            MethodEditor.insert(method, index + i, replacement.get(i), false);
+        }
+    }
+
+    private static BinaryOpInstruction shift(Element operand, OperationType operation, int amount) {
+        return new BinaryOpInstruction(operand, new Operation(operation, INT),
+                new LiteralElement(Integer.toString(amount), INT));
+    }
+
+    /**
+     * @return n if the element is an int literal 2^n, with n > 0
+     */
+    private static Optional<Integer> getLog2(Element element) {
+        return getIntLiteral(element)
+                .filter(value -> value > 1 && Integer.bitCount(value) == 1)
+                .map(Integer::numberOfTrailingZeros);
+    }
+
+    private static Optional<Integer> getIntLiteral(Element element) {
+        if (element instanceof LiteralElement literal && literal.getType().getTypeOfElement() == ElementType.INT32) {
+            return ConstantAnalysis.getLiteral(literal);
+        }
+
+        return Optional.empty();
+    }
+
+    private static boolean isVariable(Element element, String name) {
+        return element instanceof Operand operand && !(element instanceof ArrayOperand) && !element.isLiteral()
+                && operand.getName().equals(name);
+    }
+
+    /**
+     * Each instruction gets its own operands, since passes may rename them in place.
+     */
+    private static Element copyOf(Element element) {
+        if (element instanceof LiteralElement literal) {
+            return new LiteralElement(literal.getLiteral(), literal.getType());
+        }
+
+        var operand = (Operand) element;
+        return new Operand(operand.getName(), operand.getType());
+    }
+}
@@ -0,0 +1,168 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.optimization.OllirPass;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces the calls of a method to itself that are in tail position, 'r := f(args); ret r' or 'f(args); ret', with
+ * a jump to its start after assigning the arguments to the parameters. The recursion then runs in a loop, in constant
+ * stack.
+ * <p>
+ * Methods only return at their end, so the value of the call usually reaches the 'ret' through copies and jumps, as in
+ * 't := f(args); r := t; goto endif; ... endif: ret r'. These are followed from the call to the 'ret'.
+ * <p>
+ * The arguments are all computed from the values of the parameters before the call, so they are assigned as
+ * {@link SsaDestruction} assigns the values of phis, with a temporary where a parameter is read after being assigned.
+ * A virtual method must call itself on 'this'.
+ */
+public class TailRecursionElimination implements OllirPass {
+
+    @Override
+    public List<Report> optimize(ClassUnit classUnit, Map<String, String> config) {
+        for (var method : classUnit.getMethods()) {
+            if (!method.isConstructMethod() && !method.isVarargs()) {
+                eliminate(classUnit, method);
+            }
+        }
+
+        return List.of();
+    }
+
+    private void eliminate(ClassUnit classUnit, Method method) {
+        var instructions = method.getInstructions();
+        String entry = null;
+
+        for (int i = instructions.size() - 2; i >= 0; i--) {
+            var inst = instructions.get(i);
+            if (!isTailCall(classUnit, method, i)) {
+                continue;
+            }
+
+            if (entry == null) {
+                var first = instructions.get(0);
+                var labels = MethodEditor.getLabels(method, first);
+                entry = labels.isEmpty() ? MethodEditor.newLabel(method, "entry") : labels.get(0);
+                method.getLabels().put(entry, first);
+            }
+
+            var call = (CallInstruction) (inst instanceof AssignInstruction assign ? assign.getRhs() : inst);
+            var copies = new ArrayList<SsaDestruction.Copy>();
+            for (int j = 0; j < call.getArguments().size(); j++) {
+                var param = (Operand) method.getParams().get(j);
+                copies.add(new SsaDestruction.Copy(new Operand(param.getName(), param.getType()),
+                        call.getArguments().get(j)));
+            }
+
+            var replacement = new ArrayList<>(SsaDestruction.sequentialize(method, copies));
+            replacement.add(new GotoInstruction(entry));
+
+            // The path to the ret is no longer taken, but other paths may still jump into it
+            while (i + 1 < instructions.size() && MethodEditor.getLabels(method, instructions.get(i + 1)).isEmpty()) {
+                instructions.remove(i + 1);
+            }
+
+            MethodEditor.replace(method, i, replacement.get(0));
+            for (int j = 1; j < replacement.size(); j++) {
+                MethodEditor.insert(method, i + j, replacement.get(j), false);
+            }
+        }
+    }
+
+    /**
+     * @param index the index of a call, or of the assignment of one
+     * @return true if the call is a call of the method to itself, whose value is returned without being changed
+     */
+    private static boolean isTailCall(ClassUnit classUnit, Method method, int index) {
+        var inst = method.getInstructions().get(index);
+        CallInstruction call;
+        if (inst instanceof CallInstruction standalone) {
+            call = standalone;
+            if (!returnsValue(method, index, null)) {
+                return false;
+            }
+        } else if (inst instanceof AssignInstruction assign && assign.getRhs() instanceof CallInstruction rhs
+                && assign.getDest() instanceof Operand dest && !(dest instanceof ArrayOperand)) {
+            call = rhs;
+            if (!returnsValue(method, index, dest.getName())) {
+                return false;
+            }
+        } else {
+            return false;
+        }
+
+        var caller = call.getCaller();
+        boolean isSelf = method.isStaticMethod() ?
+                call.getInvocationType() == CallType.invokestatic && caller instanceof Operand operand
+                        && operand.getName().equals(classUnit.getClassName()) :
+                call.getInvocationType() == CallType.invokevirtual
+                        && caller.getType().getTypeOfElement() == ElementType.THIS;
+        if (!isSelf || call.getArguments().size() != method.getParams().size()) {
+            return false;
+        }
+
+        var literal = ((LiteralElement) call.getMethodName()).getLiteral();
+        if (!literal.equals("\"" + method.getMethodName() + "\"")) {
+            return false;
+        }
+
+        // Array elements are read through their index, which sequentializing the copies does not follow
+        return call.getArguments().stream().noneMatch(arg -> arg instanceof ArrayOperand);
+    }
+
+    /**
+     * Follows the copies and jumps after an instruction to the 'ret' they lead to.
+     *
+     * @param index the index of the instruction
+     * @param value the variable holding the value to return, or null if the method returns nothing
+     * @return true if the path reaches a 'ret' of the value, with no other instruction on the way
+     */
+    private static boolean returnsValue(Method method, int index, String value) {
+        var instructions = method.getInstructions();
+        var visited = new HashSet<Integer>();
+        String current = value;
+
+        for (int i = index + 1; i < instructions.size() && visited.add(i); i++) {
+            var inst = instructions.get(i);
+
+            if (inst instanceof ReturnInstruction ret) {
+                if (current == null) {
+                    return !ret.hasReturnValue();
+                }
+
+                return ret.hasReturnValue() && ret.getOperand() instanceof Operand operand && !operand.isLiteral()
+                        && operand.getName().equals(current);
+            }
+
+            if (inst instanceof GotoInstruction jump) {
+                int target = instructions.indexOf(method.getLabels().get(jump.getLabel()));
+                if (target < 0) {
+                    return false;
+                }
+
+                // The loop increments the index
+                i = target - 1;
+                continue;
+            }
+
+            // The copies the path makes are dead once it returns, so only the one of the value is followed
+            if (current != null && inst instanceof AssignInstruction assign
+                    && assign.getDest() instanceof Operand dest && !(dest instanceof ArrayOperand)
+                    && assign.getRhs() instanceof SingleOpInstruction copy
+                    && copy.getSingleOperand() instanceof Operand source && !(source instanceof ArrayOperand)
+                    && !source.isLiteral() && source.getName().equals(current)) {
+                current = dest.getName();
+                continue;
+            }
+
+            return false;
+        }
+
+        return false;
+    }
+}
@@ -7,9 +7,12 @@ import pt.up.fe.comp.jmm.parser.JmmParser;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.specs.util.SpecsSystem;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Copyright 2022 SPeCS.
@@ -26,6 +29,9 @@ import java.util.Map;
 
 public class JmmParserImpl implements JmmParser {
 
+    // Starting rules whose parser method is already in the method cache of SpecsSystem
+    private static final Set<String> RESOLVED_RULES = ConcurrentHashMap.newKeySet();
+
     @Override
     public String getDefaultRule() {
         return "program";
@@ -44,6 +50,7 @@ public class JmmParserImpl implements JmmParser {
             // Transforms tokens into a parse tree
             var parser = new pt.up.fe.comp2024.JavammParser(tokens);
 
+            resolveRule(startingRule);
 
             // Convert ANTLR CST to JmmNode AST
             return AntlrParser.parse(lex, parser, startingRule, config);
@@ -53,4 +60,21 @@ public class JmmParserImpl implements JmmParser {
             return JmmParserResult.newError(Report.newError(Stage.SYNTATIC, -1, -1, "Exception during parsing", e), config);
         }
     }
+
+    /**
+     * Caches the parser method of the given rule one thread at a time. The method cache of SpecsSystem is not
+     * thread-safe, so units parsed in parallel would fail when they look up the rule for the first time together.
+     */
+    private static void resolveRule(String startingRule) {
+        if (RESOLVED_RULES.contains(startingRule)) {
+            return;
+        }
+
+        synchronized (RESOLVED_RULES) {
+            if (!RESOLVED_RULES.contains(startingRule)) {
+                SpecsSystem.getMethod(pt.up.fe.comp2024.JavammParser.class, startingRule);
+                RESOLVED_RULES.add(startingRule);
+            }
+        }
+    }
 }
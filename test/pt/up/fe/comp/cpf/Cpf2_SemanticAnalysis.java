@@ -19,6 +19,7 @@ import pt.up.fe.comp.TestUtils;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.specs.util.SpecsIo;
+import pt.up.fe.specs.util.SpecsStrings;
 
 import static org.junit.Assert.assertEquals;
 
@@ -123,5 +124,34 @@ public class Cpf2_SemanticAnalysis {
         CpUtils.assertEquals("Lookup of field", "10", jasminResult.run().trim(), jasminResult);
     }
 
+    /**
+     * Test if conditions, assigned values and returns accept comparisons, negations, parenthesized and logical
+     * expressions, and if the program they are in runs.
+     */
+    @Test
+    public void section3_Types_BooleanExprs() {
+        test("types/BooleanExprs.jmm", false);
+        var jasminResult = getJasminResult("types/BooleanExprs.jmm");
+
+        CpUtils.assertEquals("Boolean expressions", "4\n8\n12\n0\n1",
+                SpecsStrings.normalizeFileContents(jasminResult.run(), true), jasminResult);
+    }
+
+    /**
+     * Test if an int condition is an error.
+     */
+    @Test
+    public void section3_Types_IntCondition_Fail() {
+        test("types/IntCondition_Fail.jmm", true);
+    }
+
+    /**
+     * Test if returning a comparison from an int method is an error.
+     */
+    @Test
+    public void section3_Types_IntReturn_Fail() {
+        test("types/IntReturn_Fail.jmm", true);
+    }
+
 
 }
@@ -18,12 +18,19 @@ import pt.up.fe.comp.CpUtils;
 import pt.up.fe.comp.TestUtils;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.backend.JasminBackendImpl;
 import pt.up.fe.specs.util.SpecsCheck;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsStrings;
+import pt.up.fe.specs.util.SpecsSystem;
 import utils.ProjectTestUtils;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -303,4 +310,49 @@ public class Cpf4_Jasmin {
         // Make sure the code compiles
         jasminResult.compile();
     }
+
+    /*checks if the .limits stack is exactly the deepest the stack gets in each method */
+    @Test
+    public void section6_Limits_Stack_Exact() {
+        var jasminResult = getJasminResult("limits/ExactLimits.ollir");
+
+        assertLimit(jasminResult, "sum4", CpUtils.getLimitStackRegex(), 2);
+        assertLimit(jasminResult, "calls", CpUtils.getLimitStackRegex(), 5);
+        assertLimit(jasminResult, "static\\s+main", CpUtils.getLimitStackRegex(), 3);
+    }
+
+    /*checks if the .limits locals is exactly this, the parameters and the variables of each method */
+    @Test
+    public void section6_Limits_Locals_Exact() {
+        var jasminResult = getJasminResult("limits/ExactLimits.ollir");
+
+        assertLimit(jasminResult, "sum4", CpUtils.getLimitLocalsRegex(), 8);
+        assertLimit(jasminResult, "calls", CpUtils.getLimitLocalsRegex(), 4);
+        assertLimit(jasminResult, "static\\s+main", CpUtils.getLimitLocalsRegex(), 4);
+    }
+
+    private static void assertLimit(JasminResult jasminResult, String methodName, Pattern limitRegex, int expected) {
+        var methodCode = CpUtils.getJasminMethod(jasminResult, methodName);
+        var limit = Integer.parseInt(SpecsStrings.getRegexGroup(methodCode, limitRegex, 1));
+        assertEquals("Wrong limit in method '" + methodName + "':\n" + methodCode, expected, limit);
+    }
+
+    /*checks if a class file written directly with '-e' runs, with wide loads, stores and iinc, ldc and branches */
+    @Test
+    public void section7_ClassFile_ManyLocals() throws IOException {
+        var ollirResult = new OllirResult(
+                SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/class_file/ManyLocals.ollir"), Collections.emptyMap());
+        var classFileResult = new JasminBackendImpl().toClassFile(ollirResult);
+        TestUtils.noErrors(classFileResult.getReports());
+
+        var outputDir = Files.createTempDirectory("jmm_class").toFile();
+        classFileResult.write(outputDir);
+
+        var classpath = outputDir.getAbsolutePath() + File.pathSeparator + TestUtils.getLibsClasspath();
+        var output = SpecsSystem.runProcess(List.of("java", "-cp", classpath, classFileResult.getClassName()),
+                SpecsIo.getWorkingDir(), true, false);
+
+        assertEquals("Class file output, errors:\n" + output.getStdErr(), "1000894\n1000000",
+                SpecsStrings.normalizeFileContents(output.getStdOut(), true));
+    }
 }
@@ -14,17 +14,37 @@
 package pt.up.fe.comp.cpf;
 
 import org.junit.Test;
+import org.specs.comp.ollir.AssignInstruction;
+import org.specs.comp.ollir.LiteralElement;
+import org.specs.comp.ollir.Operand;
+import org.specs.comp.ollir.ReturnInstruction;
+import org.specs.comp.ollir.SingleOpInstruction;
 import pt.up.fe.comp.CpUtils;
 import pt.up.fe.comp.TestUtils;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.optimization.dataflow.ConstantAnalysis;
+import pt.up.fe.comp2024.optimization.dataflow.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.dataflow.DefUse;
+import pt.up.fe.comp2024.optimization.dataflow.Liveness;
+import pt.up.fe.comp2024.optimization.dataflow.PhiInstruction;
+import pt.up.fe.comp2024.optimization.dataflow.ReachingDefinitions;
+import pt.up.fe.comp2024.optimization.passes.Inlining;
+import pt.up.fe.comp2024.optimization.passes.SparseConditionalConstantPropagation;
+import pt.up.fe.comp2024.optimization.passes.SsaConstruction;
+import pt.up.fe.comp2024.optimization.passes.SsaDestruction;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsStrings;
 
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 public class Cpf5_Optimizations {
 
@@ -32,6 +52,12 @@ public class Cpf5_Optimizations {
         return TestUtils.optimize(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename));
     }
 
+    static OllirResult getOllirResultOpt(String filename) {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "true");
+        return TestUtils.optimize(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename), config);
+    }
+
     static JasminResult getJasminResult(String filename) {
         String resource = SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename);
         return TestUtils.backend(resource);
@@ -43,6 +69,28 @@ public class Cpf5_Optimizations {
         return TestUtils.backend(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename), config);
     }
 
+    /**
+     * @return a matcher at the branch that jumps back to the loop of the given Jasmin method, whose first group is the
+     * label of the loop, or null if no branch jumps back
+     */
+    static Matcher findBackEdge(String method) {
+        Matcher branch = Pattern.compile("\\b(?:if\\w*|goto)\\s+(\\w+)").matcher(method);
+        while (branch.find()) {
+            int label = method.indexOf(branch.group(1) + ":");
+            if (label >= 0 && label < branch.start()) {
+                return branch;
+            }
+        }
+        return null;
+    }
+
+    static JasminResult getJasminResultOllirOpt(String filename) {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "true");
+        var ollirResult = new OllirResult(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename), config);
+        return TestUtils.backend(TestUtils.getJmmOptimization().optimize(ollirResult));
+    }
+
     static JasminResult getJasminResultReg(String filename, int numReg) {
         Map<String, String> config = new HashMap<>();
         config.put("registerAllocation", String.valueOf(numReg));
@@ -125,6 +173,25 @@ public class Cpf5_Optimizations {
     }
 
 
+    /**
+     * Test if references use the short forms of astore and aload, and a comparison with 0 jumps without pushing it
+     */
+    @Test
+    public void section1_InstSelection_ZeroAndReference() {
+        JasminResult jasminResult = getJasminResult("inst_selection/InstSelection_zero_ref.jmm");
+        String method = CpUtils.getJasminMethod(jasminResult, "static\\s+main");
+
+        CpUtils.matches(method, "astore_1");
+        CpUtils.matches(method, "aload_1");
+        CpUtils.matches(method, "(ifle|ifgt)\\s+\\w+");
+        CpUtils.assertTrue("Expected '0 < x' not to push 0 and compare two values",
+                !method.contains("if_icmp"), jasminResult);
+
+        CpUtils.assertEquals("Wrong results", "5", SpecsStrings.normalizeFileContents(jasminResult.run(), true),
+                jasminResult);
+    }
+
+
     @Test
     public void section2_RegAlloc_AtMostRequestedNumber() {
 
@@ -163,6 +230,34 @@ public class Cpf5_Optimizations {
     }
 
 
+    /**
+     * Test if '-r 0' uses no more registers than 'this' and the parameters, when the locals never live together
+     */
+    @Test
+    public void section2_RegAlloc_Minimum() {
+        JasminResult optimized = getJasminResultReg("reg_alloc/RegAllocMin.jmm", 0);
+
+        String method = CpUtils.getJasminMethod(optimized, "chain");
+        CpUtils.matches(method, "\\.limit\\s+locals\\s+3\\s");
+
+        CpUtils.assertEquals("Wrong results", "15", SpecsStrings.normalizeFileContents(optimized.run(), true),
+                optimized);
+    }
+
+    /**
+     * Test if it is an error when a method needs more registers than '-r' allows
+     */
+    @Test
+    public void section2_RegAlloc_TooFew() {
+        Map<String, String> config = new HashMap<>();
+        config.put("registerAllocation", "2");
+        OllirResult ollirResult = TestUtils.optimize(
+                SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/reg_alloc/RegAllocMin.jmm"), config);
+
+        TestUtils.mustFail(ollirResult);
+    }
+
+
     @Test
     public void section3_ConstProp_Simple() {
 
@@ -194,5 +289,324 @@ public class Cpf5_Optimizations {
         CpUtils.matches(optimized, "(bipush|sipush|ldc) 10\\s+imul");
     }
 
+    /**
+     * Test if constants are propagated and folded in the AST, before OLLIR is generated
+     */
+    @Test
+    public void section3_ConstProp_FoldAst() {
+        String filename = "const_prop/FoldAst.jmm";
+
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "true");
+        var optimization = TestUtils.getJmmOptimization();
+        var semantics = optimization.optimize(
+                TestUtils.analyse(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename), config));
+        OllirResult ollirResult = optimization.toOllir(semantics);
+        String ollirCode = ollirResult.getOllirCode();
+
+        CpUtils.assertTrue("Expected 'a * a' to be folded to 100", ollirCode.contains("100.i32"), ollirResult);
+        CpUtils.assertTrue("Expected 'b + 1' to be folded to 101", ollirCode.contains("101.i32"), ollirResult);
+        CpUtils.assertTrue("Expected no multiplication or comparison left",
+                !ollirCode.contains("*.i32") && !ollirCode.contains("<.bool"), ollirResult);
+
+        JasminResult optimized = getJasminResultOpt(filename);
+        CpUtils.assertEquals("Wrong results", "101", SpecsStrings.normalizeFileContents(optimized.run(), true),
+                optimized);
+    }
+
+
+    /**
+     * Test if a recursive call whose value is copied before being returned runs in constant stack
+     */
+    @Test
+    public void section4_TailRec_Deep() {
+        JasminResult optimized = getJasminResultOpt("tail_rec/TailRecDeep.jmm");
+
+        String method = CpUtils.getJasminMethod(optimized, "count");
+        CpUtils.assertTrue("Expected the recursive call in 'count' to be replaced by a jump",
+                !method.contains("invokevirtual"),
+                optimized);
+
+        CpUtils.assertEquals("Wrong results", "99999", SpecsStrings.normalizeFileContents(optimized.run(), true),
+                optimized);
+    }
+
+
+    /**
+     * Test if a loop that runs a constant number of times is replaced with copies of its body
+     */
+    @Test
+    public void section5_Unroll_Full() {
+        JasminResult optimized = getJasminResultOpt("unroll/UnrollFull.jmm");
+
+        String method = CpUtils.getJasminMethod(optimized, "static\\s+main");
+        CpUtils.assertEquals("Expected 3 copies of the body of the loop", 3,
+                CpUtils.countOccurences(optimized, "invokestatic"), optimized);
+        CpUtils.assertTrue("Expected no branch back in 'main'",
+                !method.matches("(?s).*" + CpUtils.IF_REGEX + ".*"),
+                optimized);
+
+        CpUtils.assertEquals("Wrong results", "0\n1\n2", SpecsStrings.normalizeFileContents(optimized.run(), true),
+                optimized);
+    }
+
+    /**
+     * Test if a loop whose variable wraps around past the bound keeps running as many times as without -o
+     */
+    @Test
+    public void section5_Unroll_Wrap() {
+        JasminResult optimized = getJasminResultOpt("unroll/UnrollWrap.jmm");
+
+        CpUtils.assertEquals("Wrong results", "1705031704", SpecsStrings.normalizeFileContents(optimized.run(), true),
+                optimized);
+    }
+
+    /**
+     * Test if a loop that runs while 'i <= 2147483647' is not unrolled, since it never ends
+     */
+    @Test
+    public void section5_Unroll_LteMax() {
+        JasminResult optimized = getJasminResultOllirOpt("unroll/UnrollLteMax.ollir");
+
+        String method = CpUtils.getJasminMethod(optimized, "static\\s+loop");
+        CpUtils.matches(method, "if_icmple\\s+\\w+");
+    }
+
+
+    /**
+     * Test if the analyses of the dataflow engine reach their fixed point around a loop
+     */
+    @Test
+    public void section6_Dataflow_Loop() {
+        var ollirResult = new OllirResult(
+                SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/dataflow/Dataflow.ollir"), new HashMap<>());
+        var cfg = new ControlFlowGraph(CpUtils.getMethod(ollirResult, "flow"));
+
+        // 0: a := 1; 1: b := 2; 2: i := 0; 3: if (i >= n) goto end; 4: body: a := a + b; 5: i := i + 1;
+        // 6: if (i < n) goto body; 7: end: ret a
+        var liveness = new Liveness(cfg);
+        CpUtils.assertTrue("Expected 'b' to be live around the loop",
+                liveness.isLiveIn(4, "b") && liveness.isLiveOut(6, "b"), ollirResult);
+        CpUtils.assertTrue("Expected 'b' to be dead after the loop", !liveness.isLiveIn(7, "b"), ollirResult);
+
+        var reaching = new ReachingDefinitions(cfg);
+        var expected = new BitSet();
+        expected.set(0);
+        expected.set(4);
+        CpUtils.assertEquals("Expected both definitions of 'a' to reach the return", expected,
+                reaching.getReachingDefinitions(7, "a"), ollirResult);
+
+        var constants = new ConstantAnalysis(cfg);
+        CpUtils.assertEquals("Expected 'b' to be constant in the loop", Optional.of(2), constants.getConstant(6, "b"),
+                ollirResult);
+        CpUtils.assertEquals("Expected 'a' not to be constant after the loop", Optional.empty(),
+                constants.getConstant(7, "a"), ollirResult);
+    }
+
+    /**
+     * Test if stores whose values are never read are removed
+     */
+    @Test
+    public void section7_DeadCode_DeadStores() {
+        String filename = "dead_code/DeadStores.jmm";
+
+        JasminResult original = getJasminResult(filename);
+        JasminResult optimized = getJasminResultOpt(filename);
+
+        CpUtils.assertTrue("Expected the products in 'dead' in the original code",
+                CpUtils.getJasminMethod(original, "dead").contains("imul"), original);
+        CpUtils.assertTrue("Expected the products in 'dead' to be removed, their values are never read",
+                !CpUtils.getJasminMethod(optimized, "dead").contains("imul"), optimized);
+
+        CpUtils.assertEquals("Wrong results", "5", SpecsStrings.normalizeFileContents(optimized.run(), true),
+                optimized);
+    }
+
+    /**
+     * Test if a chain of copies is replaced by the variable it starts from
+     */
+    @Test
+    public void section8_CopyProp_Chain() {
+        String filename = "copy_prop/CopyChain.jmm";
+
+        OllirResult ollirResult = getOllirResultOpt(filename);
+        var method = CpUtils.getMethod(ollirResult, "copies");
+        var copies = CpUtils.getInstructions(AssignInstruction.class, method).stream()
+                .filter(assign -> assign.getRhs() instanceof SingleOpInstruction single
+                        && single.getSingleOperand() instanceof Operand)
+                .toList();
+        CpUtils.assertTrue("Expected no copies left in 'copies', found " + copies, copies.isEmpty(), ollirResult);
+
+        JasminResult optimized = getJasminResultOpt(filename);
+        CpUtils.assertEquals("Wrong results", "36", SpecsStrings.normalizeFileContents(optimized.run(), true),
+                optimized);
+    }
+
+    /**
+     * Test if an expression computed in a dominating block is not computed again in the branches it dominates
+     */
+    @Test
+    public void section9_Cse_Dominator() {
+        JasminResult optimized = getJasminResultOpt("cse/CseDominator.jmm");
+
+        String method = CpUtils.getJasminMethod(optimized, "cse");
+        int products = method.split("imul", -1).length - 1;
+        CpUtils.assertEquals("Expected 'a * b' to be computed once in 'cse'", 1, products, optimized);
+
+        CpUtils.assertEquals("Wrong results", "25\n24", SpecsStrings.normalizeFileContents(optimized.run(), true),
+                optimized);
+    }
+
+    /**
+     * Test if a product of values the loop does not change is computed before the loop
+     */
+    @Test
+    public void section10_Licm_Invariant() {
+        JasminResult optimized = getJasminResultOpt("licm/LicmInvariant.jmm");
+
+        String method = CpUtils.getJasminMethod(optimized, "sum");
+        Matcher backEdge = findBackEdge(method);
+        CpUtils.assertTrue("Expected the loop in 'sum' to branch back", backEdge != null, optimized);
+
+        int header = method.indexOf(backEdge.group(1) + ":");
+        CpUtils.assertTrue("Expected 'a * b' to be computed before the loop",
+                method.contains("imul") && method.lastIndexOf("imul") < header, optimized);
+
+        CpUtils.assertEquals("Wrong results", "120\n0", SpecsStrings.normalizeFileContents(optimized.run(), true),
+                optimized);
+    }
+
+    /**
+     * Test if a product of the loop variable is updated with an addition in the loop, and a product by a power of two
+     * is a shift
+     */
+    @Test
+    public void section11_Strength_Induction() {
+        JasminResult optimized = getJasminResultOpt("strength/StrengthInduction.jmm");
+
+        String method = CpUtils.getJasminMethod(optimized, "sum");
+        Matcher backEdge = findBackEdge(method);
+        CpUtils.assertTrue("Expected the loop in 'sum' to branch back", backEdge != null, optimized);
+
+        String loop = method.substring(method.indexOf(backEdge.group(1) + ":"), backEdge.start());
+        CpUtils.assertTrue("Expected no product in the loop", !loop.contains("imul"), optimized);
+        CpUtils.matches(loop, "iinc\\s+\\w+\\s+5");
+        CpUtils.matches(method, "iconst_3\\s+ishl");
+
+        CpUtils.assertEquals("Wrong results", "241", SpecsStrings.normalizeFileContents(optimized.run(), true),
+                optimized);
+    }
+
+    /**
+     * Test if a branch on a constant is replaced by the code it always runs, even without -o
+     */
+    @Test
+    public void section12_Peephole_ConstantBranch() {
+        JasminResult jasminResult = getJasminResult("peephole/PeepholeConstBranch.jmm");
+
+        String method = CpUtils.getJasminMethod(jasminResult, "static\\s+main");
+        CpUtils.assertTrue("Expected no branches in 'main'",
+                !Pattern.compile(CpUtils.IF_REGEX + "|" + CpUtils.GOTO_REGEX).matcher(method).find(), jasminResult);
+        CpUtils.assertEquals("Expected the else branch to be removed", 1,
+                CpUtils.countOccurences(jasminResult, "invokestatic"), jasminResult);
+
+        CpUtils.assertEquals("Wrong results", "1", SpecsStrings.normalizeFileContents(jasminResult.run(), true),
+                jasminResult);
+    }
+
+    /**
+     * Test if the right side of && and || is not evaluated when the left side decides, in conditions and in values
+     */
+    @Test
+    public void section13_ShortCircuit_SideEffects() {
+        JasminResult jasminResult = getJasminResult("short_circuit/ShortCircuit.jmm");
+
+        CpUtils.assertEquals("Expected 'side' never to be called", "20\n30\n50\n70",
+                SpecsStrings.normalizeFileContents(jasminResult.run(), true), jasminResult);
+    }
+
+    /**
+     * Test if SSA form assigns each variable once, merging them with phis at the loop header and after the if, and if
+     * the code is the same program once out of SSA form
+     */
+    @Test
+    public void section14_Ssa_Loop() {
+        var ollirResult = new OllirResult(
+                SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/ssa/SsaLoop.ollir"), new HashMap<>());
+        var method = CpUtils.getMethod(ollirResult, "flow");
+
+        new SsaConstruction().optimize(ollirResult.getOllirClass(), ollirResult.getConfig());
+
+        Set<String> merged = CpUtils.getInstructions(AssignInstruction.class, method).stream()
+                .filter(assign -> assign.getRhs() instanceof PhiInstruction)
+                .map(assign -> ((PhiInstruction) assign.getRhs()).getVariable())
+                .collect(Collectors.toSet());
+        CpUtils.assertEquals("Expected phis for 'a' and 'i', found " + merged, Set.of("a", "i"), merged, ollirResult);
+
+        var defined = new HashSet<String>();
+        for (var inst : method.getInstructions()) {
+            DefUse.getDef(inst, method).ifPresent(def -> CpUtils.assertTrue("Expected '" + def + "' to be assigned once",
+                    defined.add(def), ollirResult));
+        }
+
+        new SsaDestruction().optimize(ollirResult.getOllirClass(), ollirResult.getConfig());
+        CpUtils.assertTrue("Expected no phis left", CpUtils.getInstructions(AssignInstruction.class, method).stream()
+                .noneMatch(assign -> assign.getRhs() instanceof PhiInstruction), ollirResult);
+
+        JasminResult jasminResult = TestUtils.backend(ollirResult);
+        CpUtils.assertEquals("Wrong results", "13", SpecsStrings.normalizeFileContents(jasminResult.run(), true),
+                jasminResult);
+    }
+
+    /**
+     * Test if a variable stays constant around a loop when the only other value reaching it is in a branch that is
+     * never taken, and if that branch is removed
+     */
+    @Test
+    public void section15_Sccp_Loop() {
+        var ollirResult = new OllirResult(
+                SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/sccp/SccpLoop.ollir"), new HashMap<>());
+        var method = CpUtils.getMethod(ollirResult, "flow");
+
+        new SsaConstruction().optimize(ollirResult.getOllirClass(), ollirResult.getConfig());
+        new SparseConditionalConstantPropagation().optimize(ollirResult.getOllirClass(), ollirResult.getConfig());
+        new SsaDestruction().optimize(ollirResult.getOllirClass(), ollirResult.getConfig());
+
+        var returns = CpUtils.getInstructions(ReturnInstruction.class, method);
+        CpUtils.assertTrue("Expected 'flow' to return the constant 1",
+                returns.stream().allMatch(ret -> ret.getOperand() instanceof LiteralElement literal
+                        && literal.getLiteral().equals("1")), ollirResult);
+        CpUtils.assertTrue("Expected the assignment of 2 to be removed",
+                CpUtils.getInstructions(AssignInstruction.class, method).stream()
+                        .noneMatch(assign -> assign.getRhs() instanceof SingleOpInstruction single
+                                && single.getSingleOperand() instanceof LiteralElement literal
+                                && literal.getLiteral().equals("2")), ollirResult);
+
+        JasminResult jasminResult = TestUtils.backend(ollirResult);
+        CpUtils.assertEquals("Wrong results", "1", SpecsStrings.normalizeFileContents(jasminResult.run(), true),
+                jasminResult);
+    }
+
+    /**
+     * Test if calls to a static method of the class are replaced with its body, returns included, and if a public
+     * method, which a subclass could override, is still called
+     */
+    @Test
+    public void section16_Inlining_Static() {
+        var ollirResult = new OllirResult(
+                SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/inlining/InlineStatic.ollir"), new HashMap<>());
+
+        new Inlining().optimize(ollirResult.getOllirClass(), ollirResult.getConfig());
+
+        JasminResult jasminResult = TestUtils.backend(ollirResult);
+        String main = CpUtils.getJasminMethod(jasminResult, "static\\s+main");
+
+        CpUtils.assertTrue("Expected the calls to 'max' to be inlined in:\n" + main,
+                !main.contains("InlineStatic/max"), jasminResult);
+        CpUtils.matches(main, "invokevirtual\\s+InlineStatic/twice");
+        CpUtils.assertEquals("Wrong results", "7\n18", SpecsStrings.normalizeFileContents(jasminResult.run(), true),
+                jasminResult);
+    }
+
 
 }
@@ -0,0 +1,353 @@
+package pt.up.fe.comp.cpf;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp2024.BatchCompiler;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.JmmCompiler;
+import pt.up.fe.comp2024.WatchCompiler;
+import pt.up.fe.comp2024.cache.CompilationCache;
+import pt.up.fe.comp2024.daemon.CompileRequest;
+import pt.up.fe.comp2024.daemon.CompilerClient;
+import pt.up.fe.comp2024.daemon.CompilerServer;
+import pt.up.fe.comp2024.utils.Formatter;
+import pt.up.fe.specs.util.SpecsStrings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Cpf6_Toolchain {
+
+    // Generous, so that no test waits for nothing on a slow machine
+    private static final long TIMEOUT_MILLIS = 20_000;
+
+    private static final long CACHE_SIZE = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static String unit(String className, int value) {
+        return "import io;\n\nclass " + className + " {\n    public static void main(String[] args) {\n        io.println("
+                + value + ");\n    }\n}\n";
+    }
+
+    private static File write(File dir, String filename, String contents) throws IOException {
+        var file = new File(dir, filename);
+        Files.createDirectories(dir.toPath());
+        Files.writeString(file.toPath(), contents);
+        return file;
+    }
+
+    private static Map<String, String> newConfig(String... options) {
+        var config = CompilerConfig.getDefault();
+        for (int i = 0; i < options.length; i += 2) {
+            config.put(options[i], options[i + 1]);
+        }
+        return config;
+    }
+
+    private static void waitFor(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting for " + what);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Test if a batch folder is searched recursively for .jmm files, and if each unit gets its class file
+     */
+    @Test
+    public void section1_Batch_Directory() throws IOException {
+        var batch = temp.newFolder("batch");
+        var first = write(batch, "First.jmm", unit("First", 1));
+        var second = write(new File(batch, "nested"), "Second.jmm", unit("Second", 2));
+        write(batch, "notes.txt", "not a unit");
+
+        assertEquals(List.of(first, second), BatchCompiler.collectSources(batch));
+
+        var outputDir = temp.newFolder("out");
+        var config = newConfig("batch", batch.getAbsolutePath(), "outputDir", outputDir.getAbsolutePath());
+
+        assertTrue(new BatchCompiler(config).compileAll());
+        assertTrue(new File(outputDir, "First.class").isFile());
+        assertTrue(new File(outputDir, "Second.class").isFile());
+    }
+
+    /**
+     * Test if a batch file lists the sources in its order, skipping blank lines and comments
+     */
+    @Test
+    public void section1_Batch_ListFile() throws IOException {
+        var first = write(temp.getRoot(), "First.jmm", unit("First", 1));
+        var second = write(temp.getRoot(), "Second.jmm", unit("Second", 2));
+        var list = write(temp.getRoot(), "units.txt", "# units\n" + second + "\n\n" + first + "\n");
+
+        assertEquals(List.of(second, first), BatchCompiler.collectSources(list));
+    }
+
+    /**
+     * Test if the units of a batch are compiled by several jobs, if a unit that fails does not stop the others, and if
+     * the failures are reported in the order of the sources
+     */
+    @Test
+    public void section1_Batch_Parallel() throws IOException {
+        var batch = temp.newFolder("batch");
+        for (int i = 0; i < 8; i++) {
+            var className = "Unit" + i;
+            write(batch, className + ".jmm", i == 2 || i == 5 ? "class " + className + " {" : unit(className, i));
+        }
+
+        var outputDir = temp.newFolder("out");
+        var config = newConfig("batch", batch.getAbsolutePath(), "outputDir", outputDir.getAbsolutePath(),
+                "jobs", "4");
+
+        // Formatter installs the ANSI console when first used, which replaces System.err
+        Formatter.errorMsg("");
+
+        var errors = new ByteArrayOutputStream();
+        var stderr = System.err;
+        System.setErr(new PrintStream(errors, true));
+        boolean success;
+        try {
+            success = new BatchCompiler(config).compileAll();
+        } finally {
+            System.setErr(stderr);
+        }
+
+        assertFalse(success);
+        for (int i = 0; i < 8; i++) {
+            assertEquals("Class file of Unit" + i, i != 2 && i != 5, new File(outputDir, "Unit" + i + ".class").isFile());
+        }
+
+        var log = errors.toString();
+        int first = log.indexOf("Unit2.jmm");
+        int second = log.indexOf("Unit5.jmm");
+        assertTrue("Expected the failures of Unit2 and then Unit5:\n" + log, first >= 0 && second > first);
+    }
+
+    /**
+     * Test if the compiler server compiles a file for the client, and stops when asked to
+     */
+    @Test
+    public void section2_Server_RoundTrip() throws Exception {
+        var source = write(temp.getRoot(), "Hello.jmm", unit("Hello", 1));
+        var outputDir = temp.newFolder("out");
+        var socket = temp.getRoot().toPath().resolve("jmm.sock");
+
+        var server = new Thread(() -> new CompilerServer(socket, newConfig()).serve());
+        server.start();
+
+        try {
+            waitFor("the server socket", () -> Files.exists(socket));
+
+            var client = new CompilerClient(socket);
+            var config = Map.of("inputFile", source.getAbsolutePath(), "outputDir", outputDir.getAbsolutePath());
+            var response = client.send(new CompileRequest(config, null, false));
+
+            assertTrue("Server error: " + response.getError(), response.isSuccess());
+            assertEquals("Hello", response.getClassName());
+            assertTrue(response.getJasminCode().contains("invokestatic io/println"));
+            assertEquals(new File(outputDir, "Hello.class").getAbsolutePath(), response.getClassFile());
+            assertTrue(new File(response.getClassFile()).isFile());
+
+            assertTrue(client.send(new CompileRequest(null, null, true)).isSuccess());
+        } finally {
+            server.join(TIMEOUT_MILLIS);
+        }
+
+        assertFalse("Expected the server to stop", server.isAlive());
+    }
+
+    /**
+     * Test if a compiled unit is found in the cache, and if other code or other options are not
+     */
+    @Test
+    public void section3_Cache_HitAndMiss() throws IOException {
+        var cache = new CompilationCache(temp.newFolder("cache").toPath(), CACHE_SIZE);
+        var code = unit("Hello", 1);
+        var config = newConfig();
+
+        assertTrue(cache.getJasmin(code, config).isEmpty());
+
+        var jasminResult = new JmmCompiler(cache).compile(code, config);
+        var cachedResult = cache.getJasmin(code, config);
+
+        assertTrue(cachedResult.isPresent());
+        assertEquals(jasminResult.getJasminCode(), cachedResult.get().getJasminCode());
+        assertTrue(cache.getJasmin(unit("Hello", 2), config).isEmpty());
+        assertTrue(cache.getJasmin(code, newConfig("registerAllocation", "0")).isEmpty());
+    }
+
+    /**
+     * Test if the least recently used entry is evicted once the cache is over its maximum size, a hit counting as a use
+     */
+    @Test
+    public void section3_Cache_Eviction() throws Exception {
+        var config = newConfig();
+        var jasminResult = new JmmCompiler().compile(unit("Hello", 1), config);
+
+        // Every entry holds the same result, so all of them have the size of this one
+        var measureDir = temp.newFolder("measure").toPath();
+        new CompilationCache(measureDir, CACHE_SIZE).putJasmin("a", config, jasminResult);
+        long entrySize;
+        try (Stream<Path> files = Files.walk(measureDir)) {
+            entrySize = files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+
+        var cache = new CompilationCache(temp.newFolder("cache").toPath(), entrySize * 2 + entrySize / 2);
+        cache.putJasmin("a", config, jasminResult);
+        Thread.sleep(50);
+        cache.putJasmin("b", config, jasminResult);
+        Thread.sleep(50);
+        assertTrue(cache.getJasmin("a", config).isPresent());
+        Thread.sleep(50);
+        cache.putJasmin("c", config, jasminResult);
+
+        assertTrue("Expected 'b' to be evicted", cache.getJasmin("b", config).isEmpty());
+        assertTrue(cache.getJasmin("a", config).isPresent());
+        assertTrue(cache.getJasmin("c", config).isPresent());
+    }
+
+    /**
+     * Test if the entries of another build of the compiler are not used
+     */
+    @Test
+    public void section3_Cache_Fingerprint() throws IOException {
+        var cacheDir = temp.newFolder("cache").toPath();
+        var code = unit("Hello", 1);
+        var config = newConfig();
+        var jasminResult = new JmmCompiler().compile(code, config);
+
+        new CompilationCache(cacheDir, CACHE_SIZE, "build1").putJasmin(code, config, jasminResult);
+
+        assertTrue(new CompilationCache(cacheDir, CACHE_SIZE, "build1").getJasmin(code, config).isPresent());
+        assertTrue(new CompilationCache(cacheDir, CACHE_SIZE, "build2").getJasmin(code, config).isEmpty());
+    }
+
+    private static void assertEntries(File cacheDir, int semantics, int ollir, int jasmin) {
+        assertEquals("Semantics entries", semantics, countFiles(new File(cacheDir, "semantics")));
+        assertEquals("OLLIR entries", ollir, countFiles(new File(cacheDir, "ollir")));
+        assertEquals("Jasmin entries", jasmin, countFiles(new File(cacheDir, "jasmin")));
+    }
+
+    private static int countFiles(File dir) {
+        var files = dir.listFiles();
+        return files == null ? 0 : files.length;
+    }
+
+    private static String run(JasminResult jasminResult) {
+        return SpecsStrings.normalizeFileContents(jasminResult.run(), true);
+    }
+
+    private static final String FOLDABLE = "import io;\n\nclass Foldable {\n    public static void main(String[] args) {\n"
+            + "        int a;\n        a = 2 * 3;\n        io.println(a);\n    }\n}\n";
+
+    /**
+     * Test if changing -r reruns only the backend, and -o only the OLLIR generation and what follows
+     */
+    @Test
+    public void section4_StageCache_Options() throws IOException {
+        var cacheDir = temp.newFolder("cache");
+        var compiler = new JmmCompiler(new CompilationCache(cacheDir.toPath(), CACHE_SIZE));
+        var config = newConfig();
+
+        assertEquals("6", run(compiler.compile(FOLDABLE, config)));
+        assertEntries(cacheDir, 1, 1, 1);
+
+        compiler.compile(FOLDABLE, config);
+        assertEntries(cacheDir, 1, 1, 1);
+
+        config.put("registerAllocation", "0");
+        assertEquals("6", run(compiler.compile(FOLDABLE, config)));
+        assertEntries(cacheDir, 1, 1, 2);
+
+        config.put("optimize", "true");
+        assertEquals("6", run(compiler.compile(FOLDABLE, config)));
+        assertEntries(cacheDir, 1, 2, 3);
+
+        config.put("unroll", "2");
+        assertEquals("6", run(compiler.compile(FOLDABLE, config)));
+        assertEntries(cacheDir, 1, 2, 4);
+    }
+
+    /**
+     * Test if the semantics cached by an optimized compilation are those from before the AST optimizations
+     */
+    @Test
+    public void section4_StageCache_CachedSemantics() throws IOException {
+        var cacheDir = temp.newFolder("cache").toPath();
+
+        var optimized = new JmmCompiler(new CompilationCache(cacheDir, CACHE_SIZE))
+                .compile(FOLDABLE, newConfig("optimize", "true"));
+        assertEquals("6", run(optimized));
+
+        var config = newConfig();
+        var fromCachedSemantics = new JmmCompiler(new CompilationCache(cacheDir, CACHE_SIZE)).compile(FOLDABLE, config);
+
+        assertEquals(new JmmCompiler().compile(FOLDABLE, config).getJasminCode(), fromCachedSemantics.getJasminCode());
+    }
+
+    /**
+     * Test if changing a unit recompiles it and the units that import it, and only those
+     */
+    @Test
+    public void section5_Watch_Importers() throws Exception {
+        var sourceDir = temp.newFolder("src");
+        var outputDir = temp.newFolder("out");
+        write(sourceDir, "Lib.jmm", unit("Lib", 1));
+        write(sourceDir, "App.jmm", unit("App", 2).replace("import io;\n", "import io;\nimport Lib;\n"));
+        write(sourceDir, "Other.jmm", unit("Other", 3));
+
+        var lib = new File(outputDir, "Lib.class");
+        var app = new File(outputDir, "App.class");
+        var other = new File(outputDir, "Other.class");
+
+        var config = newConfig("watch", sourceDir.getAbsolutePath(), "outputDir", outputDir.getAbsolutePath());
+        var watcher = new Thread(() -> new WatchCompiler(config).watch());
+
+        // A class file exists before it is fully written, the watcher only reports that it is watching once the first
+        // compilation is done
+        var output = new ByteArrayOutputStream();
+        var stdout = System.out;
+        System.setOut(new PrintStream(output, true));
+        watcher.start();
+
+        try {
+            waitFor("the first compilation", () -> output.toString().contains("Watching"));
+            System.setOut(stdout);
+
+            // The class files that are written again get a new modification time
+            for (var classFile : List.of(lib, app, other)) {
+                Files.setLastModifiedTime(classFile.toPath(), FileTime.fromMillis(0));
+            }
+
+            write(sourceDir, "Lib.jmm", unit("Lib", 4));
+
+            waitFor("Lib and App to be compiled again", () -> lib.lastModified() > 0 && app.lastModified() > 0);
+            assertEquals("Expected Other not to be compiled again", 0, other.lastModified());
+        } finally {
+            System.setOut(stdout);
+            watcher.interrupt();
+            watcher.join(TIMEOUT_MILLIS);
+        }
+    }
+}